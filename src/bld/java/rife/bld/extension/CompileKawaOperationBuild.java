@@ -18,10 +18,14 @@ package rife.bld.extension;
 
 import rife.bld.BuildCommand;
 import rife.bld.Project;
+import rife.bld.operations.RunOperation;
 import rife.bld.publish.PublishDeveloper;
 import rife.bld.publish.PublishLicense;
 import rife.bld.publish.PublishScm;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static rife.bld.dependencies.Repository.*;
@@ -46,7 +50,9 @@ public class CompileKawaOperationBuild extends Project {
         scope(test)
                 .include(dependency("org.junit.jupiter", "junit-jupiter", version(5, 10, 2)))
                 .include(dependency("org.junit.platform", "junit-platform-console-standalone", version(1, 10, 2)))
-                .include(dependency("org.assertj", "assertj-core", version(3, 25, 3)));
+                .include(dependency("org.assertj", "assertj-core", version(3, 25, 3)))
+                .include(dependency("org.openjdk.jmh", "jmh-core", version(1, 37)))
+                .include(dependency("org.openjdk.jmh", "jmh-generator-annprocess", version(1, 37)));
 
         publishOperation()
                 .repository(version.isSnapshot() ? repository("rife2-snapshot") : repository("rife2"))
@@ -76,6 +82,28 @@ public class CompileKawaOperationBuild extends Project {
                 .signPassphrase(property("sign.passphrase"));
     }
 
+    @BuildCommand(summary = "Runs the JMH benchmarks, or those matching jmh.include, saving the results in build/jmh")
+    public void jmh() throws Exception {
+        compile();
+
+        var results = new File(buildDirectory(), "jmh");
+        if (!results.exists() && !results.mkdirs()) {
+            throw new IOException("Could not create directory: " + results.getAbsolutePath());
+        }
+        var options = new ArrayList<>(List.of("-rf", "json", "-rff",
+                new File(results, name + "-" + version + ".json").getAbsolutePath()));
+        var include = property("jmh.include");
+        if (include != null && !include.isBlank()) {
+            options.add(include);
+        }
+        new RunOperation()
+                .fromProject(this)
+                .mainClass("org.openjdk.jmh.Main")
+                .classpath(testClasspath())
+                .runOptions(options)
+                .execute();
+    }
+
     public static void main(String[] args) {
         new CompileKawaOperationBuild().start(args);
     }
@@ -0,0 +1,760 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import rife.bld.BaseProject;
+import rife.bld.operations.AbstractOperation;
+
+/**
+ * Benchmarks the procedures of compiled Kawa modules.
+ * <p>
+ * The benchmarks are the procedures without arguments whose name starts with {@value #PREFIX}, defined at the top
+ * level of the sources in the {@link #sourceDirectories() source directories}, e.g.
+ * {@code (define (bench-sort) (list-sort < data))}. Each benchmark runs in its own forked JVMs, with warmup and
+ * measurement iterations of a fixed time, and its throughput and allocation rate are reported. When a
+ * {@link #baselineFile(File) baseline} was recorded, a benchmark that is slower or allocates more than the baseline
+ * beyond the {@link #tolerance(double) tolerance} fails the build.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public class BenchKawaOperation extends AbstractOperation<BenchKawaOperation> {
+    /**
+     * The prefix of the names of benchmark procedures.
+     */
+    public static final String PREFIX = "bench-";
+    // allocations below this many bytes per call are noise
+    private static final double ALLOCATION_SLACK = 16.0;
+    private static final String HEADER = "# benchmark\tops/s\terror\tbytes/op";
+    private final List<String> classpath_ = new ArrayList<>();
+    private final List<String> jvmOptions_ = new ArrayList<>();
+    private final List<Result> results_ = new ArrayList<>();
+    private final List<File> sourceDirectories_ = new ArrayList<>();
+    private File baselineFile_;
+    private File classesDirectory_;
+    private int forks_ = 2;
+    private long iterationMillis_ = 1000L;
+    private int measurementIterations_ = 5;
+    private File resultsFile_;
+    private double tolerance_ = 0.1;
+    private boolean updateBaseline_;
+    private int warmupIterations_ = 5;
+
+    /**
+     * Finds the benchmark procedures defined in the sources of directories.
+     *
+     * @param directories      the source directories
+     * @param classesDirectory the directory the sources were compiled to, to find the class of each module
+     * @return the benchmarks, in source order
+     * @throws IOException if a source could not be read
+     */
+    static List<Benchmark> benchmarks(Collection<File> directories, File classesDirectory) throws IOException {
+        var benchmarks = new ArrayList<Benchmark>();
+        for (var directory : directories) {
+            for (var source : CompileKawaOperation.getKawaFileList(directory)) {
+                List<Object> forms;
+                try {
+                    forms = KawaForms.read(KawaModuleHeader.text(source.toPath()));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Could not read " + source.getPath() + ": " + e.getMessage(), e);
+                }
+                var procedures = procedures(forms);
+                if (!procedures.isEmpty()) {
+                    var module = moduleClass(source, directory, KawaModuleHeader.of(forms, source), classesDirectory);
+                    procedures.forEach(procedure -> benchmarks.add(new Benchmark(module, procedure)));
+                }
+            }
+        }
+        return benchmarks;
+    }
+
+    // Returns the names of the benchmark procedures visible after requiring a module. A library only exports the
+    // names of its export declarations, and a module those of its module-export declarations when it has any.
+    private static List<String> procedures(List<Object> forms) {
+        var defined = new ArrayList<String>();
+        var exports = new LinkedHashMap<String, String>();
+        var restricted = collect(forms, defined, exports);
+        var procedures = new ArrayList<String>();
+        for (var name : defined) {
+            if (!restricted) {
+                procedures.add(name);
+            } else if (exports.containsKey(name)) {
+                procedures.add(exports.get(name));
+            }
+        }
+        return procedures;
+    }
+
+    // Collects the top-level benchmark procedures and the exported names, by their internal name, and returns whether
+    // the exports are declared
+    private static boolean collect(List<Object> forms, List<String> procedures, Map<String, String> exports) {
+        var restricted = false;
+        for (var form : forms) {
+            if (!(form instanceof List<?> list) || list.isEmpty() || !(list.get(0) instanceof String head)) {
+                continue;
+            }
+            var args = castList(list.subList(1, list.size()));
+            switch (head) {
+                case "define" -> {
+                    if (!args.isEmpty() && args.get(0) instanceof List<?> signature && signature.size() == 1
+                            && signature.get(0) instanceof String name && name.startsWith(PREFIX)) {
+                        procedures.add(name);
+                    }
+                }
+                case "define-library" -> {
+                    collect(args, procedures, exports);
+                    restricted = true;
+                }
+                case "begin" -> restricted |= collect(args, procedures, exports);
+                case "export", "module-export" -> {
+                    for (var spec : args) {
+                        if (spec instanceof String name) {
+                            exports.put(name, name);
+                        } else if (spec instanceof List<?> rename && rename.size() == 3
+                                && "rename".equals(rename.get(0)) && rename.get(1) instanceof String internal
+                                && rename.get(2) instanceof String external) {
+                            exports.put(internal, external);
+                        }
+                    }
+                    restricted = true;
+                }
+                default -> {
+                    // not a definition
+                }
+            }
+        }
+        return restricted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> castList(List<?> list) {
+        return (List<Object>) list;
+    }
+
+    // Returns the class of a module: its declared name, or else the class compiled from its path or file name
+    private static String moduleClass(File source, File directory, KawaModuleHeader header, File classesDirectory) {
+        var candidates = new ArrayList<String>();
+        if (header.name() != null) {
+            candidates.add(header.name());
+        }
+        var relative = directory.toPath().relativize(source.toPath()).toString();
+        relative = relative.substring(0, relative.lastIndexOf('.'));
+        candidates.add(relative.replace(File.separatorChar, '.'));
+        var name = source.getName();
+        candidates.add(name.substring(0, name.lastIndexOf('.')));
+
+        for (var candidate : candidates) {
+            if (classesDirectory != null
+                    && new File(classesDirectory, candidate.replace('.', File.separatorChar) + ".class").isFile()) {
+                return candidate;
+            }
+        }
+        return candidates.get(0);
+    }
+
+    /**
+     * Compares results with a baseline.
+     *
+     * @param results   the results
+     * @param baseline  the baseline results, by benchmark name
+     * @param tolerance the tolerated relative regression, e.g. {@code 0.1} for 10%
+     * @return a message for each regression
+     */
+    static List<String> regressions(Collection<Result> results, Map<String, Result> baseline, double tolerance) {
+        var regressions = new ArrayList<String>();
+        for (var result : results) {
+            var base = baseline.get(result.benchmark());
+            if (base == null) {
+                continue;
+            }
+            if (result.throughput() < base.throughput() * (1.0 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.1f ops/s, baseline %.1f ops/s (%+.1f%%)",
+                        result.benchmark(), result.throughput(), base.throughput(),
+                        100.0 * (result.throughput() / base.throughput() - 1.0)));
+            }
+            if (result.bytesPerOp() > base.bytesPerOp() * (1.0 + tolerance) + ALLOCATION_SLACK) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.1f bytes/op, baseline %.1f bytes/op",
+                        result.benchmark(), result.bytesPerOp(), base.bytesPerOp()));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Reads results written by {@link #write(File, Collection)}.
+     *
+     * @param file the results file
+     * @return the results, by benchmark name, empty if the file does not exist
+     * @throws IOException if the file could not be read
+     */
+    static Map<String, Result> read(File file) throws IOException {
+        var results = new LinkedHashMap<String, Result>();
+        if (!file.isFile()) {
+            return results;
+        }
+        for (var line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            var fields = line.split("\t");
+            if (fields.length != 4) {
+                throw new IOException("Invalid Kawa benchmark results in " + file.getPath() + ": " + line);
+            }
+            try {
+                results.put(fields[0], new Result(fields[0], Double.parseDouble(fields[1]),
+                        Double.parseDouble(fields[2]), Double.parseDouble(fields[3])));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Kawa benchmark results in " + file.getPath() + ": " + line, e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Writes results, one benchmark per line.
+     *
+     * @param file    the results file
+     * @param results the results
+     * @throws IOException if the file could not be written
+     */
+    static void write(File file, Collection<Result> results) throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add(HEADER);
+        for (var result : results) {
+            lines.add(String.format(Locale.ROOT, "%s\t%.3f\t%.3f\t%.1f", result.benchmark(), result.throughput(),
+                    result.error(), result.bytesPerOp()));
+        }
+        var parent = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(parent.toPath());
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Provides the file of the baseline results the benchmarks are compared with.
+     * <p>
+     * Keep this file under version control, and record it again with {@link #updateBaseline(boolean)} after an
+     * intended change of performance.
+     *
+     * @param file the baseline file, or {@code null} to not compare the results
+     * @return this operation instance
+     */
+    public BenchKawaOperation baselineFile(File file) {
+        baselineFile_ = file;
+        return this;
+    }
+
+    /**
+     * Retrieves the file of the baseline results.
+     *
+     * @return the baseline file, or {@code null} if none
+     */
+    public File baselineFile() {
+        return baselineFile_;
+    }
+
+    /**
+     * Provides the directory the benchmark modules were compiled to, which is also added to the classpath.
+     *
+     * @param directory the classes directory
+     * @return this operation instance
+     */
+    public BenchKawaOperation classesDirectory(File directory) {
+        classesDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the directory the benchmark modules were compiled to.
+     *
+     * @return the classes directory
+     */
+    public File classesDirectory() {
+        return classesDirectory_;
+    }
+
+    /**
+     * Provides the classpath the benchmarks run with, besides the classes directory.
+     *
+     * @param classpath one or more classpath entries
+     * @return this operation instance
+     */
+    public BenchKawaOperation classpath(String... classpath) {
+        classpath_.addAll(List.of(classpath));
+        return this;
+    }
+
+    /**
+     * Provides the classpath the benchmarks run with, besides the classes directory.
+     *
+     * @param classpath the classpath entries
+     * @return this operation instance
+     */
+    public BenchKawaOperation classpath(Collection<String> classpath) {
+        classpath_.addAll(classpath);
+        return this;
+    }
+
+    /**
+     * Retrieves the classpath the benchmarks run with, besides the classes directory.
+     *
+     * @return the classpath entries
+     */
+    public List<String> classpath() {
+        return classpath_;
+    }
+
+    /**
+     * Runs the benchmarks, then compares them with the baseline or records them as the new baseline.
+     *
+     * @throws IOException if a benchmark regressed, or an error occurs
+     */
+    @Override
+    @SuppressWarnings("PMD.SystemPrintln")
+    public void execute() throws IOException {
+        if (classesDirectory_ == null) {
+            throw new IllegalArgumentException("A classes directory must be specified.");
+        }
+
+        results_.clear();
+        var benchmarks = benchmarks(sourceDirectories_, classesDirectory_);
+        if (benchmarks.isEmpty()) {
+            if (!silent()) {
+                System.out.println("No Kawa benchmarks to run.");
+            }
+            return;
+        }
+
+        executeRunBenchmarks(benchmarks);
+        if (resultsFile_ != null) {
+            write(resultsFile_, results_);
+        }
+        if (baselineFile_ == null) {
+            return;
+        }
+        if (updateBaseline_) {
+            write(baselineFile_, results_);
+            if (!silent()) {
+                System.out.println("Recorded the Kawa benchmark baseline in " + baselineFile_.getPath() + '.');
+            }
+            return;
+        }
+
+        var regressions = regressions(results_, read(baselineFile_), tolerance_);
+        if (!regressions.isEmpty()) {
+            throw new IOException("Kawa benchmarks regressed:\n" + String.join("\n", regressions));
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, runs the benchmarks in forked JVMs.
+     *
+     * @param benchmarks the benchmarks
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeRunBenchmarks(List<Benchmark> benchmarks) throws IOException {
+        var classpath = new ArrayList<String>();
+        classpath.add(classesDirectory_.getAbsolutePath());
+        classpath.addAll(classpath_);
+        classpath.add(DaemonKawaCompiler.classpath());
+        var path = String.join(File.pathSeparator, classpath);
+
+        for (var benchmark : benchmarks) {
+            var iterations = new ArrayList<long[]>();
+            for (var fork = 0; fork < forks_; fork++) {
+                iterations.addAll(runFork(benchmark, path));
+            }
+            var result = Result.of(benchmark.name(), iterations);
+            results_.add(result);
+            if (!silent()) {
+                System.out.println(String.format(Locale.ROOT, "%s: %.1f +/- %.1f ops/s, %.1f bytes/op, %.1f MB/s",
+                        result.benchmark(), result.throughput(), result.error(), result.bytesPerOp(),
+                        result.allocationRate() / 1_000_000.0));
+            }
+        }
+    }
+
+    /**
+     * Configures a benchmark operation from a {@link BaseProject}.
+     * <p>
+     * Sets the following from the project:
+     * <ul>
+     *     <li>{@link #sourceDirectories() sourceDirectories} to the {@code kawa} directory in
+     *     {@link BaseProject#srcTestDirectory() srcTestDirectory}</li>
+     *     <li>{@link #classesDirectory() classesDirectory} to the
+     *     {@link BaseProject#buildTestDirectory() buildTestDirectory}</li>
+     *     <li>{@link #classpath() classpath} to the test classpath</li>
+     *     <li>{@link #resultsFile() resultsFile} to {@code bench/kawa-bench.tsv} in the build directory</li>
+     *     <li>{@link #baselineFile() baselineFile} to {@code kawa-bench-baseline.tsv} in the project directory</li>
+     * </ul>
+     *
+     * @param project the project to configure the benchmark operation from
+     * @return this operation instance
+     */
+    public BenchKawaOperation fromProject(BaseProject project) {
+        return sourceDirectories(new File(project.srcTestDirectory(), "kawa"))
+                .classesDirectory(project.buildTestDirectory())
+                .classpath(project.testClasspath())
+                .resultsFile(new File(project.buildDirectory(), "bench" + File.separator + "kawa-bench.tsv"))
+                .baselineFile(new File(project.workDirectory(), "kawa-bench-baseline.tsv"));
+    }
+
+    /**
+     * Provides the number of JVMs each benchmark is run in, one after the other.
+     * <p>
+     * Defaults to {@code 2}, so that the results do not depend on the optimizations of a single JVM.
+     *
+     * @param forks the number of JVMs
+     * @return this operation instance
+     */
+    public BenchKawaOperation forks(int forks) {
+        if (forks < 1) {
+            throw new IllegalArgumentException("The number of forks must be at least 1.");
+        }
+        forks_ = forks;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of JVMs each benchmark is run in.
+     *
+     * @return the number of JVMs
+     */
+    public int forks() {
+        return forks_;
+    }
+
+    /**
+     * Provides the time of each warmup and measurement iteration.
+     * <p>
+     * Defaults to one second.
+     *
+     * @param millis the iteration time, in milliseconds
+     * @return this operation instance
+     */
+    public BenchKawaOperation iterationMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("The iteration time must be at least 1 ms.");
+        }
+        iterationMillis_ = millis;
+        return this;
+    }
+
+    /**
+     * Retrieves the time of each warmup and measurement iteration.
+     *
+     * @return the iteration time, in milliseconds
+     */
+    public long iterationMillis() {
+        return iterationMillis_;
+    }
+
+    /**
+     * Provides options of the JVMs the benchmarks run in, e.g. {@code -Xmx256m}.
+     *
+     * @param options one or more JVM options
+     * @return this operation instance
+     */
+    public BenchKawaOperation jvmOptions(String... options) {
+        jvmOptions_.addAll(List.of(options));
+        return this;
+    }
+
+    /**
+     * Provides options of the JVMs the benchmarks run in, e.g. {@code -Xmx256m}.
+     *
+     * @param options the JVM options
+     * @return this operation instance
+     */
+    public BenchKawaOperation jvmOptions(Collection<String> options) {
+        jvmOptions_.addAll(options);
+        return this;
+    }
+
+    /**
+     * Retrieves the options of the JVMs the benchmarks run in.
+     *
+     * @return the JVM options
+     */
+    public List<String> jvmOptions() {
+        return jvmOptions_;
+    }
+
+    /**
+     * Provides the number of measurement iterations in each JVM.
+     * <p>
+     * Defaults to {@code 5}.
+     *
+     * @param iterations the number of measurement iterations
+     * @return this operation instance
+     */
+    public BenchKawaOperation measurementIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("The number of measurement iterations must be at least 1.");
+        }
+        measurementIterations_ = iterations;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of measurement iterations in each JVM.
+     *
+     * @return the number of measurement iterations
+     */
+    public int measurementIterations() {
+        return measurementIterations_;
+    }
+
+    /**
+     * Retrieves the results of the last execution.
+     *
+     * @return the results
+     */
+    public List<Result> results() {
+        return results_;
+    }
+
+    /**
+     * Provides the file the results are written to.
+     *
+     * @param file the results file, or {@code null} to not write the results
+     * @return this operation instance
+     */
+    public BenchKawaOperation resultsFile(File file) {
+        resultsFile_ = file;
+        return this;
+    }
+
+    /**
+     * Retrieves the file the results are written to.
+     *
+     * @return the results file, or {@code null} if none
+     */
+    public File resultsFile() {
+        return resultsFile_;
+    }
+
+    /**
+     * Provides the directories of the sources defining benchmark procedures.
+     *
+     * @param directories one or more source directories
+     * @return this operation instance
+     */
+    public BenchKawaOperation sourceDirectories(File... directories) {
+        sourceDirectories_.addAll(List.of(directories));
+        return this;
+    }
+
+    /**
+     * Provides the directories of the sources defining benchmark procedures.
+     *
+     * @param directories the source directories
+     * @return this operation instance
+     */
+    public BenchKawaOperation sourceDirectories(Collection<File> directories) {
+        sourceDirectories_.addAll(directories);
+        return this;
+    }
+
+    /**
+     * Retrieves the directories of the sources defining benchmark procedures.
+     *
+     * @return the source directories
+     */
+    public List<File> sourceDirectories() {
+        return sourceDirectories_;
+    }
+
+    /**
+     * Provides the tolerated regression compared to the baseline, in throughput or in bytes allocated per call.
+     * <p>
+     * Defaults to {@code 0.1}, for 10%.
+     *
+     * @param tolerance the tolerated relative regression
+     * @return this operation instance
+     */
+    public BenchKawaOperation tolerance(double tolerance) {
+        if (tolerance < 0.0) {
+            throw new IllegalArgumentException("The tolerance must not be negative.");
+        }
+        tolerance_ = tolerance;
+        return this;
+    }
+
+    /**
+     * Retrieves the tolerated regression compared to the baseline.
+     *
+     * @return the tolerated relative regression
+     */
+    public double tolerance() {
+        return tolerance_;
+    }
+
+    /**
+     * Provides whether the results are recorded as the new baseline, instead of being compared with it.
+     *
+     * @param updateBaseline {@code true} to record the baseline
+     * @return this operation instance
+     */
+    public BenchKawaOperation updateBaseline(boolean updateBaseline) {
+        updateBaseline_ = updateBaseline;
+        return this;
+    }
+
+    /**
+     * Retrieves whether the results are recorded as the new baseline.
+     *
+     * @return {@code true} if the baseline is recorded
+     */
+    public boolean isUpdateBaseline() {
+        return updateBaseline_;
+    }
+
+    /**
+     * Provides the number of warmup iterations in each JVM, which are not measured.
+     * <p>
+     * Defaults to {@code 5}.
+     *
+     * @param iterations the number of warmup iterations
+     * @return this operation instance
+     */
+    public BenchKawaOperation warmupIterations(int iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("The number of warmup iterations must not be negative.");
+        }
+        warmupIterations_ = iterations;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of warmup iterations in each JVM.
+     *
+     * @return the number of warmup iterations
+     */
+    public int warmupIterations() {
+        return warmupIterations_;
+    }
+
+    // Runs a benchmark in a forked JVM, returning the calls, nanoseconds and allocated bytes of each iteration
+    private List<long[]> runFork(Benchmark benchmark, String classpath) throws IOException {
+        var command = new ArrayList<String>();
+        command.add(DaemonKawaCompiler.javaTool());
+        command.addAll(jvmOptions_);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(KawaBenchRunner.class.getName());
+        command.add(benchmark.module());
+        command.add(benchmark.procedure());
+        command.add(String.valueOf(warmupIterations_));
+        command.add(String.valueOf(measurementIterations_));
+        command.add(String.valueOf(iterationMillis_));
+
+        var process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        var iterations = new ArrayList<long[]>();
+        try (var in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                var fields = line.split("\t");
+                if (fields.length == 4 && KawaBenchRunner.ITERATION.equals(fields[0])) {
+                    iterations.add(new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            Long.parseLong(fields[3])});
+                }
+            }
+            var exitCode = process.waitFor();
+            if (exitCode != 0 || iterations.size() != measurementIterations_) {
+                throw new IOException("The Kawa benchmark " + benchmark.name() + " failed with code " + exitCode
+                        + '.');
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the Kawa benchmark " + benchmark.name() + '.', e);
+        }
+        return iterations;
+    }
+
+    /**
+     * A benchmark procedure.
+     *
+     * @param module    the class name of the module defining the procedure
+     * @param procedure the name of the procedure
+     */
+    public record Benchmark(String module, String procedure) {
+        /**
+         * Returns the name of the benchmark.
+         *
+         * @return the module and procedure names, separated by a colon
+         */
+        public String name() {
+            return module + ':' + procedure;
+        }
+    }
+
+    /**
+     * The result of a benchmark.
+     *
+     * @param benchmark  the name of the benchmark
+     * @param throughput the mean number of calls per second
+     * @param error      the standard deviation of the number of calls per second between iterations
+     * @param bytesPerOp the mean number of bytes allocated per call
+     */
+    public record Result(String benchmark, double throughput, double error, double bytesPerOp) {
+        /**
+         * Computes the result of a benchmark from its iterations.
+         *
+         * @param benchmark  the name of the benchmark
+         * @param iterations the calls, nanoseconds and allocated bytes of each iteration
+         * @return the result
+         */
+        static Result of(String benchmark, List<long[]> iterations) {
+            var rates = iterations.stream().mapToDouble(iteration -> iteration[0] * 1e9 / iteration[1]).toArray();
+            var mean = 0.0;
+            for (var rate : rates) {
+                mean += rate / rates.length;
+            }
+            var variance = 0.0;
+            for (var rate : rates) {
+                variance += (rate - mean) * (rate - mean) / Math.max(1, rates.length - 1);
+            }
+            var calls = iterations.stream().mapToLong(iteration -> iteration[0]).sum();
+            var bytes = iterations.stream().mapToLong(iteration -> iteration[2]).sum();
+            return new Result(benchmark, mean, Math.sqrt(variance), calls == 0 ? 0.0 : (double) bytes / calls);
+        }
+
+        /**
+         * Returns the allocation rate.
+         *
+         * @return the number of bytes allocated per second
+         */
+        public double allocationRate() {
+            return bytesPerOp * throughput;
+        }
+    }
+}
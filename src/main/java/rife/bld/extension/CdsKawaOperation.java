@@ -0,0 +1,444 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import rife.bld.BaseProject;
+import rife.bld.operations.AbstractOperation;
+
+/**
+ * Creates a class data sharing (CDS) archive for a compiled Kawa application, or for the Kawa compiler.
+ * <p>
+ * The application is launched once with its {@link #trainingArguments() training arguments}, and the classes it
+ * loads, including the Kawa runtime and the compiled modules, are dumped to the {@link #archiveFile() archive} when
+ * it exits. Launching the application with {@code -XX:SharedArchiveFile=<archive>} and the same classpath then maps
+ * these classes instead of loading and verifying them again. The startup time of the application is compared with and
+ * without the archive afterward.
+ * <p>
+ * Only classes loaded from JAR files can be archived, so the directories on the classpath are packaged to JAR files
+ * next to the archive, and the application must be launched with these JAR files.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public class CdsKawaOperation extends AbstractOperation<CdsKawaOperation> {
+    private final List<String> classpath_ = new ArrayList<>();
+    private final List<String> jvmOptions_ = new ArrayList<>();
+    private final List<Duration> startupWithArchive_ = new ArrayList<>();
+    private final List<Duration> startupWithoutArchive_ = new ArrayList<>();
+    private final List<String> trainingArguments_ = new ArrayList<>();
+    private File archiveFile_;
+    private CompileKawaOperation compileOperation_;
+    private int comparisonRuns_ = 5;
+    private String mainClass_;
+
+    // Returns the median of durations
+    private static Duration median(List<Duration> durations) {
+        if (durations.isEmpty()) {
+            return null;
+        }
+        var sorted = new ArrayList<>(durations);
+        sorted.sort(null);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * Provides the CDS archive file to create.
+     *
+     * @param archiveFile the archive file
+     * @return this operation instance
+     */
+    public CdsKawaOperation archiveFile(File archiveFile) {
+        archiveFile_ = archiveFile;
+        return this;
+    }
+
+    /**
+     * Retrieves the CDS archive file to create.
+     *
+     * @return the archive file
+     */
+    public File archiveFile() {
+        return archiveFile_;
+    }
+
+    /**
+     * Provides the classpath of the application.
+     *
+     * @param classpath one or more classpath entries
+     * @return this operation instance
+     */
+    public CdsKawaOperation classpath(String... classpath) {
+        classpath_.addAll(List.of(classpath));
+        return this;
+    }
+
+    /**
+     * Provides the classpath of the application.
+     *
+     * @param classpath the classpath entries
+     * @return this operation instance
+     */
+    public CdsKawaOperation classpath(Collection<String> classpath) {
+        classpath_.addAll(classpath);
+        return this;
+    }
+
+    /**
+     * Retrieves the classpath of the application.
+     *
+     * @return the classpath entries
+     */
+    public List<String> classpath() {
+        return classpath_;
+    }
+
+    /**
+     * Provides the number of times the application is launched with and without the archive to compare their
+     * startup times.
+     * <p>
+     * Defaults to {@code 5}, the median of each is reported. Set to {@code 0} to skip the comparison.
+     *
+     * @param runs the number of comparison runs
+     * @return this operation instance
+     */
+    public CdsKawaOperation comparisonRuns(int runs) {
+        if (runs < 0) {
+            throw new IllegalArgumentException("The number of comparison runs must not be negative.");
+        }
+        comparisonRuns_ = runs;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of times the application is launched with and without the archive to compare their
+     * startup times.
+     *
+     * @return the number of comparison runs
+     */
+    public int comparisonRuns() {
+        return comparisonRuns_;
+    }
+
+    /**
+     * Creates the archive for the Kawa compiler instead of an application.
+     * <p>
+     * The archive is trained by compiling the main sources of the given compile operation in a compiler worker, and
+     * can then be used by the {@link CompileKawaOperation#fork(boolean) forked workers} with
+     * {@link CompileKawaOperation#jvmOptions(String...) jvmOptions}{@code ("-XX:SharedArchiveFile=<archive>")}. The
+     * extension must be loaded from its JAR file for the compiler classes to be archived.
+     *
+     * @param operation the compile operation whose main sources train the compiler
+     * @return this operation instance
+     */
+    public CdsKawaOperation compiler(CompileKawaOperation operation) {
+        compileOperation_ = operation;
+        return this;
+    }
+
+    /**
+     * Retrieves the compile operation whose main sources train the Kawa compiler.
+     *
+     * @return the compile operation, or {@code null} if the archive is created for an application
+     */
+    public CompileKawaOperation compiler() {
+        return compileOperation_;
+    }
+
+    /**
+     * Creates the CDS archive, then compares the startup time with and without it.
+     */
+    @Override
+    @SuppressWarnings("PMD.SystemPrintln")
+    public void execute() throws IOException {
+        if (archiveFile_ == null) {
+            throw new IllegalArgumentException("An archive file must be specified.");
+        }
+        if (compileOperation_ == null && mainClass_ == null) {
+            throw new IllegalArgumentException("A main class must be specified.");
+        }
+
+        startupWithArchive_.clear();
+        startupWithoutArchive_.clear();
+        var training = compileOperation_ == null ? null : trainingSources();
+        var classpath = compileOperation_ == null ? archiveClasspath() : null;
+
+        executeCreateArchive(training, classpath);
+        if (comparisonRuns_ > 0) {
+            executeCompareStartup(training, classpath);
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, launches the application once to dump its classes to the
+     * archive.
+     *
+     * @param training  the sources compiled to train the Kawa compiler, or {@code null} for an application
+     * @param classpath the classpath of the application
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeCreateArchive(List<File> training, String classpath) throws IOException {
+        var parent = archiveFile_.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        Files.deleteIfExists(archiveFile_.toPath());
+
+        launch(training, classpath, "-XX:ArchiveClassesAtExit=" + archiveFile_.getAbsolutePath(), !silent());
+        if (!archiveFile_.isFile()) {
+            throw new IOException("The CDS archive was not created, only classes loaded from JAR files can be "
+                    + "archived: " + archiveFile_.getAbsolutePath());
+        }
+        if (!silent()) {
+            System.out.println("Created CDS archive " + archiveFile_.getPath() + " (" + archiveFile_.length() / 1024L
+                    + " KiB).");
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, compares the startup time with and without the archive.
+     *
+     * @param training  the sources compiled to train the Kawa compiler, or {@code null} for an application
+     * @param classpath the classpath of the application
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeCompareStartup(List<File> training, String classpath) throws IOException {
+        var useArchive = "-XX:SharedArchiveFile=" + archiveFile_.getAbsolutePath();
+        for (var i = 0; i < comparisonRuns_; i++) {
+            // alternate the runs, so that both benefit alike from the file system cache
+            startupWithoutArchive_.add(launch(training, classpath, null, false));
+            startupWithArchive_.add(launch(training, classpath, useArchive, false));
+        }
+
+        if (!silent()) {
+            var without = startupWithoutArchive().toMillis();
+            var with = startupWithArchive().toMillis();
+            System.out.println("Startup time without the CDS archive: " + without + " ms, with the CDS archive: "
+                    + with + " ms" + (without > 0 ? " (" + (100L * (without - with) / without) + "% faster)." : "."));
+        }
+    }
+
+    /**
+     * Configures a CDS operation from a {@link BaseProject}.
+     * <p>
+     * Sets the following from the project:
+     * <ul>
+     *     <li>{@link #mainClass() mainClass}</li>
+     *     <li>{@link #classpath() classpath} to the run classpath</li>
+     *     <li>{@link #archiveFile() archiveFile} to {@code cds/app.jsa} in the build directory</li>
+     * </ul>
+     *
+     * @param project the project to configure the CDS operation from
+     * @return this operation instance
+     */
+    public CdsKawaOperation fromProject(BaseProject project) {
+        return mainClass(project.mainClass())
+                .classpath(project.runClasspath())
+                .archiveFile(new File(project.buildDirectory(), "cds" + File.separator + "app.jsa"));
+    }
+
+    /**
+     * Provides options of the JVM the application is launched in, e.g. {@code -Xmx256m}.
+     * <p>
+     * The archive can only be used with the same garbage collector and heap options it was created with.
+     *
+     * @param options one or more JVM options
+     * @return this operation instance
+     */
+    public CdsKawaOperation jvmOptions(String... options) {
+        jvmOptions_.addAll(List.of(options));
+        return this;
+    }
+
+    /**
+     * Provides options of the JVM the application is launched in.
+     *
+     * @param options the JVM options
+     * @return this operation instance
+     * @see #jvmOptions(String...)
+     */
+    public CdsKawaOperation jvmOptions(Collection<String> options) {
+        jvmOptions_.addAll(options);
+        return this;
+    }
+
+    /**
+     * Retrieves the options of the JVM the application is launched in.
+     *
+     * @return the JVM options
+     */
+    public List<String> jvmOptions() {
+        return jvmOptions_;
+    }
+
+    /**
+     * Provides the main class of the application.
+     *
+     * @param mainClass the fully qualified name of the main class
+     * @return this operation instance
+     */
+    public CdsKawaOperation mainClass(String mainClass) {
+        mainClass_ = mainClass;
+        return this;
+    }
+
+    /**
+     * Retrieves the main class of the application.
+     *
+     * @return the fully qualified name of the main class
+     */
+    public String mainClass() {
+        return mainClass_;
+    }
+
+    /**
+     * Retrieves the median startup time with the archive, as measured by the last execution.
+     *
+     * @return the startup time, or {@code null} if it was not measured
+     */
+    public Duration startupWithArchive() {
+        return median(startupWithArchive_);
+    }
+
+    /**
+     * Retrieves the median startup time without the archive, as measured by the last execution.
+     *
+     * @return the startup time, or {@code null} if it was not measured
+     */
+    public Duration startupWithoutArchive() {
+        return median(startupWithoutArchive_);
+    }
+
+    /**
+     * Provides arguments of the application for the training run.
+     * <p>
+     * The training run should go through the usual code paths of the application, so that the classes they load are
+     * archived, and exit quickly, since it is also used to compare the startup times.
+     *
+     * @param arguments one or more arguments
+     * @return this operation instance
+     */
+    public CdsKawaOperation trainingArguments(String... arguments) {
+        trainingArguments_.addAll(List.of(arguments));
+        return this;
+    }
+
+    /**
+     * Provides arguments of the application for the training run.
+     *
+     * @param arguments the arguments
+     * @return this operation instance
+     * @see #trainingArguments(String...)
+     */
+    public CdsKawaOperation trainingArguments(Collection<String> arguments) {
+        trainingArguments_.addAll(arguments);
+        return this;
+    }
+
+    /**
+     * Retrieves the arguments of the application for the training run.
+     *
+     * @return the arguments
+     */
+    public List<String> trainingArguments() {
+        return trainingArguments_;
+    }
+
+    // Returns the classpath of the application, with its directories packaged to JAR files next to the archive
+    private String archiveClasspath() throws IOException {
+        var parent = archiveFile_.getAbsoluteFile().getParentFile();
+        var classpath = new LinkedHashSet<String>();
+        for (var entry : classpath_) {
+            var file = new File(entry);
+            if (file.isDirectory()) {
+                var jar = new File(parent, file.getName() + ".jar");
+                KawaJarWriter.write(file, jar, KawaJarWriter.timestamp());
+                classpath.add(jar.getAbsolutePath());
+            } else {
+                classpath.add(file.getAbsolutePath());
+            }
+        }
+        return String.join(File.pathSeparator, classpath);
+    }
+
+    // Launches the application, or the Kawa compiler, with an additional JVM option, returning the elapsed time
+    private Duration launch(List<File> training, String classpath, String option, boolean output)
+            throws IOException {
+        var options = new ArrayList<>(jvmOptions_);
+        if (option != null) {
+            options.add(option);
+        }
+
+        var start = System.nanoTime();
+        if (training != null) {
+            var destination = Files.createTempDirectory("bld-kawa-cds").toFile();
+            try (var compiler = new ForkedKawaCompiler(options)) {
+                compiler.compile(training, destination);
+            } finally {
+                KawaClassOutputs.delete(destination);
+            }
+        } else {
+            var command = new ArrayList<String>();
+            command.add(DaemonKawaCompiler.javaTool());
+            command.addAll(options);
+            command.add("-cp");
+            command.add(classpath);
+            command.add(mainClass_);
+            command.addAll(trainingArguments_);
+
+            var builder = new ProcessBuilder(command).redirectErrorStream(true);
+            builder.redirectOutput(output ? ProcessBuilder.Redirect.INHERIT : ProcessBuilder.Redirect.DISCARD);
+            try {
+                var exitCode = builder.start().waitFor();
+                if (exitCode != 0) {
+                    throw new IOException(mainClass_ + " exited with code " + exitCode + '.');
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while running " + mainClass_ + '.', e);
+            }
+        }
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    // Returns the main sources of the compile operation, in the order of their dependencies
+    private List<File> trainingSources() throws IOException {
+        var sources = new KawaSourceScanner(compileOperation_.excludes(), null)
+                .scan(compileOperation_.mainSourceFiles(), compileOperation_.mainSourceDirectories());
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("The compile operation has no main sources to train the compiler.");
+        }
+
+        var graph = new KawaDependencyGraph(KawaSyntaxCheck.check(sources).headers(),
+                compileOperation_.mainSourceDirectories());
+        var ordered = new LinkedHashSet<File>();
+        graph.waves(sources).forEach(ordered::addAll);
+        // sources in dependency cycles last
+        ordered.addAll(graph.sources());
+        return new ArrayList<>(ordered);
+    }
+}
@@ -16,23 +16,31 @@
 
 package rife.bld.extension;
 
-import static kawa.repl.compileFiles;
-
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
-import gnu.expr.ModuleManager;
 import rife.bld.BaseProject;
 import rife.bld.operations.AbstractOperation;
-import rife.tools.FileUtils;
 
 /**
  * Compiles main Kawa sources in the relevant build directories.
@@ -45,191 +53,1930 @@ public class CompileKawaOperation extends AbstractOperation<CompileKawaOperation
      * The Kawa file (.scm) pattern.
      */
     public static final Pattern KAWA_FILE_PATTERNS = Pattern.compile("^.*\\.(scm|sld)$");
+    /**
+     * The default maximum size of the build cache, 1 GiB.
+     */
+    public static final long DEFAULT_BUILD_CACHE_SIZE = 1024L * 1024L * 1024L;
+    // rough heap retained by the compiler for each byte of source, until the compilation is done
+    private static final long HEAP_PER_SOURCE_BYTE = 200L;
+    // the number of modules with the largest classes printed by the class report
+    private static final int LARGEST_MODULES = 10;
     private static final Logger LOGGER = Logger.getLogger(CompileKawaOperation.class.getName());
+    // Unix domain socket paths are limited to about a hundred bytes
+    private static final int MAX_SOCKET_PATH = 100;
+    private static final String STRIP_DEBUG_INFO = "--strip-debug-info";
+    private final List<File> compileClasspath_ = new ArrayList<>();
+    private final List<KawaCompileListener> compileListeners_ = new ArrayList<>();
+    private final Collection<String> excludes_ = new ArrayList<>();
+    private final List<String> jvmOptions_ = new ArrayList<>();
+    private final List<File> libraryClasspath_ = new ArrayList<>();
     private final Collection<File> mainSourceDirectories_ = new ArrayList<>();
     private final Collection<File> mainSourceFiles_ = new ArrayList<>();
+    // the staging directory of each destination, while the changed sources are built
+    private final Map<File, File> staging_ = new HashMap<>();
     private final Collection<File> testSourceDirectories_ = new ArrayList<>();
     private final Collection<File> testSourceFiles_ = new ArrayList<>();
+    private long batchMemory_;
+    private int batchSize_;
+    private File buildCacheDirectory_;
+    private long buildCacheSize_ = DEFAULT_BUILD_CACHE_SIZE;
     private File buildMainDirectory_;
     private File buildTestDirectory_;
+    // the canonical changed sources, while executing
+    private Set<File> changedCanonical_;
+    private List<File> changedSources_;
+    private KawaDependencyGraph dependencyGraph_;
+    private boolean classReport_;
+    private KawaCompileOptions compileOptions_ = new KawaCompileOptions();
+    private boolean compileReport_;
+    private boolean daemon_;
+    private Duration daemonIdleTimeout_ = Duration.ofMinutes(30);
+    private boolean fork_;
+    private boolean incremental_;
+    private boolean mergeShards_;
+    private String moduleRegistry_;
+    private int shardCount_;
+    private File shardDirectory_;
+    private int shardIndex_;
+    private File shardTimings_;
+    private boolean stripDebugInfo_;
+    private boolean syntaxCheck_;
+    private File libraryCacheDirectory_;
+    private int parallelism_ = 1;
     private BaseProject project_;
+    private File workDirectory_;
+    private KawaWorkerPool workerPool_;
+    // whether the worker pool is provided, and kept open across executions
+    private boolean sharedWorkerPool_;
+
+
+    /**
+     * Returns the list of Kawa source file {{@code .scm and others}} contained in a given directory.
+     *
+     * @param directory the directory
+     * @return the list of Kawa files
+     */
+    public static Collection<File> getKawaFileList(File directory) {
+        if (directory == null) {
+            return Collections.emptyList();
+        }
+        try {
+            return new KawaSourceScanner(List.of(), null).scan(List.of(), List.of(directory));
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Could not list directory: " + directory.getAbsolutePath());
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Provides the jars and directories the sources are compiled with, e.g. the compile dependencies of the project.
+     *
+     * @param classpath one or more classpath entries
+     * @return this operation instance
+     */
+    public CompileKawaOperation compileClasspath(File... classpath) {
+        compileClasspath_.addAll(List.of(classpath));
+        return this;
+    }
+
+    /**
+     * Provides the jars and directories the sources are compiled with, e.g. the compile dependencies of the project.
+     *
+     * @param classpath the classpath entries
+     * @return this operation instance
+     */
+    public CompileKawaOperation compileClasspath(Collection<File> classpath) {
+        compileClasspath_.addAll(classpath);
+        return this;
+    }
+
+    /**
+     * Retrieves the jars and directories the sources are compiled with.
+     *
+     * @return the classpath entries
+     */
+    public List<File> compileClasspath() {
+        return compileClasspath_;
+    }
+
+    /**
+     * Adds a listener notified of the compilation of each module.
+     * <p>
+     * When listeners are added, or a {@link #compileReport(boolean) compile report} is requested, the modules are
+     * compiled one at a time, in order of their dependencies, so that each one can be measured. The listeners are
+     * notified once all the sources of a destination were compiled.
+     *
+     * @param listener the listener
+     * @return this operation instance
+     */
+    public CompileKawaOperation compileListener(KawaCompileListener listener) {
+        compileListeners_.add(listener);
+        return this;
+    }
+
+    /**
+     * Retrieves the listeners notified of the compilation of each module.
+     *
+     * @return the list of listeners
+     */
+    public List<KawaCompileListener> compileListeners() {
+        return compileListeners_;
+    }
+
+    /**
+     * Provides the options of the Kawa compiler, e.g. the {@link KawaCompileOptions#dev() dev} or
+     * {@link KawaCompileOptions#release() release} preset.
+     * <p>
+     * Changing the options recompiles all the sources. Sources compiled with options other than the defaults of the
+     * Kawa compiler are never compiled by the compiler loaded in the build, so that the options do not leak to other
+     * operations.
+     *
+     * @param options the compile options
+     * @return this operation instance
+     */
+    public CompileKawaOperation compileOptions(KawaCompileOptions options) {
+        compileOptions_ = options;
+        return this;
+    }
+
+    /**
+     * Retrieves the options of the Kawa compiler.
+     *
+     * @return the compile options
+     */
+    public KawaCompileOptions compileOptions() {
+        return compileOptions_;
+    }
+
+    /**
+     * Enables or disables writing a report of the compilation of each module.
+     * <p>
+     * The time, CPU time, allocations, class count and class sizes of each module are written as JSON and CSV to
+     * {@code <destination>-compile-report.json} and {@code <destination>-compile-report.csv} in the
+     * {@link #workDirectory() work directory}. Each compilation is also recorded as a {@code
+     * rife.bld.extension.KawaCompile} event when the JDK Flight Recorder is running.
+     *
+     * @param compileReport {@code true} to write a compile report
+     * @return this operation instance
+     * @see #compileListener(KawaCompileListener)
+     */
+    public CompileKawaOperation compileReport(boolean compileReport) {
+        compileReport_ = compileReport;
+        return this;
+    }
+
+    /**
+     * Determines whether a report of the compilation of each module is written.
+     *
+     * @return {@code true} if a compile report is written
+     */
+    public boolean isCompileReport() {
+        return compileReport_;
+    }
+
+    /**
+     * Enables or disables the report of the classes compiled from each main module.
+     * <p>
+     * Once the main sources are compiled, the number of classes of each module, their total size, the entries of
+     * their constant pools, their methods and the size of their debug information are written as JSON and CSV to
+     * {@code <destination>-class-report.json} and {@code <destination>-class-report.csv} in the
+     * {@link #workDirectory() work directory}. The modules with the largest classes are printed, and a warning is
+     * logged for every module with a class close to the constant pool limit of the JVM.
+     *
+     * @param classReport {@code true} to write a class report
+     * @return this operation instance
+     * @see #stripDebugInfo(boolean)
+     */
+    public CompileKawaOperation classReport(boolean classReport) {
+        classReport_ = classReport;
+        return this;
+    }
+
+    /**
+     * Determines whether a report of the classes compiled from each main module is written.
+     *
+     * @return {@code true} if a class report is written
+     */
+    public boolean isClassReport() {
+        return classReport_;
+    }
+
+    /**
+     * Enables or disables removing the line numbers and local variable names from the compiled main classes, e.g. for
+     * release builds.
+     * <p>
+     * The classes are smaller and faster to load, but stack traces no longer show line numbers. Only the classes
+     * compiled from the main sources are rewritten: the test classes, and the other classes of the build directory,
+     * are left intact. Changing this setting recompiles all the sources.
+     *
+     * @param stripDebugInfo {@code true} to strip the debug information
+     * @return this operation instance
+     */
+    public CompileKawaOperation stripDebugInfo(boolean stripDebugInfo) {
+        stripDebugInfo_ = stripDebugInfo;
+        return this;
+    }
+
+    /**
+     * Determines whether the line numbers and local variable names are removed from the compiled main classes.
+     *
+     * @return {@code true} if the debug information is stripped
+     */
+    public boolean isStripDebugInfo() {
+        return stripDebugInfo_;
+    }
+
+    /**
+     * Provides the estimated heap the compiler can use for each batch of sources.
+     * <p>
+     * The sources are compiled in batches, in order of their dependencies, each batch by a new copy of the Kawa
+     * compiler whose state is released once the batch is compiled. This keeps the peak heap usage of very large
+     * source trees bounded. The heap used by a batch is estimated from the size of its sources. Sources that are part
+     * of a dependency cycle are always compiled in the last batch.
+     *
+     * @param bytes the memory budget of a batch, in bytes, or {@code 0} for no budget
+     * @return this operation instance
+     * @see #batchSize(int)
+     */
+    public CompileKawaOperation batchMemory(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The batch memory must not be negative.");
+        }
+        batchMemory_ = bytes;
+        return this;
+    }
+
+    /**
+     * Retrieves the estimated heap the compiler can use for each batch of sources.
+     *
+     * @return the memory budget of a batch, in bytes, or {@code 0} for no budget
+     */
+    public long batchMemory() {
+        return batchMemory_;
+    }
+
+    /**
+     * Provides the maximum number of sources compiled in each batch.
+     *
+     * @param files the maximum number of sources in a batch, or {@code 0} for no maximum
+     * @return this operation instance
+     * @see #batchMemory(long)
+     */
+    public CompileKawaOperation batchSize(int files) {
+        if (files < 0) {
+            throw new IllegalArgumentException("The batch size must not be negative.");
+        }
+        batchSize_ = files;
+        return this;
+    }
+
+    /**
+     * Retrieves the maximum number of sources compiled in each batch.
+     *
+     * @return the maximum number of sources in a batch, or {@code 0} for no maximum
+     */
+    public int batchSize() {
+        return batchSize_;
+    }
+
+    /**
+     * Provides the directory of the build cache, which can be shared by several checkouts of the same sources.
+     * <p>
+     * The class files compiled from each source are stored in the cache, under a key computed from the content of the
+     * source, the content of the modules it imports, directly or transitively, the Kawa version and the compile
+     * options. Sources that must be compiled are restored from the cache instead, when possible.
+     *
+     * @param directory the build cache directory, or {@code null} to not use a build cache
+     * @return this operation instance
+     */
+    public CompileKawaOperation buildCacheDirectory(File directory) {
+        buildCacheDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the directory of the build cache.
+     *
+     * @return the build cache directory, or {@code null} if none
+     */
+    public File buildCacheDirectory() {
+        return buildCacheDirectory_;
+    }
+
+    /**
+     * Provides the maximum size of the build cache.
+     * <p>
+     * When the cache grows larger, the least recently used entries are evicted. Defaults to
+     * {@link #DEFAULT_BUILD_CACHE_SIZE 1 GiB}.
+     *
+     * @param size the maximum size, in bytes
+     * @return this operation instance
+     */
+    public CompileKawaOperation buildCacheSize(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The build cache size must not be negative.");
+        }
+        buildCacheSize_ = size;
+        return this;
+    }
+
+    /**
+     * Retrieves the maximum size of the build cache.
+     *
+     * @return the maximum size, in bytes
+     */
+    public long buildCacheSize() {
+        return buildCacheSize_;
+    }
+
+    /**
+     * Provides the main build destination directory.
+     *
+     * @param directory the directory to use for the main build destination
+     * @return this operation instance
+     */
+    public CompileKawaOperation buildMainDirectory(File directory) {
+        buildMainDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the main build destination directory.
+     *
+     * @return the main build destination
+     */
+    public File buildMainDirectory() {
+        return buildMainDirectory_;
+    }
+
+    /**
+     * Provides the test build destination directory.
+     *
+     * @param directory the directory to use for the test build destination
+     * @return this operation instance
+     */
+    public CompileKawaOperation buildTestDirectory(File directory) {
+        buildTestDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the test build destination directory.
+     *
+     * @return the test build destination
+     */
+    public File buildTestDirectory() {
+        return buildTestDirectory_;
+    }
+
+    /**
+     * Enables or disables compiling with a long-lived compiler daemon.
+     * <p>
+     * The daemon keeps the Kawa compiler loaded and optimized by the JIT between builds, which removes most of the
+     * fixed cost of compiling a few sources. It is started on the first compilation, is reached through a Unix domain
+     * socket in the {@link #workDirectory() work directory}, and stops after the
+     * {@link #daemonIdleTimeout(Duration) idle timeout}. If the daemon is unavailable, the sources are compiled in the
+     * build instead.
+     * <p>
+     * The daemon compiles the sources sequentially, regardless of the {@link #parallelism(int) parallelism}.
+     *
+     * @param daemon {@code true} to compile with the daemon
+     * @return this operation instance
+     */
+    public CompileKawaOperation daemon(boolean daemon) {
+        daemon_ = daemon;
+        return this;
+    }
+
+    /**
+     * Returns whether sources are compiled with a long-lived compiler daemon.
+     *
+     * @return {@code true} if the daemon is used
+     */
+    public boolean isDaemon() {
+        return daemon_;
+    }
+
+    /**
+     * Provides the time after which an idle compiler daemon stops.
+     * <p>
+     * Defaults to 30 minutes.
+     *
+     * @param timeout the idle timeout
+     * @return this operation instance
+     */
+    public CompileKawaOperation daemonIdleTimeout(Duration timeout) {
+        daemonIdleTimeout_ = timeout;
+        return this;
+    }
+
+    /**
+     * Retrieves the time after which an idle compiler daemon stops.
+     *
+     * @return the idle timeout
+     */
+    public Duration daemonIdleTimeout() {
+        return daemonIdleTimeout_;
+    }
+
+    /**
+     * Retrieves the dependency graph of the sources built by the last incremental or parallel compilation.
+     * <p>
+     * The graph can be rendered with {@link KawaDependencyGraph#toDot() toDot} or
+     * {@link KawaDependencyGraph#toJson() toJson} to find out why a change caused other sources to be recompiled.
+     *
+     * @return the dependency graph, or {@code null} if no incremental or parallel compilation was performed
+     */
+    public KawaDependencyGraph dependencyGraph() {
+        return dependencyGraph_;
+    }
+
+    /**
+     * Enables or disables incremental compilation.
+     * <p>
+     * A fingerprint manifest of the compiled sources and their class files is kept in the
+     * {@link #workDirectory() work directory}. When enabled, sources whose content and outputs are unchanged since the
+     * previous compilation are skipped. Sources that depend on changed sources, as determined by their
+     * {@link #dependencyGraph() dependency graph}, are recompiled as well.
+     *
+     * @param incremental {@code true} to only compile changed sources
+     * @return this operation instance
+     */
+    public CompileKawaOperation incremental(boolean incremental) {
+        incremental_ = incremental;
+        return this;
+    }
+
+    /**
+     * Returns whether incremental compilation is enabled.
+     *
+     * @return {@code true} if only changed sources are compiled
+     */
+    public boolean isIncremental() {
+        return incremental_;
+    }
+
+    /**
+     * Provides the sources that changed since the previous execution of this operation, e.g. as reported by a
+     * {@link WatchKawaOperation}, for its next execution only.
+     * <p>
+     * The next {@link #incremental(boolean) incremental} compilation then only fingerprints these sources, and keeps
+     * the recorded fingerprint of the others. An individual source file of the set that no longer exists is skipped
+     * instead of failing the compilation. Without changed sources, the default, every source is checked.
+     *
+     * @param sources the sources that were modified, created or deleted, or {@code null} if unknown
+     * @return this operation instance
+     */
+    public CompileKawaOperation changedSources(Collection<File> sources) {
+        changedSources_ = sources == null ? null : new ArrayList<>(sources);
+        return this;
+    }
+
+    /**
+     * Retrieves the sources that changed since the previous execution of this operation.
+     *
+     * @return the sources, or {@code null} if every source is checked
+     */
+    public Collection<File> changedSources() {
+        return changedSources_;
+    }
+
+    /**
+     * Performs the compile operation.
+     * <p>
+     * When modules are compiled {@link #parallelism(int) in parallel}, the main and test sources are compiled
+     * together, see {@link #executeBuildPipelinedSources()}. Otherwise, the test sources are compiled after the main
+     * sources.
+     */
+    @Override
+    public void execute() throws IOException {
+        if (project_ == null) {
+            throw new IllegalArgumentException("A project must be specified.");
+        }
+        if (shardCount_ > 0 && mergeShards_) {
+            throw new IllegalArgumentException("A shard cannot also merge the shards.");
+        }
+
+        try {
+            if (changedSources_ != null) {
+                changedCanonical_ = new HashSet<>();
+                for (var source : changedSources_) {
+                    changedCanonical_.add(source.getCanonicalFile());
+                }
+            }
+            executeCreateBuildDirectories();
+            if (libraryCacheDirectory_ != null) {
+                executeCompileLibraries();
+            }
+            if (shardCount_ > 0) {
+                // a shard only exports the classes of its main sources, they are assembled by the merge
+                executeBuildShard();
+            } else {
+                if (mergeShards_) {
+                    executeMergeShards();
+                    executeBuildTestSources();
+                } else if (isParallel()) {
+                    executeBuildPipelinedSources();
+                } else {
+                    executeBuildMainSources();
+                    executeBuildTestSources();
+                }
+                if (classReport_ && buildMainDirectory() != null) {
+                    executeReportClasses();
+                }
+                if (moduleRegistry_ != null && buildMainDirectory() != null) {
+                    executeCreateModuleRegistry();
+                }
+            }
+        } finally {
+            changedSources_ = null;
+            changedCanonical_ = null;
+            if (workerPool_ != null && !sharedWorkerPool_) {
+                workerPool_.close();
+                workerPool_ = null;
+            }
+        }
+
+        if (!silent()) {
+            System.out.println("Kawa compilation finished successfully.");
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, builds the main sources.
+     *
+     * @throws IOException if an error occurs
+     */
+    protected void executeBuildMainSources() throws IOException {
+        if (!silent()) {
+            System.out.println("Compiling Kawa main sources.");
+        }
+
+        executeBuildSources(
+                sources(mainSourceFiles(), mainSourceDirectories(), "main"),
+                buildMainDirectory()
+            );
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, builds the main and test sources in a single pipeline.
+     * <p>
+     * The main and test sources share one dependency graph and the same compilers, and each test module is compiled
+     * as soon as the main modules it imports are, without waiting for all the main sources.
+     *
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeBuildPipelinedSources() throws IOException {
+        if (!silent()) {
+            System.out.println("Compiling Kawa main and test sources.");
+        }
+
+        var sets = new ArrayList<SourceSet>();
+        if (buildMainDirectory() != null) {
+            sets.add(new SourceSet(sources(mainSourceFiles(), mainSourceDirectories(), "main"),
+                    buildMainDirectory()));
+        }
+        if (buildTestDirectory() != null) {
+            sets.add(new SourceSet(sources(testSourceFiles(), testSourceDirectories(), "test"),
+                    buildTestDirectory()));
+        }
+        sets.removeIf(set -> set.sources().isEmpty());
+        build(sets);
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, build sources to a given destination.
+     *
+     * @param sources     the source files to compile
+     * @param destination the destination directory
+     * @throws IOException if an error occurs
+     */
+    protected void executeBuildSources(
+        Collection<File> sources,
+        File destination
+    ) throws IOException {
+        if (sources.isEmpty() || destination == null) {
+            return;
+        }
+
+        build(List.of(new SourceSet(sources, destination)));
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, only builds the sources that changed since the previous
+     * compilation to a given destination.
+     * <p>
+     * When a {@link #buildCacheDirectory(File) build cache} is used, the sources that must be compiled are restored
+     * from the cache whenever possible. Unless the compilation is {@link #incremental(boolean) incremental}, all the
+     * sources are considered changed.
+     * <p>
+     * The sources are compiled to a staging directory first, and a class file only replaces the one in the destination
+     * when its bytes differ. The class files recorded in the manifest for sources that were removed, or that no longer
+     * compile to them, are deleted from the destination.
+     *
+     * @param sources     the source files to compile
+     * @param destination the destination directory
+     * @throws IOException if an error occurs
+     */
+    protected void executeBuildChangedSources(
+        Collection<File> sources,
+        File destination
+    ) throws IOException {
+        buildChanged(List.of(new SourceSet(sources, destination)));
+    }
+
+    // Builds sets of sources, through the manifests of the work directory if there is one
+    private void build(List<SourceSet> sets) throws IOException {
+        if (sets.isEmpty()) {
+            return;
+        }
+
+        if (workDirectory() != null) {
+            buildChanged(sets);
+        } else {
+            var destinations = new LinkedHashMap<File, File>();
+            for (var set : sets) {
+                set.sources().forEach(source -> destinations.put(source.getAbsoluteFile(), set.destination()));
+            }
+            if (isParallel() || syntaxCheck_) {
+                dependencyGraph_ = dependencyGraph(destinations.keySet());
+            }
+            compile(destinations);
+        }
+    }
+
+    // Only builds the sources that changed since the previous compilation, with one manifest per destination
+    @SuppressWarnings("PMD.SystemPrintln")
+    private void buildChanged(List<SourceSet> sets) throws IOException {
+        var kawaVersion = kawa.Version.getVersion();
+        var loaded = new ArrayList<KawaSourceManifest>();
+        for (var set : sets) {
+            loaded.add(KawaSourceManifest.load(new File(workDirectory(), set.destination().getName() + ".manifest")));
+        }
+        var jars = new LinkedHashMap<File, KawaSourceManifest.Entry>();
+        var classpath = classpathKey(loaded, jars);
+        var manifests = new ArrayList<KawaSourceManifest>();
+        var manifestFiles = new ArrayList<File>();
+        var previousManifests = new ArrayList<KawaSourceManifest>();
+        var recordedManifests = new ArrayList<KawaSourceManifest>();
+        // the manifest and destination of each source
+        var owners = new HashMap<File, Integer>();
+        var headers = new LinkedHashMap<File, KawaModuleHeader>();
+        var changed = new ArrayList<File>();
+        var unparsed = new ArrayList<File>();
+        var total = 0;
+
+        for (var set : sets) {
+            var destination = set.destination();
+            var manifestFile = new File(workDirectory(), destination.getName() + ".manifest");
+            var manifest = new KawaSourceManifest(kawaVersion, optionsKey(), classpath, destination);
+            jars.forEach(manifest::putJar);
+            var recorded = loaded.get(manifests.size());
+            if (recorded != null && !recorded.isDestination(destination)) {
+                recorded = null;
+            }
+            var previous = incremental_ && manifest.isCompatible(recorded) ? recorded : null;
+
+            for (var source : set.sources()) {
+                var entry = previous == null ? null : previous.entry(source);
+                var fingerprint = entry != null && isUnchanged(source) ? entry.withOutputs(List.of())
+                        : KawaSourceManifest.fingerprint(source, entry);
+                if (fingerprint.isSameContent(entry)) {
+                    fingerprint = fingerprint.withHeader(entry.header());
+                } else {
+                    unparsed.add(source);
+                }
+                owners.put(source.getAbsoluteFile(), manifests.size());
+
+                if (fingerprint.isSameContent(entry) && entry.isIntact(destination)) {
+                    manifest.put(source, fingerprint.withOutputs(entry.outputs()));
+                } else {
+                    manifest.put(source, fingerprint);
+                    changed.add(source);
+                }
+            }
+
+            total += set.sources().size();
+            manifests.add(manifest);
+            manifestFiles.add(manifestFile);
+            previousManifests.add(previous);
+            recordedManifests.add(recorded);
+        }
+
+        // the sources that changed are all read at once, before anything is compiled
+        var parsed = headers(unparsed);
+        for (var i = 0; i < sets.size(); i++) {
+            var manifest = manifests.get(i);
+            for (var source : sets.get(i).sources()) {
+                var entry = manifest.entry(source);
+                if (entry.header() == null) {
+                    entry = entry.withHeader(parsed.get(source));
+                    manifest.put(source, entry);
+                }
+                headers.put(source, entry.header());
+            }
+        }
+
+        dependencyGraph_ = new KawaDependencyGraph(headers, sourceDirectories());
+
+        // sources depending on modules that were removed or renamed must be recompiled too
+        var vanished = new HashSet<String>();
+        for (var i = 0; i < manifests.size(); i++) {
+            if (previousManifests.get(i) != null) {
+                vanished.addAll(vanishedModules(previousManifests.get(i), manifests.get(i)));
+            }
+        }
+        headers.forEach((source, header) -> {
+            if (header.imports().stream().anyMatch(vanished::contains)) {
+                changed.add(source);
+            }
+        });
+
+        // sources including files that are not sources themselves must be recompiled when these files changed
+        headers.forEach((source, header) -> {
+            var index = owners.get(source.getAbsoluteFile());
+            if (previousManifests.get(index) != null && isIncludeChanged(header,
+                    manifestFiles.get(index).lastModified(), owners.keySet())) {
+                changed.add(source);
+            }
+        });
+
+        var affected = dependencyGraph_.affected(changed);
+        if (affected.isEmpty()) {
+            if (!silent()) {
+                System.out.println("Kawa sources are up to date.");
+            }
+        } else {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                affected.stream()
+                        .filter(source -> !changed.contains(source))
+                        .forEach(source -> LOGGER.fine("Recompiling " + dependencyGraph_.moduleName(source)
+                                + ", it depends on a changed module."));
+            }
+
+            // the outputs are staged, and only replace the class files of the destination when they differ
+            for (var set : sets) {
+                var staging = new File(workDirectory(), "staging" + File.separator + set.destination().getName());
+                KawaClassOutputs.delete(staging);
+                staging_.put(set.destination(), staging);
+            }
+            try {
+                buildAffected(sets, affected, manifests, owners, kawaVersion, classpath, total);
+                for (var set : sets) {
+                    var changedOutputs = KawaClassOutputs.publish(staging_.get(set.destination()),
+                            set.destination());
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine(changedOutputs.size() + " class files changed in " + set.destination().getPath());
+                    }
+                }
+            } finally {
+                for (var staging : staging_.values()) {
+                    KawaClassOutputs.delete(staging);
+                }
+                staging_.clear();
+            }
+        }
+
+        // the class files of sources that were removed, or that are no longer compiled to, are pruned
+        for (var i = 0; i < manifests.size(); i++) {
+            if (recordedManifests.get(i) != null) {
+                var stale = recordedManifests.get(i).outputs();
+                stale.removeAll(manifests.get(i).outputs());
+                var pruned = KawaClassOutputs.prune(sets.get(i).destination(), stale);
+                if (!pruned.isEmpty() && LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Pruned stale class files: " + String.join(", ", pruned));
+                }
+            }
+        }
+
+        for (var i = 0; i < manifests.size(); i++) {
+            manifests.get(i).save(manifestFiles.get(i));
+        }
+    }
+
+    // Restores the affected sources from the build cache, or compiles them, to their staging directory
+    @SuppressWarnings("PMD.SystemPrintln")
+    private void buildAffected(
+        List<SourceSet> sets,
+        Collection<File> affected,
+        List<KawaSourceManifest> manifests,
+        Map<File, Integer> owners,
+        String kawaVersion,
+        String classpath,
+        int total
+    ) throws IOException {
+        var cache = buildCacheDirectory_ == null ? null : new KawaBuildCache(buildCacheDirectory_, buildCacheSize_);
+        var keys = new HashMap<File, String>();
+        var misses = new LinkedHashMap<File, File>();
+        for (var source : affected) {
+            var manifest = manifests.get(owners.get(source));
+            var staging = staging_.get(sets.get(owners.get(source)).destination());
+            var outputs = cache == null ? null
+                    : cache.restore(cacheKey(source, kawaVersion, classpath, manifests, owners, keys), staging);
+            if (outputs == null) {
+                misses.put(source, staging);
+            } else {
+                manifest.put(source, manifest.entry(source).withOutputs(outputs));
+            }
+        }
+        if (cache != null && !silent()) {
+            System.out.println("Kawa build cache: " + cache.hits() + " hit(s), " + cache.misses() + " miss(es).");
+        }
+
+        if (!misses.isEmpty()) {
+            if (!silent()) {
+                System.out.println("Compiling " + misses.size() + " of " + total + " Kawa sources.");
+            }
+            // only the class files restored from the cache are staged so far
+            var before = new HashMap<File, Map<String, Long>>();
+            for (var staging : staging_.values()) {
+                before.put(staging, classFiles(staging));
+            }
+            compile(misses);
+            for (var i = 0; i < sets.size(); i++) {
+                var staging = staging_.get(sets.get(i).destination());
+                var compiled = new ArrayList<File>();
+                misses.forEach((source, target) -> {
+                    if (target.equals(staging)) {
+                        compiled.add(source);
+                    }
+                });
+                if (!compiled.isEmpty()) {
+                    recordOutputs(manifests.get(i), compiled, staging, before.get(staging));
+                }
+            }
+            if (cache != null) {
+                for (var miss : misses.entrySet()) {
+                    var manifest = manifests.get(owners.get(miss.getKey()));
+                    cache.store(keys.get(miss.getKey()), miss.getValue(),
+                            manifest.entry(miss.getKey()).outputs());
+                }
+                cache.evict();
+            }
+        }
+    }
+
+    // Computes the build cache key of a source, from its content and the keys of the modules it depends on
+    private String cacheKey(
+        File source,
+        String kawaVersion,
+        String classpath,
+        List<KawaSourceManifest> manifests,
+        Map<File, Integer> owners,
+        Map<File, String> keys
+    ) throws IOException {
+        var key = keys.get(source);
+        if (key != null) {
+            return key;
+        }
+        var hash = manifests.get(owners.get(source)).entry(source).hash();
+        // modules in a dependency cycle only contribute their own content
+        keys.put(source, hash);
+
+        var dependencies = new ArrayList<String>();
+        for (var dependency : dependencyGraph_.dependencies(source)) {
+            if (owners.containsKey(dependency)) {
+                dependencies.add(dependencyGraph_.moduleName(dependency) + '='
+                        + cacheKey(dependency, kawaVersion, classpath, manifests, owners, keys));
+            }
+        }
+        Collections.sort(dependencies);
+
+        var parts = new ArrayList<>(List.of(kawaVersion, optionsKey(), classpath,
+                dependencyGraph_.moduleName(source), source.getName(), hash));
+        parts.addAll(dependencies);
+        key = KawaBuildCache.key(parts);
+        keys.put(source, key);
+        return key;
+    }
+
+    // Returns the fingerprint of the compile classpath, as recorded in the manifest and build cache keys: the path of
+    // each entry relative to the project, and the content hash of the jars. The hash of a jar is reused from the
+    // recorded manifests while its size and modification time are unchanged, and its fingerprint is added to jars.
+    private String classpathKey(List<KawaSourceManifest> recorded, Map<File, KawaSourceManifest.Entry> jars)
+            throws IOException {
+        var entries = new ArrayList<String>();
+        for (var entry : compileClasspath_) {
+            var path = relativePath(entry);
+            if (entry.isFile()) {
+                KawaSourceManifest.Entry previous = null;
+                for (var manifest : recorded) {
+                    if (manifest != null && manifest.jar(entry) != null) {
+                        previous = manifest.jar(entry);
+                        break;
+                    }
+                }
+                var fingerprint = KawaSourceManifest.fingerprint(entry, previous);
+                jars.put(entry, fingerprint);
+                entries.add(path + '=' + fingerprint.hash());
+            } else {
+                entries.add(path);
+            }
+        }
+        return KawaBuildCache.key(entries);
+    }
+
+    // Returns the compile options, as recorded in the manifest and build cache keys
+    private String optionsKey() {
+        if (stripDebugInfo_) {
+            return (compileOptions_ + " " + STRIP_DEBUG_INFO).trim();
+        }
+        return compileOptions_.toString();
+    }
+
+    // Determines whether a source is known not to have changed since the previous execution
+    private boolean isUnchanged(File source) throws IOException {
+        return changedCanonical_ != null && !changedCanonical_.contains(source.getCanonicalFile());
+    }
+
+    // Determines whether a file required or included by path, that is not a source, was modified after a given time
+    private static boolean isIncludeChanged(KawaModuleHeader header, long time, Set<File> sources) {
+        for (var name : header.imports()) {
+            if (name.startsWith(KawaModuleHeader.FILE_PREFIX)) {
+                var file = new File(name.substring(KawaModuleHeader.FILE_PREFIX.length()));
+                if (!sources.contains(file) && file.lastModified() > time) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Returns the module names that were provided by the previous sources, but no longer are
+    private static Set<String> vanishedModules(KawaSourceManifest previous, KawaSourceManifest current) {
+        var vanished = new HashSet<String>();
+        for (var source : previous.sources()) {
+            var file = new File(source);
+            var name = moduleName(file, previous.entry(file).header());
+            var entry = current.entry(file);
+            if (entry == null || !name.equals(moduleName(file, entry.header()))) {
+                vanished.add(name);
+                vanished.add(KawaModuleHeader.FILE_PREFIX + file.toPath().normalize());
+            }
+        }
+        return vanished;
+    }
+
+    // Returns the declared module name of a source, or its file name without extension
+    private static String moduleName(File source, KawaModuleHeader header) {
+        if (header.name() != null) {
+            return header.name();
+        }
+        return source.getName().replaceFirst("\\.[^.]*$", "");
+    }
+
+    // Compiles sources to their destination, then strips the debug information of their main classes if requested
+    private void compile(Map<File, File> destinations) throws IOException {
+        if (workerPool_ != null) {
+            // the workers kept from the previous compilation reload the modules it changed
+            workerPool_.reload();
+        }
+        var before = new LinkedHashMap<File, Map<String, Long>>();
+        if (stripDebugInfo_) {
+            var tests = new HashSet<File>();
+            if (buildTestDirectory() != null) {
+                tests.add(buildTestDirectory());
+                tests.add(staging_.get(buildTestDirectory()));
+            }
+            for (var destination : new LinkedHashSet<>(destinations.values())) {
+                if (!tests.contains(destination)) {
+                    before.put(destination, classFiles(destination));
+                }
+            }
+        }
+        compileModules(destinations);
+        for (var destination : before.entrySet()) {
+            var compiled = new ArrayList<File>();
+            destinations.forEach((source, target) -> {
+                if (target.equals(destination.getKey())) {
+                    compiled.add(source);
+                }
+            });
+            stripDebugInfo(compiled, destination.getKey(), destination.getValue());
+        }
+    }
+
+    /**
+     * Removes the debug information from the class files compiled from sources.
+     * <p>
+     * Only the class files written since the snapshot of the destination, and attributed to the sources, are
+     * rewritten, so that the classes of other compilers and of previous builds are left intact.
+     *
+     * @param compiled    the compiled sources
+     * @param destination the destination directory
+     * @param before      the class files of the destination before the compilation, with their modification time
+     * @throws IOException if a class file could not be rewritten
+     */
+    static void stripDebugInfo(Collection<File> compiled, File destination, Map<String, Long> before)
+            throws IOException {
+        var saved = 0L;
+        for (var outputs : outputs(compiled, destination, before).values()) {
+            for (var classFile : outputs) {
+                var path = new File(destination, classFile).toPath();
+                var bytes = Files.readAllBytes(path);
+                var stripped = KawaClassFile.stripDebugInfo(bytes);
+                if (stripped != bytes) {
+                    Files.write(path, stripped);
+                    saved += bytes.length - stripped.length;
+                }
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Stripped " + saved + " bytes of debug information from " + destination.getPath());
+        }
+    }
+
+    // Compiles sources to their destination, measuring each module if needed
+    @SuppressWarnings("PMD.SystemPrintln")
+    private void compileModules(Map<File, File> destinations) throws IOException {
+        var instrumented = !compileListeners_.isEmpty() || compileReport_;
+        var batched = batchSize_ > 0 || batchMemory_ > 0;
+        if (!instrumented && !batched) {
+            try (var compiler = compiler(destinations.values(), null, false)) {
+                compiler.compile(destinations);
+            }
+            return;
+        }
+
+        // instrumented modules are compiled one at a time, and batches are split, in order of their dependencies
+        if (dependencyGraph_ == null) {
+            dependencyGraph_ = dependencyGraph(destinations.keySet());
+        }
+        var ordered = new ArrayList<File>();
+        dependencyGraph_.waves(destinations.keySet()).forEach(ordered::addAll);
+        var cycles = new LinkedHashSet<File>();
+        destinations.keySet().forEach(source -> cycles.add(source.getAbsoluteFile()));
+        ordered.forEach(cycles::remove);
+
+        var batches = new ArrayList<List<File>>();
+        if (batched) {
+            batches.addAll(batches(ordered));
+            if (!cycles.isEmpty()) {
+                batches.add(new ArrayList<>(cycles));
+            }
+        } else {
+            ordered.addAll(cycles);
+            batches.add(ordered);
+        }
+
+        var absolute = new HashMap<File, File>();
+        destinations.forEach((source, destination) -> absolute.put(source.getAbsoluteFile(), destination));
+        var timings = instrumented ? new ConcurrentLinkedQueue<InstrumentedKawaCompiler.Timing>() : null;
+        var before = new HashMap<File, Map<String, Long>>();
+        if (instrumented) {
+            for (var destination : new LinkedHashSet<>(absolute.values())) {
+                before.put(destination, classFiles(destination));
+            }
+        }
+        try {
+            for (var i = 0; i < batches.size(); i++) {
+                if (batches.size() > 1 && !silent()) {
+                    System.out.println("Compiling batch " + (i + 1) + " of " + batches.size() + " ("
+                            + batches.get(i).size() + " Kawa sources).");
+                }
+                var batch = new LinkedHashMap<File, File>();
+                batches.get(i).forEach(source -> batch.put(source, absolute.get(source)));
+                // a new compiler for each batch, so that the state of the previous batches can be released
+                try (var compiler = compiler(batch.values(), timings, batched)) {
+                    compiler.compile(batch);
+                }
+            }
+        } finally {
+            if (instrumented) {
+                reportStats(timings, absolute, before);
+            }
+        }
+    }
+
+    // Splits sources in dependency order into batches, within the batch size and memory budget
+    private List<List<File>> batches(List<File> ordered) {
+        var batches = new ArrayList<List<File>>();
+        var batch = new ArrayList<File>();
+        var memory = 0L;
+        for (var source : ordered) {
+            var estimate = source.length() * HEAP_PER_SOURCE_BYTE;
+            if (!batch.isEmpty() && ((batchSize_ > 0 && batch.size() >= batchSize_)
+                    || (batchMemory_ > 0 && memory + estimate > batchMemory_))) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                memory = 0L;
+            }
+            batch.add(source);
+            memory += estimate;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    // Returns the classpath to compile to the given destinations, the main build directory first so that test
+    // modules can import main modules
+    private List<File> classpath(Collection<File> destinations) {
+        var classpath = new LinkedHashSet<File>();
+        // a shard compiles the main modules it depends on, rather than using stale classes of the build directory
+        if (buildMainDirectory() != null && shardCount_ == 0) {
+            // the staged classes are more recent than the ones in the build directory
+            if (staging_.containsKey(buildMainDirectory())) {
+                classpath.add(staging_.get(buildMainDirectory()));
+            }
+            classpath.add(buildMainDirectory());
+        }
+        for (var destination : destinations) {
+            classpath.add(destination);
+            staging_.forEach((target, staging) -> {
+                if (staging.equals(destination)) {
+                    classpath.add(target);
+                }
+            });
+        }
+        classpath.addAll(libraryClasspath_);
+        classpath.addAll(compileClasspath_);
+        return new ArrayList<>(classpath);
+    }
+
+    // Creates the compiler for the given destinations, measuring each module if timings are collected, and with its
+    // own state that is released when closed if isolated
+    private KawaCompiler compiler(
+        Collection<File> destinations,
+        Queue<InstrumentedKawaCompiler.Timing> timings,
+        boolean isolated
+    ) throws IOException {
+        var classpath = classpath(destinations);
+        var options = compileOptions_.args();
+        if (fork_) {
+            var pool = workerPool();
+            if (isParallel() && dependencyGraph_ != null) {
+                return new KawaParallelCompiler(dependencyGraph_, parallelism_,
+                        () -> instrumented(pool.acquire(classpath, options), timings, false));
+            }
+            return instrumented(pool.acquire(classpath, options), timings, false);
+        }
+        if (daemon_ && workDirectory() != null) {
+            return instrumented(new DaemonKawaCompiler(daemonSocket(), daemonIdleTimeout_,
+                    new File(workDirectory(), "daemon.log"), classpath, options), timings, false);
+        }
+        if (isParallel() && dependencyGraph_ != null) {
+            return new KawaParallelCompiler(dependencyGraph_, parallelism_,
+                    () -> instrumented(new IsolatedKawaCompiler(classpath, options), timings, true));
+        }
+        var compiler = isolated || !options.isEmpty() ? new IsolatedKawaCompiler(classpath, options)
+                : new InProcessKawaCompiler(classpath);
+        return instrumented(compiler, timings, true);
+    }
+
+    // Returns the pool of forked compiler workers, started on first use
+    private KawaWorkerPool workerPool() {
+        if (workerPool_ == null) {
+            workerPool_ = new KawaWorkerPool(jvmOptions_);
+        }
+        return workerPool_;
+    }
+
+    /**
+     * Provides the pool of forked compiler workers to compile with, e.g. to keep them warm across executions.
+     * <p>
+     * A provided pool is not closed by this operation. By default, a pool is started on first use and closed once the
+     * operation is done.
+     *
+     * @param pool the worker pool, or {@code null} to start one for each execution
+     * @return this operation instance
+     */
+    CompileKawaOperation workerPool(KawaWorkerPool pool) {
+        workerPool_ = pool;
+        sharedWorkerPool_ = pool != null;
+        return this;
+    }
+
+    // Determines whether modules are compiled in parallel, which the compiler daemon does not support
+    private boolean isParallel() {
+        return parallelism_ > 1 && (fork_ || !daemon_ || workDirectory() == null);
+    }
+
+    // Measures the modules compiled by a compiler, if timings are collected
+    private static KawaCompiler instrumented(
+        KawaCompiler compiler,
+        Queue<InstrumentedKawaCompiler.Timing> timings,
+        boolean measureThread
+    ) {
+        return timings == null ? compiler : new InstrumentedKawaCompiler(compiler, timings, measureThread);
+    }
+
+    // Notifies the listeners of the compiled modules, and writes a compile report for each destination
+    @SuppressWarnings("PMD.SystemPrintln")
+    private void reportStats(
+        Collection<InstrumentedKawaCompiler.Timing> timings,
+        Map<File, File> destinations,
+        Map<File, Map<String, Long>> before
+    ) throws IOException {
+        var stats = new ArrayList<KawaModuleStats>();
+        var reports = new LinkedHashMap<File, List<KawaModuleStats>>();
+        for (var destination : new LinkedHashSet<>(destinations.values())) {
+            var compiled = timings.stream()
+                    .filter(timing -> destination.equals(destinations.get(timing.source())))
+                    .toList();
+            var outputs = outputs(compiled.stream().map(InstrumentedKawaCompiler.Timing::source).toList(),
+                    destination, before.get(destination));
+            var report = new ArrayList<KawaModuleStats>();
+            for (var timing : compiled) {
+                var classes = outputs.get(timing.source());
+                var classBytes = 0L;
+                for (var classFile : classes) {
+                    classBytes += new File(destination, classFile).length();
+                }
+                report.add(new KawaModuleStats(timing.source(), dependencyGraph_.moduleName(timing.source()),
+                        timing.wallNanos(), timing.cpuNanos(), timing.allocatedBytes(), classes.size(),
+                        classBytes));
+            }
+            stats.addAll(report);
+            reports.put(destination, report);
+        }
+
+        for (var listener : compileListeners_) {
+            stats.forEach(listener::moduleCompiled);
+        }
+
+        if (compileReport_ && workDirectory() != null) {
+            for (var report : reports.entrySet()) {
+                var file = new File(workDirectory(), report.getKey().getName() + "-compile-report");
+                KawaCompileReport.write(report.getValue(), file);
+                if (!silent()) {
+                    System.out.println("Kawa compile report: " + file.getPath() + ".{json,csv}");
+                }
+            }
+        }
+    }
+
+    // Returns the socket of the compiler daemon, in the work directory unless the path is too long for a socket
+    private Path daemonSocket() {
+        var socket = new File(workDirectory(), "daemon.sock").getAbsolutePath();
+        if (socket.length() > MAX_SOCKET_PATH) {
+            return Path.of(System.getProperty("java.io.tmpdir"),
+                    "bld-kawa-" + Integer.toHexString(socket.hashCode()) + ".sock");
+        }
+        return Path.of(socket);
+    }
+
+    // Builds the dependency graph of the given sources
+    private KawaDependencyGraph dependencyGraph(Collection<File> sources) throws IOException {
+        return new KawaDependencyGraph(headers(sources), sourceDirectories());
+    }
+
+    // Reads the headers of sources in parallel, failing with all the syntax errors if the syntax is checked
+    private Map<File, KawaModuleHeader> headers(Collection<File> sources) throws IOException {
+        var check = KawaSyntaxCheck.check(sources);
+        if (!check.errors().isEmpty()) {
+            if (syntaxCheck_) {
+                throw new IOException("Kawa syntax check failed with " + check.errors().size() + " error(s):"
+                        + System.lineSeparator() + String.join(System.lineSeparator(), check.errors()));
+            }
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                check.errors().forEach(error -> LOGGER.warning("Could not read the header of " + error));
+            }
+        }
+        return check.headers();
+    }
+
+    // Returns all the source directories
+    private Collection<File> sourceDirectories() {
+        var directories = new ArrayList<>(mainSourceDirectories());
+        directories.addAll(testSourceDirectories());
+        return directories;
+    }
+
+    // Maps the class files in a directory, relative to it, to their modification time
+    private static Map<String, Long> classFiles(File directory) throws IOException {
+        var classFiles = new HashMap<String, Long>();
+        var root = directory.toPath();
+        if (Files.isDirectory(root)) {
+            try (var paths = Files.walk(root)) {
+                for (var path : (Iterable<Path>) paths::iterator) {
+                    if (path.toString().endsWith(".class")) {
+                        classFiles.put(root.relativize(path).toString().replace(File.separatorChar, '/'),
+                                Files.getLastModifiedTime(path).toMillis());
+                    }
+                }
+            }
+        }
+        return classFiles;
+    }
+
+    // Records the class files written by the compiler in the manifest
+    private static void recordOutputs(
+        KawaSourceManifest manifest,
+        Collection<File> compiled,
+        File destination,
+        Map<String, Long> before
+    ) throws IOException {
+        var outputs = outputs(compiled, destination, before);
+        for (var source : compiled) {
+            manifest.put(source, manifest.entry(source).withOutputs(outputs.get(source)));
+        }
+    }
+
+    // Attributes the class files written by the compiler to the sources they were compiled from
+    private static Map<File, List<String>> outputs(
+        Collection<File> compiled,
+        File destination,
+        Map<String, Long> before
+    ) throws IOException {
+        var byName = new HashMap<String, List<File>>();
+        compiled.forEach(source -> byName.computeIfAbsent(source.getName(), k -> new ArrayList<>()).add(source));
+
+        var outputs = new HashMap<File, List<String>>();
+        compiled.forEach(source -> outputs.put(source, new ArrayList<>()));
+        for (var classFile : classFiles(destination).entrySet()) {
+            if (classFile.getValue().equals(before.get(classFile.getKey()))) {
+                continue;
+            }
+            String sourceFile;
+            try {
+                sourceFile = KawaClassFile.read(new File(destination, classFile.getKey()).toPath()).sourceFile();
+            } catch (IOException e) {
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.warning("Could not read class file: " + classFile.getKey());
+                }
+                continue;
+            }
+            var candidates = byName.get(sourceFile);
+            if (candidates != null) {
+                outputs.get(source(candidates, classFile.getKey())).add(classFile.getKey());
+            }
+        }
+        outputs.values().forEach(Collections::sort);
+        return outputs;
+    }
+
+    // Picks the source with the same name whose directory matches the package of the class file
+    private static File source(List<File> candidates, String classFile) {
+        if (candidates.size() > 1) {
+            var slash = classFile.lastIndexOf('/');
+            if (slash > 0) {
+                var suffix = "/" + classFile.substring(0, slash);
+                for (var candidate : candidates) {
+                    var parent = candidate.getAbsoluteFile().getParent().replace(File.separatorChar, '/');
+                    if (parent.endsWith(suffix)) {
+                        return candidate;
+                    }
+                }
+            }
+        }
+        return candidates.get(0);
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, compiles the main sources of a {@link #shard(int, int) shard},
+     * and exports their classes to the {@link #shardDirectory(File) shard directory}.
+     * <p>
+     * The sources of the shard are compiled together with the sources they depend on, to a directory of the
+     * {@link #workDirectory() work directory}, and only the classes of the sources of the shard are exported, along
+     * with a manifest recording the plan, the content of the sources and their classes.
+     *
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeBuildShard() throws IOException {
+        if (workDirectory() == null || shardDirectory() == null) {
+            throw new IllegalArgumentException(
+                    "A work directory and a shard directory are required to compile a shard.");
+        }
+
+        var sources = sortedSources();
+        var hashes = new LinkedHashMap<String, String>();
+        for (var source : sources) {
+            hashes.put(relativePath(source), KawaSourceManifest.hash(source.toPath()));
+        }
+        var graph = dependencyGraph(sources);
+        var plan = new KawaShardPlan(graph, sources, shardWeights(graph, sources), shardCount_);
+        var shards = new HashMap<String, Integer>();
+        sources.forEach(source -> shards.put(relativePath(source), plan.shard(source)));
+
+        var owned = plan.sources(shardIndex_);
+        var closure = plan.closure(shardIndex_);
+        if (!silent()) {
+            System.out.println("Compiling Kawa shard " + (shardIndex_ + 1) + " of " + shardCount_ + ": "
+                    + owned.size() + " modules, " + (closure.size() - owned.size()) + " dependencies.");
+        }
+        var destination = new File(workDirectory(), "shard-" + shardIndex_);
+        if (!closure.isEmpty()) {
+            build(List.of(new SourceSet(closure, destination)));
+        }
+
+        var compiled = KawaSourceManifest.load(new File(workDirectory(), destination.getName() + ".manifest"));
+        var export = new File(shardDirectory(), "shard-" + shardIndex_);
+        var classes = new File(export, "classes");
+        KawaClassOutputs.delete(export);
+        Files.createDirectories(classes.toPath());
+        var manifest = new KawaShardManifest(kawa.Version.getVersion(), optionsKey(),
+                classpathKey(Collections.singletonList(compiled), new HashMap<>()),
+                KawaShardManifest.plan(hashes, shards), shardIndex_, shardCount_);
+        for (var source : owned) {
+            var entry = compiled == null ? null : compiled.entry(source);
+            if (entry == null || entry.outputs().isEmpty()) {
+                throw new IOException("No classes were compiled from " + source.getPath());
+            }
+            for (var output : entry.outputs()) {
+                var target = new File(classes, output).toPath();
+                Files.createDirectories(target.getParent());
+                Files.copy(new File(destination, output).toPath(), target);
+            }
+            var path = relativePath(source);
+            manifest.put(path, hashes.get(path), entry.outputs());
+        }
+        manifest.save(new File(export, KawaShardManifest.FILE));
+
+        if (!silent()) {
+            System.out.println("Exported Kawa shard " + (shardIndex_ + 1) + " of " + shardCount_ + " to "
+                    + export.getPath() + '.');
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, assembles the main build directory from the classes exported by
+     * the {@link #shard(int, int) shards} to the {@link #shardDirectory(File) shard directory}.
+     * <p>
+     * The merge fails unless all the shards of the same plan are present, compiled with the same Kawa version and
+     * compile options, and together export the classes of every main source, compiled from its current content. The
+     * classes then replace those of the main build directory that differ, stale classes are pruned, and the manifest of
+     * the main sources is written, so that the next compilation is incremental.
+     *
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeMergeShards() throws IOException {
+        if (workDirectory() == null || shardDirectory() == null || buildMainDirectory() == null) {
+            throw new IllegalArgumentException(
+                    "A work directory, a shard directory and a build main directory are required to merge shards.");
+        }
+
+        var sources = sortedSources();
+        var files = new HashMap<String, File>();
+        var hashes = new LinkedHashMap<String, String>();
+        for (var source : sources) {
+            var path = relativePath(source);
+            files.put(path, source);
+            hashes.put(path, KawaSourceManifest.hash(source.toPath()));
+        }
+
+        var shards = new ArrayList<KawaShardManifest>();
+        var directories = shardDirectory().listFiles(file -> file.isDirectory() && file.getName().startsWith("shard-")
+                && new File(file, KawaShardManifest.FILE).isFile());
+        if (directories != null) {
+            Arrays.sort(directories);
+            for (var directory : directories) {
+                shards.add(KawaShardManifest.load(new File(directory, KawaShardManifest.FILE)));
+            }
+        }
+        var kawaVersion = kawa.Version.getVersion();
+        var manifestFile = new File(workDirectory(), buildMainDirectory().getName() + ".manifest");
+        var recorded = KawaSourceManifest.load(manifestFile);
+        var jars = new LinkedHashMap<File, KawaSourceManifest.Entry>();
+        var classpath = classpathKey(Collections.singletonList(recorded), jars);
+        var problems = KawaShardManifest.verify(shards, hashes, kawaVersion, optionsKey(), classpath);
+        if (!problems.isEmpty()) {
+            throw new IOException("The Kawa shards in " + shardDirectory().getPath() + " are incomplete:"
+                    + System.lineSeparator() + String.join(System.lineSeparator(), problems));
+        }
+
+        var headers = headers(sources);
+        dependencyGraph_ = new KawaDependencyGraph(headers, sourceDirectories());
+        var manifest = new KawaSourceManifest(kawaVersion, optionsKey(), classpath, buildMainDirectory());
+        jars.forEach(manifest::putJar);
+        var staging = new File(workDirectory(), "staging" + File.separator + buildMainDirectory().getName());
+        KawaClassOutputs.delete(staging);
+        try {
+            for (var shard : shards) {
+                var classes = new File(shardDirectory(), "shard-" + shard.index() + File.separator + "classes");
+                for (var exported : shard.entries().entrySet()) {
+                    for (var output : exported.getValue().outputs()) {
+                        var classFile = new File(classes, output);
+                        if (!classFile.isFile()) {
+                            throw new IOException("The Kawa shard " + shard.index() + " is missing the class file "
+                                    + output + '.');
+                        }
+                        var target = new File(staging, output).toPath();
+                        Files.createDirectories(target.getParent());
+                        Files.copy(classFile.toPath(), target);
+                    }
+                    var source = files.get(exported.getKey());
+                    manifest.put(source, KawaSourceManifest.fingerprint(source, null)
+                            .withHeader(headers.get(source)).withOutputs(exported.getValue().outputs()));
+                }
+            }
+            KawaClassOutputs.publish(staging, buildMainDirectory());
+        } finally {
+            KawaClassOutputs.delete(staging);
+        }
+
+        if (recorded != null && recorded.isDestination(buildMainDirectory())) {
+            var stale = recorded.outputs();
+            stale.removeAll(manifest.outputs());
+            KawaClassOutputs.prune(buildMainDirectory(), stale);
+        }
+        manifest.save(manifestFile);
+
+        if (!silent()) {
+            System.out.println("Merged " + shards.size() + " Kawa shards into " + buildMainDirectory().getPath() + '.');
+        }
+    }
+
+    // Returns the main sources, ordered by their path relative to the project so that every shard sees the same order
+    private List<File> sortedSources() throws IOException {
+        var sources = new ArrayList<File>();
+        for (var source : sources(mainSourceFiles(), mainSourceDirectories(), "main")) {
+            sources.add(source.getAbsoluteFile());
+        }
+        sources.sort(Comparator.comparing(this::relativePath));
+        return sources;
+    }
+
+    // Returns the path of a source relative to the project, the same on every machine
+    private String relativePath(File source) {
+        var base = (project_ == null || project_.workDirectory() == null ? new File("") : project_.workDirectory())
+                .getAbsoluteFile().toPath();
+        var path = source.getAbsoluteFile().toPath();
+        return (path.startsWith(base) ? base.relativize(path) : path).toString().replace(File.separatorChar, '/');
+    }
+
+    // Weighs the sources by their compile time in the shard timings report, or else by their size
+    private Map<File, Long> shardWeights(KawaDependencyGraph graph, List<File> sources) throws IOException {
+        var weights = new HashMap<File, Long>();
+        var times = shardTimings_ == null ? Map.<String, Long>of() : KawaCompileReport.wallTimes(shardTimings_);
+        if (times.isEmpty()) {
+            for (var source : sources) {
+                weights.put(source, source.length());
+            }
+            return weights;
+        }
+
+        // the sources missing from the report are given the average compile time
+        var average = Math.max(1L, (long) times.values().stream().mapToLong(Long::longValue).average().orElse(1));
+        for (var source : sources) {
+            weights.put(source, times.getOrDefault(graph.moduleName(source), average));
+        }
+        return weights;
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, builds the test sources.
+     *
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeBuildTestSources()
+            throws IOException {
+        if (!silent()) {
+            System.out.println("Compiling Kawa test sources.");
+        }
+        executeBuildSources(
+                sources(testSourceFiles(), testSourceDirectories(), "test"),
+                buildTestDirectory());
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, compiles the R7RS libraries shipped as sources in the jars of
+     * the {@link #compileClasspath() compile classpath}, or finds them in the
+     * {@link #libraryCacheDirectory(File) library cache}.
+     *
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeCompileLibraries() throws IOException {
+        libraryClasspath_.clear();
+        var options = compileOptions_.args();
+        var cache = new KawaLibraryCache(libraryCacheDirectory_, kawa.Version.getVersion(), options,
+                classpath -> workerPool().acquire(classpath, options));
+        for (var jar : compileClasspath_) {
+            if (jar.isFile() && jar.getName().endsWith(".jar")) {
+                // libraries may import the libraries of the jars before them
+                var classpath = new ArrayList<>(libraryClasspath_);
+                classpath.addAll(compileClasspath_);
+                var classes = cache.classes(jar, classpath);
+                if (classes != null) {
+                    libraryClasspath_.add(classes);
+                }
+            }
+        }
+        if (cache.compiled() > 0 && !silent()) {
+            System.out.println("Compiled the Kawa libraries of " + cache.compiled() + " jar(s).");
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, creates the build directories.
+     *
+     * @throws IOException if an error occurs
+     */
+    protected void executeCreateBuildDirectories() throws IOException {
+        if (buildMainDirectory() != null && !buildMainDirectory().exists() && !buildMainDirectory().mkdirs()) {
+            throw new IOException("Could not created build main directory: " + buildMainDirectory().getAbsolutePath());
+        }
+        if (buildTestDirectory() != null && !buildTestDirectory().exists() && !buildTestDirectory().mkdirs()) {
+            throw new IOException("Could not created build test directory: " + buildTestDirectory().getAbsolutePath());
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, writes the {@link #moduleRegistry(String) module registry} of
+     * the main modules.
+     *
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeCreateModuleRegistry() throws IOException {
+        var manifest = workDirectory() == null ? null
+                : KawaSourceManifest.load(new File(workDirectory(), buildMainDirectory().getName() + ".manifest"));
+        if (manifest == null) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("No Kawa manifest of the main modules, the module registry is not written.");
+            }
+            return;
+        }
+
+        var registry = new KawaModuleRegistry(moduleRegistry_);
+        for (var path : manifest.sources()) {
+            var source = new File(path);
+            var entry = manifest.entry(source);
+            var module = moduleName(source, entry);
+            var moduleClass = KawaModuleRegistry.moduleClass(module, entry.outputs());
+            if (moduleClass != null) {
+                registry.put(module, moduleClass);
+            }
+        }
+
+        if (registry.write(buildMainDirectory(), new File(workDirectory(), "registry")) && !silent()) {
+            System.out.println("Wrote the Kawa module registry " + moduleRegistry_ + '.');
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, writes the {@link #classReport(boolean) report of the classes}
+     * compiled from each main module.
+     *
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeReportClasses() throws IOException {
+        var manifest = workDirectory() == null ? null
+                : KawaSourceManifest.load(new File(workDirectory(), buildMainDirectory().getName() + ".manifest"));
+        if (manifest == null) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("No Kawa manifest of the main modules, the class report is not written.");
+            }
+            return;
+        }
+
+        var modules = new ArrayList<KawaClassReport.ModuleClasses>();
+        for (var path : manifest.sources()) {
+            var source = new File(path);
+            var entry = manifest.entry(source);
+            modules.add(KawaClassReport.measure(source, moduleName(source, entry), buildMainDirectory(),
+                    entry.outputs()));
+        }
+        var file = new File(workDirectory(), buildMainDirectory().getName() + "-class-report");
+        KawaClassReport.write(modules, file);
+
+        for (var module : modules) {
+            if (module.isNearConstantPoolLimit() && LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("A class of " + module.module() + " has " + module.maxConstantPoolEntries()
+                        + " constant pool entries, close to the limit of " + KawaClassReport.MAX_CONSTANT_POOL + '.');
+            }
+        }
 
+        if (!silent()) {
+            var classCount = modules.stream().mapToLong(KawaClassReport.ModuleClasses::classCount).sum();
+            var classBytes = modules.stream().mapToLong(KawaClassReport.ModuleClasses::classBytes).sum();
+            var debugBytes = modules.stream().mapToLong(KawaClassReport.ModuleClasses::debugBytes).sum();
+            System.out.println("Compiled " + modules.size() + " Kawa modules to " + classCount + " classes, "
+                    + classBytes + " bytes, including " + debugBytes + " bytes of debug information.");
+            var largest = KawaClassReport.largest(modules, LARGEST_MODULES);
+            if (!largest.isEmpty()) {
+                System.out.println("Largest Kawa modules:");
+                for (var module : largest) {
+                    System.out.println(String.format("  %-40s %6d classes %10d bytes %8d constants %7d methods",
+                            module.module(), module.classCount(), module.classBytes(), module.constantPoolEntries(),
+                            module.methodCount()));
+                }
+            }
+            System.out.println("Kawa class report: " + file.getPath() + ".{json,csv}");
+        }
+    }
+
+    // Returns the module name of a main source recorded in the manifest
+    private String moduleName(File source, KawaSourceManifest.Entry entry) {
+        if (dependencyGraph_ != null && dependencyGraph_.moduleName(source) != null) {
+            return dependencyGraph_.moduleName(source);
+        }
+        if (entry.header() == null) {
+            return moduleName(source, new KawaModuleHeader(null, List.of()));
+        }
+        return moduleName(source, entry.header());
+    }
 
     /**
-     * Returns the list of Kawa source file {{@code .scm and others}} contained in a given directory.
+     * Provides glob patterns of sources to exclude from the source directories.
+     * <p>
+     * The patterns are matched against the path of each source relative to its source directory, e.g.
+     * {@code scratch/**} or {@code **}{@code /*-draft.scm}. Source files that are listed individually are never
+     * excluded.
      *
-     * @param directory the directory
-     * @return the list of Kawa files
+     * @param patterns one or more glob patterns
+     * @return this operation instance
      */
-    public static Collection<File> getKawaFileList(File directory) {
-        if (directory == null) {
-            return Collections.emptyList();
-        } else if (!directory.exists()) {
-            if (LOGGER.isLoggable(Level.WARNING)) {
-                LOGGER.warning("Directory not found: " + directory.getAbsolutePath());
-            }
-            return Collections.emptyList();
-        } else {
-            return FileUtils.getFileList(directory, KAWA_FILE_PATTERNS, null).stream()
-                    .map(file -> new File(directory, file))
-                    .toList();
-        }
+    public CompileKawaOperation excludes(String... patterns) {
+        excludes_.addAll(List.of(patterns));
+        return this;
     }
 
     /**
-     * Provides the main build destination directory.
+     * Provides a list of glob patterns of sources to exclude from the source directories.
      *
-     * @param directory the directory to use for the main build destination
+     * @param patterns a list of glob patterns
      * @return this operation instance
+     * @see #excludes(String...)
      */
-    public CompileKawaOperation buildMainDirectory(File directory) {
-        buildMainDirectory_ = directory;
+    public CompileKawaOperation excludes(Collection<String> patterns) {
+        excludes_.addAll(patterns);
         return this;
     }
 
     /**
-     * Retrieves the main build destination directory.
+     * Retrieves the glob patterns of sources to exclude from the source directories.
      *
-     * @return the main build destination
+     * @return the list of glob patterns
      */
-    public File buildMainDirectory() {
-        return buildMainDirectory_;
+    public Collection<String> excludes() {
+        return excludes_;
     }
 
     /**
-     * Provides the test build destination directory.
+     * Enables or disables compiling in forked worker JVMs.
+     * <p>
+     * The workers are started on demand, up to the {@link #parallelism(int) parallelism}, with the
+     * {@link #jvmOptions(String...) JVM options}, and the modules are distributed between them in order of their
+     * dependencies. They are reused for all the sources compiled by the operation, and stop once it is done. This
+     * keeps the heap and garbage collection of the compiler separate from the build, and a compile error only stops
+     * the worker. Takes precedence over the {@link #daemon(boolean) compiler daemon}.
      *
-     * @param directory the directory to use for the test build destination
+     * @param fork {@code true} to compile in forked workers
      * @return this operation instance
      */
-    public CompileKawaOperation buildTestDirectory(File directory) {
-        buildTestDirectory_ = directory;
+    public CompileKawaOperation fork(boolean fork) {
+        fork_ = fork;
         return this;
     }
 
     /**
-     * Retrieves the test build destination directory.
+     * Determines whether the sources are compiled in forked worker JVMs.
      *
-     * @return the test build destination
+     * @return {@code true} if the sources are compiled in forked workers
      */
-    public File buildTestDirectory() {
-        return buildTestDirectory_;
+    public boolean isFork() {
+        return fork_;
     }
 
     /**
-     * Performs the compile operation.
+     * Configures a compile operation from a {@link BaseProject}.
+     * <p>
+     * Sets the following from the project:
+     * <ul>
+     *     <li>{@link #buildMainDirectory() buildMainDirectory}</li>
+     *     <li>{@link #buildTestDirectory() buildTestDirectory}</li>
+     *     <li>{@link #mainSourceDirectories() mainSourceDirectories} to the {@code kawa} directory in
+     *     {@link BaseProject#srcMainDirectory() srcMainDirectory}</li>
+     *     <li>{@link #testSourceDirectories() testSourceDirectories} to the {@code kawa} directory in
+     *     {@link BaseProject#srcTestDirectory() srcTestDirectory}</li>
+     *     <li>{@link #compileClasspath() compileClasspath} to the
+     *     {@link BaseProject#compileMainClasspath() compileMainClasspath}</li>
+     * </ul>
+     * <p>
+     * The sources in these directories are discovered when the operation is executed.
+     *
+     * @param project the project to configure the compile operation from
+     * @return this operation instance
      */
-    @Override
-    public void execute() throws IOException {
-        if (project_ == null) {
-            throw new IllegalArgumentException("A project must be specified.");
-        }
-
-        executeCreateBuildDirectories();
-        executeBuildMainSources();
-        // executeBuildTestSources();
-
-        if (!silent()) {
-            System.out.println("Kawa compilation finished successfully.");
-        }
+    public CompileKawaOperation fromProject(BaseProject project) {
+        project_ = project;
+        var op = buildMainDirectory(project.buildMainDirectory())
+                .buildTestDirectory(project.buildTestDirectory())
+                .mainSourceDirectories(new File(project.srcMainDirectory(), "kawa"))
+                .testSourceDirectories(new File(project.srcTestDirectory(), "kawa"))
+                .compileClasspath(project.compileMainClasspath().stream().map(File::new).toList())
+                .shardDirectory(new File(project.buildDirectory(), "kawa-shards"));
+        return op;
     }
 
     /**
-     * Part of the {@link #execute execute} operation, builds the main sources.
+     * Provides the name of the module registry class to generate, e.g. {@code edu.example.KawaModules}.
+     * <p>
+     * The registry class maps the name of each main module to its class, so that modules can be looked up without
+     * scanning the classpath, and loaded without being initialized until they are first used. The same mapping is
+     * written to the {@code META-INF/kawa/modules.index} resource. Generating the registry class requires a JDK.
      *
-     * @throws IOException if an error occurs
+     * @param className the fully qualified name of the registry class, or {@code null} to not generate a registry
+     * @return this operation instance
      */
-    protected void executeBuildMainSources() throws IOException {
-        if (!silent()) {
-            System.out.println("Compiling Kawa main sources.");
-        }
-
-        executeBuildSources(
-                sources(mainSourceFiles(), mainSourceDirectories()),
-                buildMainDirectory()
-            );
+    public CompileKawaOperation moduleRegistry(String className) {
+        moduleRegistry_ = className;
+        return this;
     }
 
     /**
-     * Part of the {@link #execute execute} operation, build sources to a given destination.
+     * Retrieves the name of the module registry class to generate.
      *
-     * @param sources     the source files to compile
-     * @param destination the destination directory
-     * @throws IOException if an error occurs
+     * @return the fully qualified name of the registry class, or {@code null} if none
      */
-    protected void executeBuildSources(
-        Collection<File> sources,
-        File destination
-    ) throws IOException {
-        if (sources.isEmpty() || destination == null) {
-            return;
-        }
-
-        var args = new ArrayList<String>();
+    public String moduleRegistry() {
+        return moduleRegistry_;
+    }
 
-        // destination
-        var manager = ModuleManager.getInstance();
-        manager.setCompilationDirectory(destination.getAbsolutePath());
+    /**
+     * Provides the directory of the cache of R7RS libraries compiled from dependency jars.
+     * <p>
+     * The {@code .sld} library sources shipped in the jars of the {@link #compileClasspath() compile classpath} are
+     * compiled once, in a forked compiler worker, and their classes are kept in the cache under the checksum of the
+     * jar and the Kawa version. The cached classes are then put on the classpath of the compiler, so that the
+     * libraries are not compiled again by each project or build. The cache can be shared between projects, e.g. in
+     * {@code ~/.cache/bld-kawa/libraries}.
+     *
+     * @param directory the cache directory, or {@code null} to not compile the libraries of dependency jars
+     * @return this operation instance
+     */
+    public CompileKawaOperation libraryCacheDirectory(File directory) {
+        libraryCacheDirectory_ = directory;
+        return this;
+    }
 
-        // sources
-        sources.forEach(f -> args.add(f.getAbsolutePath()));
+    /**
+     * Retrieves the directory of the cache of R7RS libraries compiled from dependency jars.
+     *
+     * @return the cache directory, or {@code null} if none
+     */
+    public File libraryCacheDirectory() {
+        return libraryCacheDirectory_;
+    }
 
-        compileFiles(args.toArray(new String[args.size()]), 0, args.size());
+    /**
+     * Provides the options of the forked worker JVMs, e.g. {@code -Xmx1g} or {@code -XX:+UseParallelGC}.
+     *
+     * @param options one or more JVM options
+     * @return this operation instance
+     * @see #fork(boolean)
+     */
+    public CompileKawaOperation jvmOptions(String... options) {
+        jvmOptions_.addAll(List.of(options));
+        return this;
     }
 
     /**
-     * Part of the {@link #execute execute} operation, builds the test sources.
+     * Provides a list of options of the forked worker JVMs.
      *
-     * @throws IOException if an error occurs
+     * @param options a list of JVM options
+     * @return this operation instance
+     * @see #fork(boolean)
      */
-    @SuppressWarnings("PMD.SystemPrintln")
-    protected void executeBuildTestSources()
-            throws IOException {
-        if (!silent()) {
-            System.out.println("Compiling Kotlin test sources.");
-        }
-        executeBuildSources(
-                sources(testSourceFiles(), testSourceDirectories()),
-                buildTestDirectory());
+    public CompileKawaOperation jvmOptions(Collection<String> options) {
+        jvmOptions_.addAll(options);
+        return this;
     }
 
     /**
-     * Part of the {@link #execute execute} operation, creates the build directories.
+     * Retrieves the options of the forked worker JVMs.
      *
-     * @throws IOException if an error occurs
+     * @return the list of JVM options
      */
-    protected void executeCreateBuildDirectories() throws IOException {
-        if (buildMainDirectory() != null && !buildMainDirectory().exists() && !buildMainDirectory().mkdirs()) {
-            throw new IOException("Could not created build main directory: " + buildMainDirectory().getAbsolutePath());
-        }
-        if (buildTestDirectory() != null && !buildTestDirectory().exists() && !buildTestDirectory().mkdirs()) {
-            throw new IOException("Could not created build test directory: " + buildTestDirectory().getAbsolutePath());
-        }
+    public List<String> jvmOptions() {
+        return jvmOptions_;
     }
 
     /**
-     * Configures a compile operation from a {@link BaseProject}.
+     * Provides the number of modules that can be compiled at the same time.
      * <p>
-     * Sets the following from the project:
-     * <ul>
-     *     <li>{@link #buildMainDirectory() buildMainDirectory}</li>
-     *     <li>{@link #buildTestDirectory() buildTestDirectory}</li>
-     *     <li>{@link #mainSourceFiles() mainSourceFiles} to the {@code kotlin} directory in
-     *     {@link BaseProject#srcMainDirectory() srcMainDirectory}</li>
-     *     <li>{@link #testSourceFiles() testSourceFile} to the {@code kotlin} directory in
-     *     {@link BaseProject#srcTestDirectory() srcTestDirectory}</li>
-     * </ul>
+     * When greater than one, the modules are compiled one at a time, in order of their
+     * {@link #dependencyGraph() dependencies}, by that many workers that each have their own copy of the Kawa
+     * compiler. Otherwise, all the sources are compiled at once by the Kawa compiler loaded in the build.
      *
-     * @param project the project to configure the compile operation from
+     * @param parallelism the number of modules to compile at the same time
      * @return this operation instance
      */
-    public CompileKawaOperation fromProject(BaseProject project) {
-        project_ = project;
-        var op = buildMainDirectory(project.buildMainDirectory())
-                .buildTestDirectory(project.buildTestDirectory())
-                .mainSourceFiles(getKawaFileList(new File(project.srcMainDirectory(), "kawa")))
-                .testSourceFiles(getKawaFileList(new File(project.srcTestDirectory(), "kawa")));
-        return op;
+    public CompileKawaOperation parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1.");
+        }
+        parallelism_ = parallelism;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of modules that can be compiled at the same time.
+     *
+     * @return the parallelism
+     */
+    public int parallelism() {
+        return parallelism_;
     }
 
     /**
@@ -294,16 +2041,176 @@ public class CompileKawaOperation extends AbstractOperation<CompileKawaOperation
         return mainSourceFiles_;
     }
 
-    // Combine Kawa sources
-    private Collection<File> sources(Collection<File> files, Collection<File> directories) {
-        var sources = new ArrayList<>(files);
-        for (var directory : directories) {
-            sources.addAll(getKawaFileList(directory));
+    // Combine Kawa sources, keeping a snapshot of the source directories in the work directory
+    private Collection<File> sources(Collection<File> files, Collection<File> directories, String name)
+            throws IOException {
+        var snapshot = workDirectory() == null || directories.isEmpty()
+                ? null : new File(workDirectory(), name + "-sources.snapshot");
+        var scanner = new KawaSourceScanner(excludes(), snapshot);
+        var listed = files;
+        if (changedCanonical_ != null) {
+            // individual source files that were deleted since the previous execution
+            listed = new ArrayList<>();
+            for (var file : files) {
+                if (file.exists() || !changedCanonical_.contains(file.getCanonicalFile())) {
+                    listed.add(file);
+                }
+            }
         }
-
+        var sources = scanner.scan(listed, directories);
+        scanner.save();
         return sources;
     }
 
+    /**
+     * Compiles only one shard of the main sources, e.g. on one of several CI nodes.
+     * <p>
+     * The main sources are partitioned into {@code count} shards of about the same weight, keeping the sources that
+     * import each other together whenever possible. The weight of a source is its compile time in the
+     * {@link #shardTimings(File) shard timings} report, or else its size. Every node computes the same plan from the
+     * same sources, compiles the sources of its shard along with the sources they depend on, and exports their classes
+     * and a manifest to {@code shard-<index>} in the {@link #shardDirectory(File) shard directory}. The test sources
+     * are not compiled, nor is the module registry or JAR file written. Once the shard directories of all the nodes
+     * are gathered, a build {@link #mergeShards(boolean) merging the shards} assembles the main build directory.
+     *
+     * @param index the index of the shard to compile, from {@code 0} to {@code count - 1}
+     * @param count the number of shards
+     * @return this operation instance
+     * @throws IllegalArgumentException if the count is less than {@code 1}, or the index is not between {@code 0} and
+     *                                  {@code count - 1}
+     */
+    public CompileKawaOperation shard(int index, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The shard count must be at least 1.");
+        }
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException("The shard index must be between 0 and " + (count - 1) + '.');
+        }
+        shardIndex_ = index;
+        shardCount_ = count;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of shards.
+     *
+     * @return the number of shards, or {@code 0} if the compilation is not sharded
+     */
+    public int shardCount() {
+        return shardCount_;
+    }
+
+    /**
+     * Retrieves the index of the shard to compile.
+     *
+     * @return the shard index
+     */
+    public int shardIndex() {
+        return shardIndex_;
+    }
+
+    /**
+     * Provides the directory the {@link #shard(int, int) shards} export their classes to, and the merge reads them
+     * from.
+     * <p>
+     * Defaults to {@code build/kawa-shards}.
+     *
+     * @param directory the shard directory
+     * @return this operation instance
+     */
+    public CompileKawaOperation shardDirectory(File directory) {
+        shardDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the directory the shards export their classes to.
+     *
+     * @return the shard directory
+     */
+    public File shardDirectory() {
+        return shardDirectory_;
+    }
+
+    /**
+     * Provides the {@link #compileReport(boolean) compile report} of an earlier compilation, whose compile times
+     * balance the {@link #shard(int, int) shards}, e.g. {@code build/kawa/main-compile-report.csv}.
+     * <p>
+     * All the shards must use the same report, or they would not compute the same plan and could not be merged.
+     * Sources that are not in the report are given the average compile time.
+     *
+     * @param report the CSV compile report, or {@code null} to balance the shards by the size of the sources
+     * @return this operation instance
+     */
+    public CompileKawaOperation shardTimings(File report) {
+        shardTimings_ = report;
+        return this;
+    }
+
+    /**
+     * Retrieves the compile report whose compile times balance the shards.
+     *
+     * @return the CSV compile report, or {@code null} if none
+     */
+    public File shardTimings() {
+        return shardTimings_;
+    }
+
+    /**
+     * Assembles the main build directory from the classes exported by all the {@link #shard(int, int) shards},
+     * instead of compiling the main sources.
+     * <p>
+     * The merge verifies that the shards are complete: all the shards of one plan must be present in the
+     * {@link #shardDirectory(File) shard directory}, and every main source must have been compiled by exactly one of
+     * them, from its current content, with the same Kawa version and compile options. The test sources are then
+     * compiled against the merged classes.
+     *
+     * @param mergeShards {@code true} to merge the shards
+     * @return this operation instance
+     */
+    public CompileKawaOperation mergeShards(boolean mergeShards) {
+        mergeShards_ = mergeShards;
+        return this;
+    }
+
+    /**
+     * Determines whether the main build directory is assembled from the shards.
+     *
+     * @return {@code true} if the shards are merged
+     */
+    public boolean isMergeShards() {
+        return mergeShards_;
+    }
+
+    /**
+     * Enables or disables the syntax check of the sources.
+     * <p>
+     * Before anything is compiled, all the changed sources are read in parallel. When enabled, the compilation fails
+     * right away if any source is not well-formed, e.g. has unbalanced parentheses or an unterminated string,
+     * reporting the errors of all the sources at once. Only the syntax is checked, nothing is compiled. The module
+     * declarations and imports that are read are used for the dependency analysis.
+     * <p>
+     * Disabled by default, since the sources are read by a reader of the extension rather than by Kawa, which accepts
+     * syntax it does not know of, such as reader extensions. The sources it cannot read are then logged as warnings
+     * and left to the Kawa compiler.
+     *
+     * @param syntaxCheck {@code true} to check the syntax of the sources before compiling them
+     * @return this operation instance
+     */
+    public CompileKawaOperation syntaxCheck(boolean syntaxCheck) {
+        syntaxCheck_ = syntaxCheck;
+        return this;
+    }
+
+    /**
+     * Determines whether the syntax of the sources is checked before they are compiled.
+     *
+     * @return {@code true} if the syntax is checked
+     */
+    public boolean isSyntaxCheck() {
+        return syntaxCheck_;
+    }
+
     /**
      * Provides test source directories that should be compiled.
      *
@@ -365,4 +2272,38 @@ public class CompileKawaOperation extends AbstractOperation<CompileKawaOperation
     public Collection<File> testSourceFiles() {
         return testSourceFiles_;
     }
+
+    /**
+     * Provides the work directory, where the state kept between compilations is stored.
+     *
+     * @param directory the work directory
+     * @return this operation instance
+     */
+    public CompileKawaOperation workDirectory(File directory) {
+        workDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the work directory, where the state kept between compilations is stored.
+     * <p>
+     * Defaults to the {@code kawa} directory next to the {@link #buildMainDirectory() buildMainDirectory}.
+     *
+     * @return the work directory
+     */
+    public File workDirectory() {
+        if (workDirectory_ == null && buildMainDirectory_ != null) {
+            return new File(buildMainDirectory_.getAbsoluteFile().getParentFile(), "kawa");
+        }
+        return workDirectory_;
+    }
+
+    /**
+     * Sources compiled to the same destination.
+     *
+     * @param sources     the source files
+     * @param destination the destination directory
+     */
+    private record SourceSet(Collection<File> sources, File destination) {
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URISyntaxException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiles Kawa sources with a {@link KawaCompilerDaemon}, starting it if needed.
+ * <p>
+ * If the daemon cannot be reached or stops while compiling, the sources are compiled in the build instead. Since
+ * the Kawa compiler exits when a source has errors, this is also how compile errors are reported.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class DaemonKawaCompiler implements KawaCompiler {
+    private static final Logger LOGGER = Logger.getLogger(DaemonKawaCompiler.class.getName());
+    private static final long POLL_MILLIS = 50L;
+    private static final long STARTUP_MILLIS = 10_000L;
+    private final List<File> classpath_;
+    private final Duration idleTimeout_;
+    private final File log_;
+    private final List<String> options_;
+    private final Path socket_;
+    private boolean reloaded_;
+
+    /**
+     * Creates a new daemon compiler.
+     *
+     * @param socket      the socket of the daemon
+     * @param idleTimeout the time after which an idle daemon stops
+     * @param log         the file the output of the daemon is appended to
+     * @param classpath   the directories and jars the compiler can load modules from, besides the destination
+     * @param options     the arguments of the {@link KawaCompileOptions compile options}
+     */
+    DaemonKawaCompiler(Path socket, Duration idleTimeout, File log, Collection<File> classpath,
+                       List<String> options) {
+        classpath_ = List.copyOf(classpath);
+        options_ = List.copyOf(options);
+        socket_ = socket;
+        idleTimeout_ = idleTimeout;
+        log_ = log;
+    }
+
+    // Returns the classpath of the daemon, made of this extension and Kawa
+    static String classpath() throws IOException {
+        var source = KawaCompilerDaemon.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            throw new IOException("Could not locate the bld Kawa extension.");
+        }
+        try {
+            return new File(source.getLocation().toURI()).getAbsolutePath() + File.pathSeparator
+                    + IsolatedKawaCompiler.kawaLocation().getAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Could not locate the bld Kawa extension.", e);
+        }
+    }
+
+    // Returns the java launcher of the current JVM
+    static String javaTool() {
+        return new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+    }
+
+    @Override
+    public void compile(List<File> sources, File destination) throws IOException {
+        String response;
+        try {
+            response = request(sources, destination);
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("The Kawa compiler daemon is unavailable, compiling in the build: " + e.getMessage());
+            }
+            if (options_.isEmpty()) {
+                new InProcessKawaCompiler(classpath_).compile(sources, destination);
+            } else {
+                // keep the options out of the compiler loaded in the build
+                try (var compiler = new IsolatedKawaCompiler(classpath_, options_)) {
+                    compiler.compile(sources, destination);
+                }
+            }
+            return;
+        }
+
+        if (!KawaCompilerDaemon.OK.equals(response)) {
+            throw new IOException("Kawa compilation failed: "
+                    + response.substring(response.indexOf('\t') + 1));
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        var address = UnixDomainSocketAddress.of(socket_);
+        try {
+            return SocketChannel.open(address);
+        } catch (IOException e) {
+            // no daemon, or a stale socket left by a daemon that did not exit cleanly
+            Files.deleteIfExists(socket_);
+        }
+
+        var parent = log_.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        var process = new ProcessBuilder(
+                javaTool(),
+                "-cp", classpath(),
+                KawaCompilerDaemon.class.getName(),
+                socket_.toString(),
+                String.valueOf(idleTimeout_.toMillis()))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log_))
+                .start();
+
+        var deadline = System.currentTimeMillis() + STARTUP_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("The Kawa compiler daemon exited, see " + log_.getAbsolutePath());
+            }
+            if (Files.exists(socket_)) {
+                try {
+                    return SocketChannel.open(address);
+                } catch (IOException e) {
+                    // not accepting connections yet
+                }
+            }
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting the Kawa compiler daemon.", e);
+            }
+        }
+        throw new IOException("The Kawa compiler daemon did not start, see " + log_.getAbsolutePath());
+    }
+
+    // Sends a compile request, returning the response
+    private String request(List<File> sources, File destination) throws IOException {
+        try (var channel = connect()) {
+            var out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                    StandardCharsets.UTF_8));
+            var in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8));
+            if (!reloaded_) {
+                // the modules changed by the previous builds are only reloaded once per compiler
+                KawaCompilerDaemon.writeReload(out);
+                var response = in.readLine();
+                if (response == null) {
+                    throw new IOException("The Kawa compiler daemon stopped, see " + log_.getAbsolutePath());
+                }
+                if (!KawaCompilerDaemon.OK.equals(response)) {
+                    throw new IOException("Could not reload the Kawa compiler daemon: "
+                            + response.substring(response.indexOf('\t') + 1));
+                }
+                reloaded_ = true;
+            }
+
+            KawaCompilerDaemon.writeRequest(out, sources, destination, classpath_, options_);
+            var response = in.readLine();
+            if (response == null) {
+                throw new IOException("The Kawa compiler daemon stopped, see " + log_.getAbsolutePath());
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles Kawa sources in a forked JVM.
+ * <p>
+ * The worker runs a {@link KawaCompilerDaemon} serving requests on its standard input and output, and is reused for
+ * every compilation until this compiler is closed. Its error output is inherited by the build, so that compiler
+ * warnings and errors are reported as usual.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class ForkedKawaCompiler implements KawaCompiler {
+    private static final long EXIT_SECONDS = 10L;
+    private final BufferedReader in_;
+    private final BufferedWriter out_;
+    private final Process process_;
+
+    /**
+     * Starts a new worker.
+     * <p>
+     * The worker compiles with the classpath given to {@link #compile(List, File, Collection, List)}, or only its
+     * destination directory.
+     *
+     * @param jvmOptions the options of the worker JVM
+     * @throws IOException if the worker could not be started
+     */
+    ForkedKawaCompiler(List<String> jvmOptions) throws IOException {
+        var command = new ArrayList<String>();
+        command.add(DaemonKawaCompiler.javaTool());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(DaemonKawaCompiler.classpath());
+        command.add(KawaCompilerDaemon.class.getName());
+        command.add(KawaCompilerDaemon.STDIO);
+
+        process_ = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        out_ = new BufferedWriter(new OutputStreamWriter(process_.getOutputStream(), StandardCharsets.UTF_8));
+        in_ = new BufferedReader(new InputStreamReader(process_.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out_.close();
+            if (!process_.waitFor(EXIT_SECONDS, TimeUnit.SECONDS)) {
+                process_.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process_.destroyForcibly();
+            Thread.currentThread().interrupt();
+        } finally {
+            in_.close();
+        }
+    }
+
+    @Override
+    public void compile(List<File> sources, File destination) throws IOException {
+        compile(sources, destination, List.of(), List.of());
+    }
+
+    /**
+     * Compiles sources to a given destination.
+     *
+     * @param sources     the source files to compile
+     * @param destination the destination directory
+     * @param classpath   the directories and jars the compiler can load modules from, besides the destination
+     * @param options     the arguments of the {@link KawaCompileOptions compile options}
+     * @throws IOException if an error occurs
+     */
+    void compile(List<File> sources, File destination, Collection<File> classpath, List<String> options)
+            throws IOException {
+        String response;
+        try {
+            KawaCompilerDaemon.writeRequest(out_, sources, destination, classpath, options);
+            response = in_.readLine();
+        } catch (IOException e) {
+            response = null;
+        }
+
+        if (response == null) {
+            // the Kawa compiler exits when a source has errors
+            throw new IOException("Kawa compilation failed: the compiler worker exited" + exitCode() + '.');
+        }
+        if (!KawaCompilerDaemon.OK.equals(response)) {
+            throw new IOException("Kawa compilation failed: " + response.substring(response.indexOf('\t') + 1));
+        }
+    }
+
+    private String exitCode() {
+        try {
+            if (process_.waitFor(EXIT_SECONDS, TimeUnit.SECONDS)) {
+                return " with code " + process_.exitValue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "";
+    }
+
+    /**
+     * Determines whether the worker is still running.
+     *
+     * @return {@code true} if the worker is running
+     */
+    boolean isAlive() {
+        return process_.isAlive();
+    }
+
+    /**
+     * Prepares the worker for a new build, reloading the modules whose class files changed since it loaded them.
+     *
+     * @throws IOException if the worker could not be reached
+     */
+    void reload() throws IOException {
+        String response;
+        try {
+            KawaCompilerDaemon.writeReload(out_);
+            response = in_.readLine();
+        } catch (IOException e) {
+            response = null;
+        }
+
+        if (response == null) {
+            throw new IOException("The Kawa compiler worker exited" + exitCode() + '.');
+        }
+        if (!KawaCompilerDaemon.OK.equals(response)) {
+            throw new IOException("Could not reload the Kawa compiler worker: "
+                    + response.substring(response.indexOf('\t') + 1));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import static kawa.repl.compileFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import gnu.expr.ModuleManager;
+
+/**
+ * Compiles Kawa sources with the Kawa compiler loaded in the build, sharing its global state.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class InProcessKawaCompiler implements KawaCompiler {
+    private final List<File> classpath_;
+
+    /**
+     * Creates a new in-process compiler.
+     */
+    InProcessKawaCompiler() {
+        this(List.of());
+    }
+
+    /**
+     * Creates a new in-process compiler.
+     *
+     * @param classpath the directories and jars the compiler can load modules from, besides the build classpath
+     */
+    InProcessKawaCompiler(Collection<File> classpath) {
+        classpath_ = List.copyOf(classpath);
+    }
+
+    @Override
+    public void compile(List<File> sources, File destination) throws IOException {
+        var args = new String[sources.size()];
+
+        // destination
+        var manager = ModuleManager.getInstance();
+        manager.setCompilationDirectory(destination.getAbsolutePath());
+
+        // sources
+        for (var i = 0; i < args.length; i++) {
+            args[i] = sources.get(i).getAbsolutePath();
+        }
+
+        if (classpath_.isEmpty()) {
+            compileFiles(args, 0, args.length);
+            return;
+        }
+
+        var urls = new ArrayList<URL>();
+        for (var entry : classpath_) {
+            urls.add(entry.toURI().toURL());
+        }
+        var thread = Thread.currentThread();
+        var contextClassLoader = thread.getContextClassLoader();
+        // Kawa resolves the modules to import through the context class loader
+        try (var loader = new URLClassLoader(urls.toArray(new URL[0]), contextClassLoader)) {
+            thread.setContextClassLoader(loader);
+            compileFiles(args, 0, args.length);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+}
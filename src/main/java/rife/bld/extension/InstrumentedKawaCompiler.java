@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Compiles Kawa sources one at a time with another compiler, measuring the compilation of each source.
+ * <p>
+ * Each compilation is also recorded as a {@link KawaCompileEvent} when the JDK Flight Recorder is running.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class InstrumentedKawaCompiler implements KawaCompiler {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private final KawaCompiler delegate_;
+    private final boolean measureThread_;
+    private final Queue<Timing> timings_;
+
+    /**
+     * Creates a new instrumented compiler.
+     *
+     * @param delegate      the compiler to measure
+     * @param timings       the queue to add the measurements to, may be shared by several compilers
+     * @param measureThread whether the delegate compiles on the current thread, so that its CPU time and
+     *                      allocations can be measured
+     */
+    InstrumentedKawaCompiler(KawaCompiler delegate, Queue<Timing> timings, boolean measureThread) {
+        delegate_ = delegate;
+        timings_ = timings;
+        measureThread_ = measureThread;
+    }
+
+    // Returns the bytes allocated by the current thread, or -1 if not supported
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1L;
+    }
+
+    // Returns the CPU time of the current thread, or -1 if not supported
+    private static long cpuTime() {
+        if (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+            return THREADS.getCurrentThreadCpuTime();
+        }
+        return -1L;
+    }
+
+    private static long difference(long start, long end) {
+        return start < 0 || end < 0 ? -1L : end - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate_.close();
+    }
+
+    @Override
+    public void compile(List<File> sources, File destination) throws IOException {
+        for (var source : sources) {
+            var event = new KawaCompileEvent();
+            var cpu = measureThread_ ? cpuTime() : -1L;
+            var allocated = measureThread_ ? allocatedBytes() : -1L;
+            var start = System.nanoTime();
+            event.begin();
+
+            delegate_.compile(List.of(source), destination);
+
+            event.end();
+            var timing = new Timing(source.getAbsoluteFile(), System.nanoTime() - start,
+                    measureThread_ ? difference(cpu, cpuTime()) : -1L,
+                    measureThread_ ? difference(allocated, allocatedBytes()) : -1L);
+            timings_.add(timing);
+            if (event.shouldCommit()) {
+                event.source = timing.source().getPath();
+                event.cpuTime = timing.cpuNanos();
+                event.allocated = timing.allocatedBytes();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The measurements of the compilation of a source.
+     *
+     * @param source         the absolute source file
+     * @param wallNanos      the elapsed time, in nanoseconds
+     * @param cpuNanos       the CPU time, in nanoseconds, or {@code -1}
+     * @param allocatedBytes the number of bytes allocated, or {@code -1}
+     */
+    record Timing(File source, long wallNanos, long cpuNanos, long allocatedBytes) {
+    }
+}
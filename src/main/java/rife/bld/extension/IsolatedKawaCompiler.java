@@ -0,0 +1,256 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles Kawa sources with a private copy of the Kawa compiler.
+ * <p>
+ * The Kawa classes are loaded in their own class loader, so that the global compiler state, such as the
+ * {@code ModuleManager} instance and its compilation directory, is not shared with the build or with other
+ * compilers. The classpath entries given to the compiler, typically the destination directory, are visible to it so
+ * that already compiled modules are loaded instead of being compiled again.
+ * <p>
+ * The Kawa runtime and the jars of the classpath are loaded once, while the modules compiled to the directories of the
+ * classpath are loaded by a child class loader. A compiler that is kept across builds is {@link #reload() reloaded}
+ * before each of them, which only replaces the child loader if a class file it loaded was modified or deleted since,
+ * so that the compiler never compiles against stale modules, and keeps the Kawa classes it loaded and the code
+ * optimized by the JIT.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class IsolatedKawaCompiler implements KawaCompiler {
+    private final Method clear_;
+    private final Method compileFiles_;
+    private final URL[] directories_;
+    private final Map<Path, Long> jars_ = new HashMap<>();
+    private final URLClassLoader loader_;
+    private final Object manager_;
+    private final Method setCompilationDirectory_;
+    private ModuleLoader modules_;
+
+    /**
+     * Loads a new Kawa compiler.
+     *
+     * @param classpath the directories and jars the compiler can load modules from
+     * @throws IOException if the compiler could not be loaded
+     */
+    IsolatedKawaCompiler(Collection<File> classpath) throws IOException {
+        this(classpath, List.of());
+    }
+
+    /**
+     * Loads a new Kawa compiler with the given options.
+     *
+     * @param classpath the directories and jars the compiler can load modules from
+     * @param options   the arguments of the {@link KawaCompileOptions compile options}
+     * @throws IOException if the compiler could not be loaded
+     */
+    IsolatedKawaCompiler(Collection<File> classpath, List<String> options) throws IOException {
+        var urls = new ArrayList<URL>();
+        urls.add(kawaLocation().toURI().toURL());
+        var directories = new ArrayList<URL>();
+        for (var entry : classpath) {
+            if (entry.isFile()) {
+                urls.add(entry.toURI().toURL());
+                jars_.put(entry.toPath(), modified(entry.toPath()));
+            } else {
+                // a directory that does not exist yet is created by the compilation
+                directories.add(entry.toURI().toURL());
+            }
+        }
+        directories_ = directories.toArray(new URL[0]);
+        loader_ = new URLClassLoader("kawa-compiler", urls.toArray(new URL[0]),
+                ClassLoader.getPlatformClassLoader());
+        modules_ = new ModuleLoader(directories_, loader_);
+
+        try {
+            var repl = Class.forName("kawa.repl", true, loader_);
+            compileFiles_ = repl.getMethod("compileFiles", String[].class, int.class, int.class);
+            var managerClass = Class.forName("gnu.expr.ModuleManager", true, loader_);
+            manager_ = managerClass.getMethod("getInstance").invoke(null);
+            setCompilationDirectory_ = managerClass.getMethod("setCompilationDirectory", String.class);
+            clear_ = managerClass.getMethod("clear");
+            if (!options.isEmpty()) {
+                // the options are global to this copy of the compiler
+                var args = options.toArray(new String[0]);
+                repl.getMethod("processArgs", String[].class, int.class, int.class).invoke(null, args, 0, args.length);
+            }
+        } catch (ReflectiveOperationException e) {
+            modules_.close();
+            loader_.close();
+            throw new IOException("Could not load the Kawa compiler.", e);
+        }
+    }
+
+    /**
+     * Returns the location of the Kawa jar loaded in the build.
+     *
+     * @return the Kawa jar or classes directory
+     * @throws IOException if the location cannot be determined
+     */
+    static File kawaLocation() throws IOException {
+        var source = kawa.repl.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            throw new IOException("Could not locate the Kawa compiler.");
+        }
+        try {
+            return new File(source.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Could not locate the Kawa compiler.", e);
+        }
+    }
+
+    // Returns the modification time of a file, in nanoseconds, or -1 if it does not exist
+    private static long modified(Path path) throws IOException {
+        try {
+            return Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+        } catch (NoSuchFileException e) {
+            return -1L;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            modules_.close();
+        } finally {
+            loader_.close();
+        }
+    }
+
+    @Override
+    public void compile(List<File> sources, File destination) throws IOException {
+        var args = new String[sources.size()];
+        for (var i = 0; i < args.length; i++) {
+            args[i] = sources.get(i).getAbsolutePath();
+        }
+
+        var thread = Thread.currentThread();
+        var contextClassLoader = thread.getContextClassLoader();
+        // Kawa resolves the modules to import through the context class loader
+        thread.setContextClassLoader(modules_);
+        try {
+            setCompilationDirectory_.invoke(manager_, destination.getAbsolutePath());
+            compileFiles_.invoke(null, args, 0, args.length);
+        } catch (InvocationTargetException e) {
+            throw new IOException("Could not compile: " + String.join(", ", args), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    /**
+     * Determines whether the jars of the classpath are unchanged since the compiler was loaded.
+     * <p>
+     * The classes of the jars are loaded with the Kawa runtime, so a compiler whose jars changed must be replaced.
+     *
+     * @return {@code true} if no jar was modified or deleted
+     * @throws IOException if a jar could not be read
+     */
+    boolean isCurrent() throws IOException {
+        for (var jar : jars_.entrySet()) {
+            if (modified(jar.getKey()) != jar.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prepares the compiler for a new build.
+     * <p>
+     * The modules known to the compiler are forgotten, so that they are found again from their current classes, and
+     * the compiled modules are reloaded if a class file it loaded was modified or deleted since. The class files are
+     * only checked here, once per build, rather than before each compilation.
+     *
+     * @return {@code true} if the compiled modules were reloaded
+     * @throws IOException if a class file could not be read
+     */
+    boolean reload() throws IOException {
+        var stale = modules_.isStale();
+        if (stale) {
+            modules_.close();
+            modules_ = new ModuleLoader(directories_, loader_);
+        }
+        try {
+            clear_.invoke(manager_);
+        } catch (InvocationTargetException e) {
+            throw new IOException("Could not reset the Kawa modules.", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+        return stale;
+    }
+
+    // Loads the compiled modules, recording the modification time of each class file it defines
+    private static final class ModuleLoader extends URLClassLoader {
+        private final Map<Path, Long> loaded_ = new ConcurrentHashMap<>();
+
+        static {
+            registerAsParallelCapable();
+        }
+
+        ModuleLoader(URL[] directories, ClassLoader parent) {
+            super("kawa-modules", directories, parent);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            var loaded = super.findClass(name);
+            var resource = findResource(name.replace('.', '/') + ".class");
+            if (resource != null && "file".equals(resource.getProtocol())) {
+                try {
+                    var path = Path.of(resource.toURI());
+                    loaded_.put(path, modified(path));
+                } catch (IOException | URISyntaxException e) {
+                    // an unknown time, so that the loader is replaced before the next compilation
+                    loaded_.put(Path.of(resource.getPath()), -1L);
+                }
+            }
+            return loaded;
+        }
+
+        boolean isStale() throws IOException {
+            for (var entry : loaded_.entrySet()) {
+                if (entry.getValue() < 0L || modified(entry.getKey()) != entry.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
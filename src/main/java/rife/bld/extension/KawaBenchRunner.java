@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import gnu.mapping.Procedure;
+import kawa.standard.Scheme;
+
+/**
+ * Runs a Kawa benchmark procedure in a forked JVM.
+ * <p>
+ * The procedure is called repeatedly for a number of warmup iterations, then of measurement iterations, each lasting
+ * the given time. For each measurement iteration, a line with the number of calls, the elapsed nanoseconds and the
+ * bytes allocated by the benchmark thread is written to the standard output.
+ * <p>
+ * The calls are made in batches, and the clock is only read between batches. The size of the batches doubles until a
+ * batch lasts a hundredth of an iteration, so that reading the clock does not weigh on the measurements, while an
+ * iteration exceeds its time by a batch at most.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public final class KawaBenchRunner {
+    /**
+     * The prefix of a measurement line.
+     */
+    static final String ITERATION = "iteration";
+    // compared with every result, so that the results of the procedure are not optimized away, and never equal to one
+    private static Object sentinel_ = new Object();
+    // read by nobody
+    @SuppressWarnings("unused")
+    private static Object sink_;
+
+    private KawaBenchRunner() {
+        // no-op
+    }
+
+    /**
+     * Runs a benchmark.
+     *
+     * @param args the module class, the procedure name, the number of warmup and measurement iterations, and the
+     *             time of each iteration in milliseconds
+     * @throws Throwable if the module could not be loaded, or the procedure failed
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    public static void main(String[] args) throws Throwable {
+        if (args.length != 5) {
+            System.err.println("Usage: " + KawaBenchRunner.class.getName()
+                    + " <module class> <procedure> <warmup iterations> <measurement iterations> <iteration ms>");
+            System.exit(2);
+        }
+        // keep the output of the benchmark out of the measurements
+        var out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+
+        var scheme = Scheme.getInstance();
+        scheme.eval("(require <" + args[0] + ">)");
+        var procedure = (Procedure) scheme.eval(args[1]);
+        var warmup = Integer.parseInt(args[2]);
+        var measurement = Integer.parseInt(args[3]);
+        var iterationNanos = Long.parseLong(args[4]) * 1_000_000L;
+
+        var batchNanos = iterationNanos / 100L;
+        var batch = 1L;
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (var i = 0; i < warmup + measurement; i++) {
+            var allocated = threads.getCurrentThreadAllocatedBytes();
+            var start = System.nanoTime();
+            var deadline = start + iterationNanos;
+            long calls = 0;
+            long now = start;
+            do {
+                var batchStart = now;
+                for (var j = 0L; j < batch; j++) {
+                    var result = procedure.apply0();
+                    if (result == sentinel_) {
+                        sink_ = result;
+                    }
+                }
+                calls += batch;
+                now = System.nanoTime();
+                if (now - batchStart < batchNanos) {
+                    batch *= 2;
+                }
+            } while (now < deadline);
+            allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            if (i >= warmup) {
+                out.println(ITERATION + '\t' + calls + '\t' + (now - start) + '\t' + allocated);
+            }
+        }
+    }
+}
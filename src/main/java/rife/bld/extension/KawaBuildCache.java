@@ -0,0 +1,270 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of compiled Kawa modules, which can be shared by several checkouts of the same sources.
+ * <p>
+ * Each entry holds the class files compiled from one source, under a key derived from everything the compilation
+ * depends on. Entries are restored by copying their class files, since the Kawa compiler overwrites existing class
+ * files in place, which would corrupt entries shared through hard links. The least recently used entries are evicted
+ * when the cache grows over its maximum size, along with the temporary entries left behind by interrupted builds.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaBuildCache {
+    private static final String CLASSES = "classes";
+    private static final Logger LOGGER = Logger.getLogger(KawaBuildCache.class.getName());
+    private static final String OUTPUTS = "outputs";
+    // temporary entries older than this are no longer being written
+    private static final long STALE_MILLIS = TimeUnit.HOURS.toMillis(1L);
+    private static final String TEMPORARY = "tmp-";
+    private final File directory_;
+    private final long maxSize_;
+    private int hits_;
+    private int misses_;
+    private int stored_;
+
+    /**
+     * Creates a new build cache.
+     *
+     * @param directory the cache directory
+     * @param maxSize   the maximum size of the cache, in bytes
+     */
+    KawaBuildCache(File directory, long maxSize) {
+        directory_ = directory;
+        maxSize_ = maxSize;
+    }
+
+    /**
+     * Computes a cache key.
+     *
+     * @param parts the values the key depends on
+     * @return the hexadecimal SHA-256 hash of the parts
+     * @throws IOException if SHA-256 is not available
+     */
+    static String key(List<String> parts) throws IOException {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var part : parts) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private Path entry(String key) {
+        return directory_.toPath().resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits its maximum size.
+     * <p>
+     * Temporary entries that were not modified for an hour, e.g. left behind by a build that was killed while storing
+     * them, are deleted as well. Nothing is done unless entries were stored since the cache was created.
+     *
+     * @throws IOException if the cache could not be read
+     */
+    void evict() throws IOException {
+        if (stored_ == 0 || !directory_.isDirectory()) {
+            return;
+        }
+
+        record Usage(Path entry, long used, long size) {
+        }
+        var usages = new ArrayList<Usage>();
+        var total = 0L;
+        try (var prefixes = Files.list(directory_.toPath())) {
+            for (var prefix : (Iterable<Path>) prefixes::iterator) {
+                if (prefix.getFileName().toString().startsWith(TEMPORARY)) {
+                    deleteIfStale(prefix);
+                    continue;
+                }
+                if (!Files.isDirectory(prefix) || prefix.getFileName().toString().length() != 2) {
+                    continue;
+                }
+                try (var entries = Files.list(prefix)) {
+                    for (var entry : (Iterable<Path>) entries::iterator) {
+                        var size = size(entry);
+                        usages.add(new Usage(entry, Files.getLastModifiedTime(entry).toMillis(), size));
+                        total += size;
+                    }
+                }
+            }
+        }
+
+        usages.sort(Comparator.comparingLong(Usage::used));
+        for (var usage : usages) {
+            if (total <= maxSize_) {
+                break;
+            }
+            delete(usage.entry());
+            total -= usage.size();
+        }
+    }
+
+    // Deletes a temporary entry that is no longer being written
+    private static void deleteIfStale(Path temporary) {
+        try {
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(temporary).toMillis() > STALE_MILLIS) {
+                delete(temporary);
+            }
+        } catch (IOException e) {
+            // deleted by another build in the meantime
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Could not delete Kawa build cache entry " + temporary + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static long size(Path path) throws IOException {
+        try (var files = Files.walk(path)) {
+            var size = 0L;
+            for (var file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    size += Files.size(file);
+                }
+            }
+            return size;
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            for (var file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of entries restored so far.
+     *
+     * @return the number of hits
+     */
+    int hits() {
+        return hits_;
+    }
+
+    /**
+     * Retrieves the number of entries not found so far.
+     *
+     * @return the number of misses
+     */
+    int misses() {
+        return misses_;
+    }
+
+    /**
+     * Restores the class files of an entry.
+     *
+     * @param key         the entry key
+     * @param destination the destination directory
+     * @return the restored class files, relative to the destination, or {@code null} if the entry is missing or
+     * could not be restored
+     */
+    List<String> restore(String key, File destination) {
+        var entry = entry(key);
+        var outputsFile = entry.resolve(OUTPUTS);
+        if (Files.isRegularFile(outputsFile)) {
+            try {
+                var outputs = Files.readAllLines(outputsFile, StandardCharsets.UTF_8);
+                for (var output : outputs) {
+                    var target = destination.toPath().resolve(output);
+                    Files.createDirectories(target.getParent());
+                    Files.copy(entry.resolve(CLASSES).resolve(output), target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+                hits_++;
+                return outputs;
+            } catch (IOException e) {
+                // most likely evicted by another build, compile instead
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.warning("Could not restore Kawa build cache entry " + key + ": " + e.getMessage());
+                }
+            }
+        }
+        misses_++;
+        return null;
+    }
+
+    /**
+     * Stores the class files compiled from a source.
+     * <p>
+     * The entry is written to a temporary directory first, then moved in place, so that builds sharing the cache
+     * never see partial entries.
+     *
+     * @param key         the entry key
+     * @param destination the destination directory the class files were compiled to
+     * @param outputs     the class files, relative to the destination
+     * @throws IOException if the entry could not be written
+     */
+    void store(String key, File destination, List<String> outputs) throws IOException {
+        var entry = entry(key);
+        if (outputs.isEmpty() || Files.exists(entry)) {
+            return;
+        }
+
+        var temporary = directory_.toPath().resolve(TEMPORARY + UUID.randomUUID());
+        try {
+            for (var output : outputs) {
+                var target = temporary.resolve(CLASSES).resolve(output);
+                Files.createDirectories(target.getParent());
+                Files.copy(destination.toPath().resolve(output), target);
+            }
+            Files.write(temporary.resolve(OUTPUTS), outputs, StandardCharsets.UTF_8);
+            Files.createDirectories(entry.getParent());
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry);
+            }
+            stored_++;
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            // stored by another build in the meantime
+        } finally {
+            if (Files.exists(temporary)) {
+                delete(temporary);
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Minimal reader for the class files emitted by the Kawa compiler.
+ * <p>
+ * Only the parts of the class file format needed to attribute a class to the source it was compiled from, and to
+ * measure its size, are decoded.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaClassFile {
+    /**
+     * The attributes of the code of methods that only hold debug information.
+     */
+    static final Set<String> DEBUG_ATTRIBUTES = Set.of("LineNumberTable", "LocalVariableTable",
+            "LocalVariableTypeTable");
+    private static final int MAGIC = 0xCAFEBABE;
+    private final int constantPoolCount_;
+    private final long debugBytes_;
+    private final int methodCount_;
+    private final long size_;
+    private final String sourceFile_;
+
+    private KawaClassFile(String sourceFile, long size, int constantPoolCount, int methodCount, long debugBytes) {
+        sourceFile_ = sourceFile;
+        size_ = size;
+        constantPoolCount_ = constantPoolCount;
+        methodCount_ = methodCount;
+        debugBytes_ = debugBytes;
+    }
+
+    /**
+     * Reads a class file.
+     *
+     * @param path the class file
+     * @return the class file
+     * @throws IOException if the file could not be read or is not a class file
+     */
+    static KawaClassFile read(Path path) throws IOException {
+        var bytes = Files.readAllBytes(path);
+        try (var in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (bytes.length < 4 || in.readInt() != MAGIC) {
+                throw new IOException("Not a class file: " + path);
+            }
+            in.readUnsignedShort(); // minor version
+            in.readUnsignedShort(); // major version
+
+            var utf8 = readConstantPool(in);
+
+            in.readUnsignedShort(); // access flags
+            in.readUnsignedShort(); // this class
+            in.readUnsignedShort(); // super class
+            in.skipNBytes(in.readUnsignedShort() * 2); // interfaces
+            skipMembers(in); // fields
+
+            var methodCount = in.readUnsignedShort();
+            var debugBytes = 0L;
+            for (var i = 0; i < methodCount; i++) {
+                in.skipNBytes(6); // access flags, name, descriptor
+                var attributes = in.readUnsignedShort();
+                for (var j = 0; j < attributes; j++) {
+                    var name = utf8[in.readUnsignedShort()];
+                    var length = in.readInt();
+                    if ("Code".equals(name)) {
+                        in.skipNBytes(4); // max stack, max locals
+                        in.skipNBytes(in.readInt()); // code
+                        in.skipNBytes(in.readUnsignedShort() * 8L); // exception table
+                        var codeAttributes = in.readUnsignedShort();
+                        for (var k = 0; k < codeAttributes; k++) {
+                            var codeAttribute = utf8[in.readUnsignedShort()];
+                            var codeLength = in.readInt();
+                            if (DEBUG_ATTRIBUTES.contains(codeAttribute)) {
+                                debugBytes += 6 + codeLength;
+                            }
+                            in.skipNBytes(codeLength);
+                        }
+                    } else {
+                        in.skipNBytes(length);
+                    }
+                }
+            }
+
+            String sourceFile = null;
+            var count = in.readUnsignedShort();
+            for (var i = 0; i < count; i++) {
+                var name = utf8[in.readUnsignedShort()];
+                var length = in.readInt();
+                if ("SourceFile".equals(name)) {
+                    sourceFile = utf8[in.readUnsignedShort()];
+                    in.skipNBytes(length - 2);
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+
+            return new KawaClassFile(sourceFile, bytes.length, utf8.length, methodCount, debugBytes);
+        }
+    }
+
+    /**
+     * Removes the {@link #DEBUG_ATTRIBUTES debug information} from the code of the methods of a class.
+     * <p>
+     * The line numbers and local variable names are only used by debuggers and in stack traces, the class behaves the
+     * same without them. Their names are left in the constant pool, since removing them would renumber its entries.
+     *
+     * @param bytes the bytes of the class file
+     * @return the bytes of the class file without debug information, or the same bytes if it had none
+     * @throws IOException if the bytes are not a class file
+     */
+    static byte[] stripDebugInfo(byte[] bytes) throws IOException {
+        var input = new ByteArrayInputStream(bytes);
+        var out = new ByteArrayOutputStream(bytes.length);
+        var stripped = false;
+        try (var in = new DataInputStream(input); var data = new DataOutputStream(out)) {
+            if (bytes.length < 4 || in.readInt() != MAGIC) {
+                throw new IOException("Not a class file.");
+            }
+            in.skipNBytes(4); // minor and major versions
+            var utf8 = readConstantPool(in);
+            in.skipNBytes(6); // access flags, this class, super class
+            in.skipNBytes(in.readUnsignedShort() * 2); // interfaces
+            skipMembers(in); // fields
+
+            // everything up to the methods is copied as is
+            var position = bytes.length - input.available();
+            out.write(bytes, 0, position);
+            var methodCount = in.readUnsignedShort();
+            data.writeShort(methodCount);
+            for (var i = 0; i < methodCount; i++) {
+                data.write(in.readNBytes(6)); // access flags, name, descriptor
+                var attributes = in.readUnsignedShort();
+                data.writeShort(attributes);
+                for (var j = 0; j < attributes; j++) {
+                    var nameIndex = in.readUnsignedShort();
+                    var length = in.readInt();
+                    data.writeShort(nameIndex);
+                    if (!"Code".equals(utf8[nameIndex])) {
+                        data.writeInt(length);
+                        data.write(in.readNBytes(length));
+                        continue;
+                    }
+
+                    var code = new ByteArrayOutputStream(length);
+                    var codeData = new DataOutputStream(code);
+                    codeData.write(in.readNBytes(4)); // max stack, max locals
+                    var codeLength = in.readInt();
+                    codeData.writeInt(codeLength);
+                    codeData.write(in.readNBytes(codeLength));
+                    var exceptions = in.readUnsignedShort();
+                    codeData.writeShort(exceptions);
+                    codeData.write(in.readNBytes(exceptions * 8));
+
+                    var codeAttributes = in.readUnsignedShort();
+                    var kept = new ByteArrayOutputStream();
+                    var keptData = new DataOutputStream(kept);
+                    var keptCount = 0;
+                    for (var k = 0; k < codeAttributes; k++) {
+                        var codeNameIndex = in.readUnsignedShort();
+                        var attribute = in.readNBytes(in.readInt());
+                        if (DEBUG_ATTRIBUTES.contains(utf8[codeNameIndex])) {
+                            stripped = true;
+                        } else {
+                            keptData.writeShort(codeNameIndex);
+                            keptData.writeInt(attribute.length);
+                            keptData.write(attribute);
+                            keptCount++;
+                        }
+                    }
+                    codeData.writeShort(keptCount);
+                    kept.writeTo(code);
+
+                    data.writeInt(code.size());
+                    code.writeTo(data);
+                }
+            }
+
+            // the attributes of the class, including its source file, are copied as is
+            data.write(in.readAllBytes());
+        }
+        return stripped ? out.toByteArray() : bytes;
+    }
+
+    // Reads the constant pool, only keeping the UTF-8 entries
+    private static String[] readConstantPool(DataInputStream in) throws IOException {
+        var count = in.readUnsignedShort();
+        var utf8 = new String[count];
+        for (var i = 1; i < count; i++) {
+            var tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8[i] = in.readUTF();
+                case 7, 8, 16, 19, 20 -> in.skipNBytes(2);
+                case 15 -> in.skipNBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipNBytes(4);
+                case 5, 6 -> {
+                    in.skipNBytes(8);
+                    i++;
+                }
+                default -> throw new IOException("Unknown constant pool tag: " + tag);
+            }
+        }
+        return utf8;
+    }
+
+    // Skips the fields or methods table
+    private static void skipMembers(DataInputStream in) throws IOException {
+        var count = in.readUnsignedShort();
+        for (var i = 0; i < count; i++) {
+            in.skipNBytes(6); // access flags, name, descriptor
+            var attributes = in.readUnsignedShort();
+            for (var j = 0; j < attributes; j++) {
+                in.skipNBytes(2);
+                in.skipNBytes(in.readInt());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries of the constant pool.
+     *
+     * @return the constant pool count, as declared by the class file
+     */
+    int constantPoolCount() {
+        return constantPoolCount_;
+    }
+
+    /**
+     * Returns the size of the {@link #DEBUG_ATTRIBUTES debug information} of the methods.
+     *
+     * @return the size of the debug attributes, in bytes
+     */
+    long debugBytes() {
+        return debugBytes_;
+    }
+
+    /**
+     * Returns the number of methods.
+     *
+     * @return the method count
+     */
+    int methodCount() {
+        return methodCount_;
+    }
+
+    /**
+     * Returns the size of the class file.
+     *
+     * @return the size, in bytes
+     */
+    long size() {
+        return size_;
+    }
+
+    /**
+     * Returns the name of the source file the class was compiled from, without any directory.
+     *
+     * @return the source file name, or {@code null} if the class does not record it
+     */
+    String sourceFile() {
+        if (sourceFile_ == null) {
+            return null;
+        }
+        var slash = Math.max(sourceFile_.lastIndexOf('/'), sourceFile_.lastIndexOf('\\'));
+        return sourceFile_.substring(slash + 1);
+    }
+}
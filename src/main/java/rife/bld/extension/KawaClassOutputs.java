@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Moves the class files compiled to a staging directory to their build directory.
+ * <p>
+ * A class file only replaces the one in the build directory when their bytes differ, so that the modification time of
+ * unchanged classes is preserved and the steps that depend on them are not redone. The class files that are no longer
+ * compiled from any source are pruned from the build directory.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaClassOutputs {
+    private KawaClassOutputs() {
+        // no-op
+    }
+
+    /**
+     * Deletes a directory and all its content, if it exists.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory could not be deleted
+     */
+    static void delete(File directory) throws IOException {
+        var root = directory.toPath();
+        if (Files.exists(root)) {
+            try (var paths = Files.walk(root)) {
+                for (var path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes class files from a build directory, along with the package directories they leave empty.
+     *
+     * @param destination the build directory
+     * @param outputs     the class files, relative to the build directory
+     * @return the class files that were deleted
+     * @throws IOException if a class file could not be deleted
+     */
+    static List<String> prune(File destination, Collection<String> outputs) throws IOException {
+        var root = destination.toPath();
+        var pruned = new ArrayList<String>();
+        for (var output : outputs) {
+            var path = root.resolve(output);
+            if (Files.deleteIfExists(path)) {
+                pruned.add(output);
+                var parent = path.getParent();
+                while (!parent.equals(root) && isEmpty(parent)) {
+                    Files.delete(parent);
+                    parent = parent.getParent();
+                }
+            }
+        }
+        Collections.sort(pruned);
+        return pruned;
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (var entries = Files.list(directory)) {
+            return entries.findAny().isEmpty();
+        }
+    }
+
+    /**
+     * Moves all the files of a staging directory to a build directory, only replacing the files whose bytes differ.
+     * <p>
+     * The staging directory is deleted afterward.
+     *
+     * @param staging     the staging directory
+     * @param destination the build directory
+     * @return the files that were added or replaced, relative to the build directory
+     * @throws IOException if a file could not be compared or moved
+     */
+    static List<String> publish(File staging, File destination) throws IOException {
+        var root = staging.toPath();
+        var changed = new ArrayList<String>();
+        if (Files.isDirectory(root)) {
+            try (var paths = Files.walk(root)) {
+                for (var path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                    var output = root.relativize(path).toString().replace(File.separatorChar, '/');
+                    var target = destination.toPath().resolve(output);
+                    if (Files.isRegularFile(target) && Files.mismatch(path, target) == -1L) {
+                        continue;
+                    }
+                    Files.createDirectories(target.getParent());
+                    Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+                    changed.add(output);
+                }
+            }
+            delete(staging);
+        }
+        Collections.sort(changed);
+        return changed;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Measures the class files compiled from each Kawa module, and writes them as JSON and CSV.
+ * <p>
+ * The number and size of the classes of a module, the entries of their constant pools and their methods give an idea
+ * of how much the module costs to load, e.g. at the startup of an application.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaClassReport {
+    /**
+     * The share of the constant pool limit of the JVM above which a class is flagged.
+     */
+    static final double CONSTANT_POOL_WARNING = 0.75;
+    /**
+     * The maximum number of entries of the constant pool of a class.
+     */
+    static final int MAX_CONSTANT_POOL = 65_535;
+    private static final String CSV_HEADER =
+            "source,module,class_count,class_bytes,constant_pool_entries,max_constant_pool_entries,method_count,"
+                    + "debug_bytes";
+
+    private KawaClassReport() {
+        // no-op
+    }
+
+    /**
+     * Measures the class files compiled from a module.
+     *
+     * @param source      the source file of the module
+     * @param module      the module name
+     * @param destination the build directory
+     * @param outputs     the class files compiled from the source, relative to the build directory
+     * @return the measures of the classes
+     * @throws IOException if a class file could not be read
+     */
+    static ModuleClasses measure(File source, String module, File destination, Collection<String> outputs)
+            throws IOException {
+        var classBytes = 0L;
+        var constantPool = 0L;
+        var maxConstantPool = 0;
+        var methods = 0L;
+        var debugBytes = 0L;
+        for (var output : outputs) {
+            var classFile = KawaClassFile.read(new File(destination, output).toPath());
+            classBytes += classFile.size();
+            constantPool += classFile.constantPoolCount();
+            maxConstantPool = Math.max(maxConstantPool, classFile.constantPoolCount());
+            methods += classFile.methodCount();
+            debugBytes += classFile.debugBytes();
+        }
+        return new ModuleClasses(source, module, outputs.size(), classBytes, constantPool, maxConstantPool, methods,
+                debugBytes);
+    }
+
+    /**
+     * Picks the modules with the largest classes.
+     *
+     * @param modules the measures of the modules
+     * @param limit   the maximum number of modules to pick
+     * @return the modules, largest first
+     */
+    static List<ModuleClasses> largest(Collection<ModuleClasses> modules, int limit) {
+        return modules.stream()
+                .sorted(Comparator.comparingLong(ModuleClasses::classBytes).reversed()
+                        .thenComparing(ModuleClasses::module))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Renders the measures as CSV, one line per module.
+     *
+     * @param modules the measures of the modules
+     * @return the CSV lines, including the header
+     */
+    static List<String> toCsv(List<ModuleClasses> modules) {
+        var lines = new ArrayList<String>();
+        lines.add(CSV_HEADER);
+        for (var module : modules) {
+            lines.add(String.join(",", KawaCompileReport.csv(module.source().getPath()),
+                    KawaCompileReport.csv(String.valueOf(module.module())), String.valueOf(module.classCount()),
+                    String.valueOf(module.classBytes()), String.valueOf(module.constantPoolEntries()),
+                    String.valueOf(module.maxConstantPoolEntries()), String.valueOf(module.methodCount()),
+                    String.valueOf(module.debugBytes())));
+        }
+        return lines;
+    }
+
+    /**
+     * Renders the measures as a JSON array, one object per module.
+     *
+     * @param modules the measures of the modules
+     * @return the JSON array
+     */
+    static String toJson(List<ModuleClasses> modules) {
+        var json = new StringBuilder("[");
+        for (var i = 0; i < modules.size(); i++) {
+            var module = modules.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("  {\"source\": ").append(KawaDependencyGraph.json(module.source().getPath()))
+                    .append(", \"module\": ").append(KawaDependencyGraph.json(String.valueOf(module.module())))
+                    .append(", \"classCount\": ").append(module.classCount())
+                    .append(", \"classBytes\": ").append(module.classBytes())
+                    .append(", \"constantPoolEntries\": ").append(module.constantPoolEntries())
+                    .append(", \"maxConstantPoolEntries\": ").append(module.maxConstantPoolEntries())
+                    .append(", \"methodCount\": ").append(module.methodCount())
+                    .append(", \"debugBytes\": ").append(module.debugBytes())
+                    .append('}');
+        }
+        return json.append(modules.isEmpty() ? "]" : "\n]").append('\n').toString();
+    }
+
+    /**
+     * Writes the measures to {@code <report>.json} and {@code <report>.csv}.
+     *
+     * @param modules the measures of the modules
+     * @param report  the report file, without extension
+     * @throws IOException if the report could not be written
+     */
+    static void write(List<ModuleClasses> modules, File report) throws IOException {
+        var parent = report.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        Files.writeString(new File(parent, report.getName() + ".json").toPath(), toJson(modules),
+                StandardCharsets.UTF_8);
+        Files.write(new File(parent, report.getName() + ".csv").toPath(), toCsv(modules), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The measures of the classes compiled from a module.
+     *
+     * @param source                 the source file
+     * @param module                 the declared or implicit module name
+     * @param classCount             the number of class files
+     * @param classBytes             the total size of the class files, in bytes
+     * @param constantPoolEntries    the total number of constant pool entries
+     * @param maxConstantPoolEntries the number of constant pool entries of the largest class
+     * @param methodCount            the total number of methods
+     * @param debugBytes             the total size of the line number and local variable tables, in bytes
+     */
+    record ModuleClasses(
+        File source,
+        String module,
+        int classCount,
+        long classBytes,
+        long constantPoolEntries,
+        int maxConstantPoolEntries,
+        long methodCount,
+        long debugBytes
+    ) {
+        /**
+         * Determines whether a class of the module comes close to the constant pool limit of the JVM, past which the
+         * module would no longer compile.
+         *
+         * @return {@code true} if the largest constant pool is above {@value #CONSTANT_POOL_WARNING} of the limit
+         */
+        boolean isNearConstantPoolLimit() {
+            return maxConstantPoolEntries > MAX_CONSTANT_POOL * CONSTANT_POOL_WARNING;
+        }
+    }
+}
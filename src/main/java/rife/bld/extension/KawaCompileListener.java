@@ -0,0 +1,33 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+/**
+ * Listener notified of the compilation of each Kawa module.
+ *
+ * @author Anthony S.
+ * @see CompileKawaOperation#compileListener(KawaCompileListener)
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface KawaCompileListener {
+    /**
+     * Called after a module was compiled.
+     *
+     * @param stats the statistics of the compilation
+     */
+    void moduleCompiled(KawaModuleStats stats);
+}
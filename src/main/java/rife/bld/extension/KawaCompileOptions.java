@@ -0,0 +1,210 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Options of the Kawa compiler.
+ * <p>
+ * A new instance has the defaults of the Kawa compiler. The {@link #dev() dev} and {@link #release() release} presets
+ * respectively favor the compile time and the speed of the compiled code.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public final class KawaCompileOptions {
+    private boolean fullTailCalls_;
+    private boolean inline_ = true;
+    private boolean moduleStatic_;
+    private String target_;
+    private boolean warnAsError_;
+
+    /**
+     * Creates new options, with the defaults of the Kawa compiler.
+     */
+    public KawaCompileOptions() {
+        super();
+    }
+
+    /**
+     * Creates the options of development builds, compiling as fast as possible.
+     * <p>
+     * Procedure calls are not inlined, which saves the compiler the corresponding analysis, and tail calls are only
+     * optimized in loops.
+     *
+     * @return the options
+     */
+    public static KawaCompileOptions dev() {
+        return new KawaCompileOptions().inline(false);
+    }
+
+    /**
+     * Creates the options of release builds, compiling the fastest code.
+     * <p>
+     * Known procedures are inlined, module definitions are compiled to static fields and methods, tail calls are only
+     * optimized in loops, and warnings fail the build.
+     *
+     * @return the options
+     */
+    public static KawaCompileOptions release() {
+        return new KawaCompileOptions().inline(true).moduleStatic(true).warnAsError(true);
+    }
+
+    /**
+     * Converts the options to the arguments of the Kawa compiler.
+     *
+     * @return the arguments of the options that differ from the defaults of the Kawa compiler
+     */
+    public List<String> args() {
+        var args = new ArrayList<String>();
+        if (fullTailCalls_) {
+            args.add("--full-tailcalls");
+        }
+        if (!inline_) {
+            args.add("--no-inline");
+        }
+        if (moduleStatic_) {
+            args.add("--module-static");
+        }
+        if (warnAsError_) {
+            args.add("--warn-as-error");
+        }
+        if (target_ != null) {
+            args.add("--target");
+            args.add(target_);
+        }
+        return args;
+    }
+
+    /**
+     * Provides whether all tail calls are optimized, and not only those in loops.
+     * <p>
+     * Full tail calls are required by the Scheme standard, but make every procedure call slower.
+     *
+     * @param fullTailCalls {@code true} to optimize all tail calls, {@code false} by default
+     * @return these options
+     */
+    public KawaCompileOptions fullTailCalls(boolean fullTailCalls) {
+        fullTailCalls_ = fullTailCalls;
+        return this;
+    }
+
+    /**
+     * Provides whether known procedures are inlined.
+     *
+     * @param inline {@code true} to inline procedures, the default
+     * @return these options
+     */
+    public KawaCompileOptions inline(boolean inline) {
+        inline_ = inline;
+        return this;
+    }
+
+    /**
+     * Retrieves whether all tail calls are optimized.
+     *
+     * @return {@code true} if all tail calls are optimized
+     */
+    public boolean isFullTailCalls() {
+        return fullTailCalls_;
+    }
+
+    /**
+     * Retrieves whether known procedures are inlined.
+     *
+     * @return {@code true} if procedures are inlined
+     */
+    public boolean isInline() {
+        return inline_;
+    }
+
+    /**
+     * Retrieves whether module definitions are static.
+     *
+     * @return {@code true} if module definitions are static
+     */
+    public boolean isModuleStatic() {
+        return moduleStatic_;
+    }
+
+    /**
+     * Retrieves whether warnings are reported as errors.
+     *
+     * @return {@code true} if warnings are errors
+     */
+    public boolean isWarnAsError() {
+        return warnAsError_;
+    }
+
+    /**
+     * Provides whether module definitions are compiled to static fields and methods, rather than to the members of a
+     * module instance.
+     * <p>
+     * Static definitions are faster to access, but a module can then only be instantiated once.
+     *
+     * @param moduleStatic {@code true} for static definitions, {@code false} by default
+     * @return these options
+     */
+    public KawaCompileOptions moduleStatic(boolean moduleStatic) {
+        moduleStatic_ = moduleStatic;
+        return this;
+    }
+
+    /**
+     * Provides the version of the Java bytecode to generate.
+     *
+     * @param target the Java version, e.g. {@code 1.8} or {@code 17}, or {@code null} for the default of the Kawa
+     *               compiler
+     * @return these options
+     */
+    public KawaCompileOptions target(String target) {
+        target_ = target;
+        return this;
+    }
+
+    /**
+     * Retrieves the version of the Java bytecode to generate.
+     *
+     * @return the Java version, or {@code null} for the default of the Kawa compiler
+     */
+    public String target() {
+        return target_;
+    }
+
+    /**
+     * Returns the arguments of the Kawa compiler, separated by spaces.
+     *
+     * @return the arguments
+     */
+    @Override
+    public String toString() {
+        return String.join(" ", args());
+    }
+
+    /**
+     * Provides whether warnings are reported as errors, failing the compilation.
+     *
+     * @param warnAsError {@code true} to report warnings as errors, {@code false} by default
+     * @return these options
+     */
+    public KawaCompileOptions warnAsError(boolean warnAsError) {
+        warnAsError_ = warnAsError;
+        return this;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the statistics of the compiled Kawa modules as JSON and CSV.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaCompileReport {
+    private static final String CSV_HEADER =
+            "source,module,wall_nanos,cpu_nanos,allocated_bytes,class_count,class_bytes";
+
+    private KawaCompileReport() {
+        // no-op
+    }
+
+    // Quotes a CSV field if needed
+    static String csv(String value) {
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    // Splits a CSV line into its fields, unquoting them
+    private static List<String> fields(String line) {
+        var fields = new ArrayList<String>();
+        var field = new StringBuilder();
+        var quoted = false;
+        for (var i = 0; i < line.length(); i++) {
+            var c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Reads the compile times of the modules from a CSV report.
+     *
+     * @param csv the CSV report
+     * @return the wall-clock compile time of each module, in nanoseconds, by module name
+     * @throws IOException if the report could not be read, or is not a compile report
+     */
+    static Map<String, Long> wallTimes(File csv) throws IOException {
+        var lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !CSV_HEADER.equals(lines.get(0))) {
+            throw new IOException("Not a Kawa compile report: " + csv.getPath());
+        }
+        var times = new HashMap<String, Long>();
+        for (var line : lines.subList(1, lines.size())) {
+            var fields = fields(line);
+            if (fields.size() == 7) {
+                try {
+                    times.merge(fields.get(1), Long.parseLong(fields.get(2)), Long::sum);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid line in Kawa compile report " + csv.getPath() + ": " + line, e);
+                }
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Renders the statistics as CSV, one line per module.
+     *
+     * @param stats the statistics of the compiled modules
+     * @return the CSV lines, including the header
+     */
+    static List<String> toCsv(List<KawaModuleStats> stats) {
+        var lines = new ArrayList<String>();
+        lines.add(CSV_HEADER);
+        for (var module : stats) {
+            lines.add(String.join(",", csv(module.source().getPath()), csv(String.valueOf(module.module())),
+                    String.valueOf(module.wallNanos()), String.valueOf(module.cpuNanos()),
+                    String.valueOf(module.allocatedBytes()), String.valueOf(module.classCount()),
+                    String.valueOf(module.classBytes())));
+        }
+        return lines;
+    }
+
+    /**
+     * Renders the statistics as a JSON array, one object per module.
+     *
+     * @param stats the statistics of the compiled modules
+     * @return the JSON array
+     */
+    static String toJson(List<KawaModuleStats> stats) {
+        var json = new StringBuilder("[");
+        for (var i = 0; i < stats.size(); i++) {
+            var module = stats.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("  {\"source\": ").append(KawaDependencyGraph.json(module.source().getPath()))
+                    .append(", \"module\": ").append(KawaDependencyGraph.json(String.valueOf(module.module())))
+                    .append(", \"wallNanos\": ").append(module.wallNanos())
+                    .append(", \"cpuNanos\": ").append(module.cpuNanos())
+                    .append(", \"allocatedBytes\": ").append(module.allocatedBytes())
+                    .append(", \"classCount\": ").append(module.classCount())
+                    .append(", \"classBytes\": ").append(module.classBytes())
+                    .append('}');
+        }
+        return json.append(stats.isEmpty() ? "]" : "\n]").append('\n').toString();
+    }
+
+    /**
+     * Writes the statistics to {@code <report>.json} and {@code <report>.csv}.
+     *
+     * @param stats  the statistics of the compiled modules
+     * @param report the report file, without extension
+     * @throws IOException if the report could not be written
+     */
+    static void write(List<KawaModuleStats> stats, File report) throws IOException {
+        var parent = report.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        Files.writeString(new File(parent, report.getName() + ".json").toPath(), toJson(stats),
+                StandardCharsets.UTF_8);
+        Files.write(new File(parent, report.getName() + ".csv").toPath(), toCsv(stats), StandardCharsets.UTF_8);
+    }
+}
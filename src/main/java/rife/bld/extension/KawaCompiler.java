@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles Kawa sources to class files.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+interface KawaCompiler extends Closeable {
+    /**
+     * Compiles sources to a given destination.
+     *
+     * @param sources     the source files to compile
+     * @param destination the destination directory
+     * @throws IOException if an error occurs
+     */
+    void compile(List<File> sources, File destination) throws IOException;
+
+    /**
+     * Compiles sources to their own destination.
+     * <p>
+     * By default, the consecutive sources with the same destination are compiled together, in order.
+     *
+     * @param destinations the destination directory of each source file to compile, in compilation order
+     * @throws IOException if an error occurs
+     */
+    default void compile(Map<File, File> destinations) throws IOException {
+        var sources = new ArrayList<File>();
+        File destination = null;
+        for (var entry : destinations.entrySet()) {
+            if (destination != null && !destination.equals(entry.getValue())) {
+                compile(sources, destination);
+                sources = new ArrayList<>();
+            }
+            sources.add(entry.getKey());
+            destination = entry.getValue();
+        }
+        if (!sources.isEmpty()) {
+            compile(sources, destination);
+        }
+    }
+
+    /**
+     * Releases the compiler state.
+     *
+     * @throws IOException if an error occurs
+     */
+    @Override
+    default void close() throws IOException {
+        // nothing to release by default
+    }
+}
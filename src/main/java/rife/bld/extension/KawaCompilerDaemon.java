@@ -0,0 +1,307 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived Kawa compiler process.
+ * <p>
+ * The daemon listens on a Unix domain socket and keeps a Kawa compiler loaded for each destination directory and
+ * classpath, so that successive builds reuse the loaded classes, the modules known to the compiler and the code
+ * already optimized by the JIT. It stops once no request was received for the idle timeout.
+ * <p>
+ * A compiler is replaced when a jar of its classpath was modified. The modules it loaded from the directories of its
+ * classpath, such as the destination directory, are reloaded on the {@value #RELOAD} command that starts each build,
+ * once one of their class files was modified, e.g. by the previous build, so that dependents are never compiled
+ * against stale modules while the Kawa runtime stays loaded. The class files are not checked by each compile request.
+ * <p>
+ * A request is made of the {@code compile} command, the destination directory, the number of additional classpath
+ * entries and each entry, the number of compile options and each option, the number of sources and the path of each
+ * source, each on its own line. A reload request is only made of the {@code reload} command. The response is a single
+ * {@code ok} line, or an {@code error} line followed by a tab and the error message.
+ * <p>
+ * Started with the {@value #STDIO} option instead of a socket, the same requests are served on the standard input and
+ * output of the process, until the standard input is closed. This is how the forked compiler workers are run.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public final class KawaCompilerDaemon {
+    /**
+     * The compile command.
+     */
+    static final String COMPILE = "compile";
+    /**
+     * The response to a failed request.
+     */
+    static final String ERROR = "error";
+    /**
+     * The response to a successful request.
+     */
+    static final String OK = "ok";
+    /**
+     * The command that prepares the compilers for a new build.
+     */
+    static final String RELOAD = "reload";
+    /**
+     * The option to serve requests on the standard input and output.
+     */
+    static final String STDIO = "--stdio";
+    private final Map<List<Object>, IsolatedKawaCompiler> compilers_ = new HashMap<>();
+
+    /**
+     * Starts the daemon.
+     *
+     * @param args the socket path and the idle timeout in milliseconds, or {@value #STDIO}
+     * @throws IOException if the daemon could not listen on the socket
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1 && STDIO.equals(args[0])) {
+            // keep the output of the compiler out of the responses
+            var out = System.out;
+            System.setOut(System.err);
+            new KawaCompilerDaemon().serve(System.in, out);
+            return;
+        }
+        if (args.length != 2) {
+            System.err.println("Usage: " + KawaCompilerDaemon.class.getName()
+                    + " <socket> <idle timeout ms> | " + STDIO);
+            System.exit(2);
+        }
+        new KawaCompilerDaemon().listen(Path.of(args[0]), Duration.ofMillis(Long.parseLong(args[1])));
+    }
+
+    // Makes an error message fit on a single line
+    static String singleLine(Throwable e) {
+        var message = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+        return message.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+    }
+
+    private void closeCompilers() {
+        for (var compiler : compilers_.values()) {
+            try {
+                compiler.close();
+            } catch (IOException ignored) {
+                // the process is exiting
+            }
+        }
+        compilers_.clear();
+    }
+
+    // Compiles with the compiler of the classpath and options, replacing it when its jars changed
+    private void compile(List<File> classpath, List<String> options, List<File> sources, File destination)
+            throws IOException {
+        var key = List.<Object>of(classpath, options);
+        var compiler = compilers_.get(key);
+        if (compiler != null && !compiler.isCurrent()) {
+            compilers_.remove(key);
+            compiler.close();
+            compiler = null;
+        }
+        if (compiler == null) {
+            compiler = new IsolatedKawaCompiler(classpath, options);
+            compilers_.put(key, compiler);
+        }
+        compiler.compile(sources, destination);
+    }
+
+    // Reads a count followed by that many files, each on its own line
+    private static List<File> readFiles(BufferedReader in) throws IOException {
+        return readLines(in).stream().map(File::new).toList();
+    }
+
+    // Reads a count followed by that many lines
+    private static List<String> readLines(BufferedReader in) throws IOException {
+        var count = Integer.parseInt(in.readLine());
+        var lines = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            lines.add(in.readLine());
+        }
+        return lines;
+    }
+
+    // Prepares the compilers for a new build, reloading the modules whose class files changed
+    private void reload() throws IOException {
+        for (var compiler : compilers_.values()) {
+            compiler.reload();
+        }
+    }
+
+    private static void writeFiles(BufferedWriter out, Collection<File> files) throws IOException {
+        writeLines(out, files.stream().map(File::getAbsolutePath).toList());
+    }
+
+    private static void writeLines(BufferedWriter out, Collection<String> lines) throws IOException {
+        out.write(String.valueOf(lines.size()));
+        out.newLine();
+        for (var line : lines) {
+            out.write(line);
+            out.newLine();
+        }
+    }
+
+    /**
+     * Writes a reload request, that starts a new build.
+     *
+     * @param out the request output
+     * @throws IOException if the request could not be written
+     */
+    static void writeReload(BufferedWriter out) throws IOException {
+        out.write(RELOAD);
+        out.newLine();
+        out.flush();
+    }
+
+    /**
+     * Writes a compile request.
+     *
+     * @param out         the request output
+     * @param sources     the source files to compile
+     * @param destination the destination directory
+     * @param classpath   the directories and jars the compiler can load modules from, besides the destination
+     * @param options     the arguments of the {@link KawaCompileOptions compile options}
+     * @throws IOException if the request could not be written
+     */
+    static void writeRequest(BufferedWriter out, List<File> sources, File destination, Collection<File> classpath,
+                             List<String> options) throws IOException {
+        out.write(COMPILE);
+        out.newLine();
+        out.write(destination.getAbsolutePath());
+        out.newLine();
+        writeFiles(out, classpath);
+        writeLines(out, options);
+        writeFiles(out, sources);
+        out.flush();
+    }
+
+    /**
+     * Listens for requests on a Unix domain socket, until no request was received for the idle timeout.
+     *
+     * @param socket      the socket path
+     * @param idleTimeout the idle timeout
+     * @throws IOException if the daemon could not listen on the socket
+     */
+    void listen(Path socket, Duration idleTimeout) throws IOException {
+        Files.deleteIfExists(socket);
+        var lastActive = new AtomicLong(System.nanoTime());
+        var busy = new AtomicBoolean();
+        var watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "kawa-daemon-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            // closing the channel stops the accept loop
+            watchdog.scheduleWithFixedDelay(() -> {
+                if (!busy.get() && System.nanoTime() - lastActive.get() > idleTimeout.toNanos()) {
+                    try {
+                        server.close();
+                    } catch (IOException ignored) {
+                        // the accept loop stops either way
+                    }
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+
+            while (true) {
+                try (var channel = server.accept()) {
+                    busy.set(true);
+                    serve(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+                } finally {
+                    busy.set(false);
+                    lastActive.set(System.nanoTime());
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // idle timeout
+        } finally {
+            watchdog.shutdownNow();
+            server.close();
+            closeCompilers();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /**
+     * Serves requests until the end of the input.
+     *
+     * @param input  the requests
+     * @param output the responses
+     * @throws IOException if a request could not be read or a response could not be written
+     */
+    void serve(InputStream input, OutputStream output) throws IOException {
+        var in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        var out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        String command;
+        while ((command = in.readLine()) != null) {
+            if (COMPILE.equals(command)) {
+                var destination = new File(in.readLine());
+                var classpath = new ArrayList<File>();
+                classpath.add(destination);
+                classpath.addAll(readFiles(in));
+                var options = readLines(in);
+                var sources = readFiles(in);
+
+                try {
+                    compile(classpath, options, sources, destination);
+                    out.write(OK);
+                } catch (IOException | RuntimeException e) {
+                    out.write(ERROR + '\t' + singleLine(e));
+                }
+            } else if (RELOAD.equals(command)) {
+                try {
+                    reload();
+                    out.write(OK);
+                } catch (IOException | RuntimeException e) {
+                    out.write(ERROR + '\t' + singleLine(e));
+                }
+            } else {
+                out.write(ERROR + "\tUnknown command: " + command);
+            }
+            out.newLine();
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph of Kawa sources.
+ * <p>
+ * The graph is built from the {@code module-name}, {@code define-library}, {@code import}, {@code require} and
+ * {@code include} forms of the sources. A source depends on another source when it imports or requires the module
+ * that source declares, or includes that source.
+ * Sources without a module declaration are known by their file name, and by their path relative to any of the source
+ * directories they are in. Dependencies on modules that are not part of the graph, such as {@code (scheme base)},
+ * are ignored.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public final class KawaDependencyGraph {
+    private final Map<File, Set<File>> dependencies_ = new LinkedHashMap<>();
+    private final Map<File, Set<File>> dependents_ = new LinkedHashMap<>();
+    private final Map<File, String> moduleNames_ = new LinkedHashMap<>();
+
+    /**
+     * Creates a new dependency graph.
+     *
+     * @param headers     the headers of the sources
+     * @param directories the source directories
+     */
+    KawaDependencyGraph(Map<File, KawaModuleHeader> headers, Collection<File> directories) {
+        var modules = new HashMap<String, File>();
+        var implicit = new HashMap<String, File>();
+        headers.forEach((source, header) -> {
+            var file = source.getAbsoluteFile();
+            dependencies_.put(file, new LinkedHashSet<>());
+            dependents_.put(file, new LinkedHashSet<>());
+            moduleNames_.put(file, header.name() == null ? implicitName(file, directories) : header.name());
+            if (header.name() != null) {
+                modules.putIfAbsent(header.name(), file);
+            }
+            modules.putIfAbsent(KawaModuleHeader.FILE_PREFIX + file.toPath().normalize(), file);
+            implicit.putIfAbsent(baseName(file), file);
+            implicit.putIfAbsent(implicitName(file, directories), file);
+        });
+        implicit.forEach(modules::putIfAbsent);
+
+        headers.forEach((source, header) -> {
+            var file = source.getAbsoluteFile();
+            for (var name : header.imports()) {
+                var dependency = modules.get(name);
+                if (dependency != null && !dependency.equals(file)) {
+                    dependencies_.get(file).add(dependency);
+                    dependents_.get(dependency).add(file);
+                }
+            }
+        });
+    }
+
+    private static String baseName(File file) {
+        var name = file.getName();
+        var dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    // Returns the name of a source relative to the source directory it is in, e.g. edu.example.util
+    private static String implicitName(File file, Collection<File> directories) {
+        var path = file.toPath().normalize();
+        for (var directory : directories) {
+            var root = directory.getAbsoluteFile().toPath().normalize();
+            if (path.startsWith(root) && !path.equals(root)) {
+                var relative = root.relativize(path).toString().replace(File.separatorChar, '.');
+                return relative.substring(0, relative.lastIndexOf('.'));
+            }
+        }
+        return baseName(file);
+    }
+
+    /**
+     * Quotes a value as a JSON string.
+     *
+     * @param value the value
+     * @return the JSON string
+     */
+    static String json(String value) {
+        var json = new StringBuilder("\"");
+        for (var c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Computes the sources affected by changes to the given sources.
+     * <p>
+     * These are the changed sources themselves, and all the sources that depend on them, directly or transitively.
+     *
+     * @param changed the changed sources
+     * @return the affected sources, in graph order
+     */
+    public Set<File> affected(Collection<File> changed) {
+        var affected = new LinkedHashSet<File>();
+        var queue = new ArrayDeque<File>();
+        changed.forEach(source -> queue.add(source.getAbsoluteFile()));
+        while (!queue.isEmpty()) {
+            var source = queue.poll();
+            if (affected.add(source)) {
+                queue.addAll(dependents(source));
+            }
+        }
+
+        var ordered = new LinkedHashSet<File>();
+        for (var source : sources()) {
+            if (affected.contains(source)) {
+                ordered.add(source);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Retrieves the sources a source directly depends on.
+     *
+     * @param source the source
+     * @return the dependencies
+     */
+    public Set<File> dependencies(File source) {
+        return Collections.unmodifiableSet(dependencies_.getOrDefault(source.getAbsoluteFile(), Set.of()));
+    }
+
+    /**
+     * Retrieves the sources that directly depend on a source.
+     *
+     * @param source the source
+     * @return the dependents
+     */
+    public Set<File> dependents(File source) {
+        return Collections.unmodifiableSet(dependents_.getOrDefault(source.getAbsoluteFile(), Set.of()));
+    }
+
+    /**
+     * Retrieves the module name of a source.
+     *
+     * @param source the source
+     * @return the declared or implicit module name, or {@code null} if the source is not part of the graph
+     */
+    public String moduleName(File source) {
+        return moduleNames_.get(source.getAbsoluteFile());
+    }
+
+    /**
+     * Retrieves the sources in the graph.
+     *
+     * @return the absolute source files
+     */
+    public Set<File> sources() {
+        return Collections.unmodifiableSet(dependencies_.keySet());
+    }
+
+    /**
+     * Groups sources into waves that can be compiled in order, the sources of each wave only depending on sources of
+     * earlier waves.
+     * <p>
+     * Only the dependencies between the given sources are considered. Sources that are part of a dependency cycle
+     * cannot be ordered, and are not part of any wave.
+     *
+     * @param sources the sources to compile
+     * @return the waves, each in graph order
+     */
+    public List<Set<File>> waves(Collection<File> sources) {
+        var selected = new HashSet<File>();
+        sources.forEach(source -> selected.add(source.getAbsoluteFile()));
+
+        // number of dependencies of each selected source that are not compiled yet
+        var pending = new LinkedHashMap<File, Integer>();
+        for (var source : sources()) {
+            if (selected.contains(source)) {
+                pending.put(source, (int) dependencies_.get(source).stream().filter(selected::contains).count());
+            }
+        }
+
+        var waves = new ArrayList<Set<File>>();
+        var wave = new LinkedHashSet<File>();
+        for (var entry : pending.entrySet()) {
+            if (entry.getValue() == 0) {
+                wave.add(entry.getKey());
+            }
+        }
+        while (!wave.isEmpty()) {
+            waves.add(wave);
+            var next = new LinkedHashSet<File>();
+            for (var source : wave) {
+                for (var dependent : dependents_.get(source)) {
+                    if (pending.containsKey(dependent) && pending.merge(dependent, -1, Integer::sum) == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            wave = new LinkedHashSet<>();
+            for (var source : sources()) {
+                if (next.contains(source)) {
+                    wave.add(source);
+                }
+            }
+        }
+        return waves;
+    }
+
+    /**
+     * Renders the graph in the Graphviz DOT format, with an edge from each module to the modules it depends on.
+     *
+     * @return the DOT graph
+     */
+    public String toDot() {
+        var dot = new StringBuilder("digraph kawa {\n");
+        dependencies_.forEach((source, dependencies) -> {
+            dot.append("    ").append(json(moduleName(source))).append(";\n");
+            for (var dependency : dependencies) {
+                dot.append("    ").append(json(moduleName(source))).append(" -> ")
+                        .append(json(moduleName(dependency))).append(";\n");
+            }
+        });
+        return dot.append("}\n").toString();
+    }
+
+    /**
+     * Renders the graph as JSON, an array with the source, module name and dependencies of each module.
+     *
+     * @return the JSON graph
+     */
+    public String toJson() {
+        var json = new StringBuilder("[");
+        var first = true;
+        for (var entry : dependencies_.entrySet()) {
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("  {\"source\": ").append(json(entry.getKey().getPath()))
+                    .append(", \"module\": ").append(json(moduleName(entry.getKey())))
+                    .append(", \"dependencies\": [");
+            var dependencies = List.copyOf(entry.getValue());
+            for (var i = 0; i < dependencies.size(); i++) {
+                json.append(i == 0 ? "" : ", ").append(json(moduleName(dependencies.get(i))));
+            }
+            json.append("]}");
+        }
+        return json.append(first ? "]" : "\n]").append('\n').toString();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Lightweight reader for the structure of Scheme source code.
+ * <p>
+ * Lists (and vectors) are read as {@link List lists}, string literals as {@link StringLiteral} and every other datum
+ * as a {@link String} holding its text. Quotation prefixes are expanded to their long form, e.g. {@code 'x} is read as
+ * {@code (quote x)}. Nothing is evaluated, so this is only suitable to find the forms declaring modules and their
+ * dependencies.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaForms {
+    private static final String DISCARD = "#;";
+    private final String text_;
+    private int line_ = 1;
+    private int pos_;
+
+    private KawaForms(String text) {
+        text_ = text;
+    }
+
+    /**
+     * Reads all the top-level forms of a Scheme source.
+     *
+     * @param text the source code
+     * @return the top-level forms
+     * @throws IllegalArgumentException if the parentheses are not balanced or a literal is not terminated
+     */
+    static List<Object> read(String text) {
+        return new KawaForms(text).readAll();
+    }
+
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '(' || c == ')' || c == '[' || c == ']' || c == '"' || c == ';';
+    }
+
+    // Appends a datum to the innermost open list, handling pending prefixes
+    private static void add(Deque<List<Object>> lists, Deque<Object> prefixes, List<Object> top, Object datum) {
+        var container = lists.isEmpty() ? top : lists.peek();
+        var value = datum;
+        while (!prefixes.isEmpty() && prefixes.peek() == container) {
+            prefixes.pop();
+            var prefix = (String) prefixes.pop();
+            if (DISCARD.equals(prefix)) {
+                return;
+            }
+            value = List.of(prefix, value);
+        }
+        container.add(value);
+    }
+
+    private List<Object> readAll() {
+        var top = new ArrayList<Object>();
+        var lists = new ArrayDeque<List<Object>>();
+        var starts = new ArrayDeque<Integer>();
+        // pairs of (prefix, enclosing list) pushed in reverse order
+        var prefixes = new ArrayDeque<Object>();
+
+        while (skipAtmosphere()) {
+            var c = text_.charAt(pos_);
+            if (c == '(' || c == '[') {
+                pos_++;
+                lists.push(new ArrayList<>());
+                starts.push(line_);
+            } else if (text_.startsWith("#(", pos_) || text_.startsWith("#u8(", pos_)) {
+                pos_ = text_.indexOf('(', pos_) + 1;
+                lists.push(new ArrayList<>());
+                starts.push(line_);
+            } else if (c == ')' || c == ']') {
+                if (lists.isEmpty()) {
+                    throw error("Unexpected '" + c + "'");
+                }
+                pos_++;
+                starts.pop();
+                var list = lists.pop();
+                add(lists, prefixes, top, list);
+            } else if (c == '\'' || c == '`' || c == ',' || text_.startsWith(DISCARD, pos_)) {
+                String prefix;
+                if (c == '\'') {
+                    prefix = "quote";
+                } else if (c == '`') {
+                    prefix = "quasiquote";
+                } else if (c == ',') {
+                    prefix = text_.startsWith(",@", pos_) ? "unquote-splicing" : "unquote";
+                } else {
+                    prefix = DISCARD;
+                }
+                pos_ += prefix.equals("unquote-splicing") || prefix.equals(DISCARD) ? 2 : 1;
+                prefixes.push(prefix);
+                prefixes.push(lists.isEmpty() ? top : lists.peek());
+            } else if (c == '"') {
+                add(lists, prefixes, top, new StringLiteral(readString()));
+            } else {
+                add(lists, prefixes, top, readAtom());
+            }
+        }
+
+        if (!lists.isEmpty()) {
+            throw new IllegalArgumentException("Unbalanced parentheses, list opened on line " + starts.peek());
+        }
+        return top;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " on line " + line_);
+    }
+
+    private String readAtom() {
+        var start = pos_;
+        if (text_.startsWith("#\\", pos_)) {
+            // the first character of a character literal may be a delimiter
+            pos_ = Math.min(pos_ + 3, text_.length());
+        }
+        while (pos_ < text_.length()) {
+            var c = text_.charAt(pos_);
+            if (c == '|') {
+                var end = text_.indexOf('|', pos_ + 1);
+                if (end < 0) {
+                    throw error("Unterminated symbol");
+                }
+                countLines(pos_, end);
+                pos_ = end + 1;
+            } else if (isDelimiter(c)) {
+                break;
+            } else {
+                pos_++;
+            }
+        }
+        return text_.substring(start, pos_);
+    }
+
+    private String readString() {
+        var value = new StringBuilder();
+        pos_++;
+        while (pos_ < text_.length()) {
+            var c = text_.charAt(pos_++);
+            if (c == '"') {
+                return value.toString();
+            } else if (c == '\\' && pos_ < text_.length()) {
+                var escaped = text_.charAt(pos_++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 't' -> value.append('\t');
+                    case '\n' -> line_++;
+                    default -> value.append(escaped);
+                }
+            } else {
+                if (c == '\n') {
+                    line_++;
+                }
+                value.append(c);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void countLines(int from, int to) {
+        for (var i = from; i < to; i++) {
+            if (text_.charAt(i) == '\n') {
+                line_++;
+            }
+        }
+    }
+
+    // Skips whitespace and comments, returns false at the end of the text
+    private boolean skipAtmosphere() {
+        while (pos_ < text_.length()) {
+            var c = text_.charAt(pos_);
+            if (c == '\n') {
+                line_++;
+                pos_++;
+            } else if (Character.isWhitespace(c)) {
+                pos_++;
+            } else if (c == ';') {
+                var end = text_.indexOf('\n', pos_);
+                pos_ = end < 0 ? text_.length() : end;
+            } else if (text_.startsWith("#|", pos_)) {
+                skipBlockComment();
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void skipBlockComment() {
+        var depth = 0;
+        do {
+            if (pos_ >= text_.length()) {
+                throw error("Unterminated block comment");
+            }
+            if (text_.startsWith("#|", pos_)) {
+                depth++;
+                pos_ += 2;
+            } else if (text_.startsWith("|#", pos_)) {
+                depth--;
+                pos_ += 2;
+            } else {
+                if (text_.charAt(pos_) == '\n') {
+                    line_++;
+                }
+                pos_++;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * A string literal.
+     *
+     * @param value the string value
+     */
+    record StringLiteral(String value) {
+    }
+}
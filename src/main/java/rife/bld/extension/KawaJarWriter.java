@@ -0,0 +1,146 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Writes the classes compiled to a build directory as a reproducible JAR.
+ * <p>
+ * The entries are written in the order of their paths, after the manifest, and all have the same timestamp, so that
+ * compiling the same sources always gives the same JAR. The JAR is written next to its final location, and only
+ * replaces it once complete.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaJarWriter {
+    /**
+     * The timestamp of the entries when {@code SOURCE_DATE_EPOCH} is not set, 1980-02-01T00:00:00Z.
+     * <p>
+     * This is the earliest date that is stored the same way by all zip tools.
+     */
+    static final long DEFAULT_TIMESTAMP = 315_532_800_000L + 31L * 24L * 60L * 60L * 1000L;
+    private static final String SOURCE_DATE_EPOCH = "SOURCE_DATE_EPOCH";
+
+    private KawaJarWriter() {
+        // no-op
+    }
+
+    /**
+     * Returns the timestamp of the entries, from the {@code SOURCE_DATE_EPOCH} environment variable if it is set.
+     *
+     * @return the timestamp, in milliseconds since the epoch
+     */
+    static long timestamp() {
+        var epoch = System.getenv(SOURCE_DATE_EPOCH);
+        if (epoch != null && !epoch.isBlank()) {
+            try {
+                return Math.max(Long.parseLong(epoch.trim()) * 1000L, DEFAULT_TIMESTAMP);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(SOURCE_DATE_EPOCH + " is not a number of seconds: " + epoch, e);
+            }
+        }
+        return DEFAULT_TIMESTAMP;
+    }
+
+    /**
+     * Writes all the files of a directory to a JAR.
+     *
+     * @param directory the build directory
+     * @param jar       the JAR file
+     * @param timestamp the timestamp of the entries, in milliseconds since the epoch
+     * @return the number of files written
+     * @throws IOException if the directory could not be read or the JAR could not be written
+     */
+    static int write(File directory, File jar, long timestamp) throws IOException {
+        var root = directory.toPath();
+        // sorted on the entry names, directories being followed by a slash
+        var entries = new TreeSet<String>();
+        if (directory.isDirectory()) {
+            try (var paths = Files.walk(root)) {
+                for (var path : (Iterable<Path>) paths::iterator) {
+                    if (path.equals(root)) {
+                        continue;
+                    }
+                    var name = root.relativize(path).toString().replace(File.separatorChar, '/');
+                    if (Files.isDirectory(path)) {
+                        entries.add(name + '/');
+                    } else if (!name.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                        entries.add(name);
+                    }
+                }
+            }
+        }
+        entries.remove("META-INF/");
+
+        var parent = jar.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        var time = LocalDateTime.ofEpochSecond(timestamp / 1000L, 0, ZoneOffset.UTC);
+        var tmp = Files.createTempFile(parent.toPath(), jar.getName(), ".tmp");
+        var count = 0;
+        try {
+            try (var out = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                var manifest = new Manifest();
+                manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+                put(out, "META-INF/", time);
+                put(out, JarFile.MANIFEST_NAME, time);
+                manifest.write(out);
+                out.closeEntry();
+
+                for (var name : entries) {
+                    put(out, name, time);
+                    if (!name.endsWith("/")) {
+                        Files.copy(root.resolve(name), out);
+                        count++;
+                    }
+                    out.closeEntry();
+                }
+            }
+            try {
+                Files.move(tmp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return count;
+    }
+
+    private static void put(JarOutputStream out, String name, LocalDateTime time) throws IOException {
+        var entry = new JarEntry(name);
+        entry.setTimeLocal(time);
+        out.putNextEntry(entry);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipFile;
+
+/**
+ * Cache of the R7RS libraries shipped as sources in dependency jars, compiled once and shared by all projects.
+ * <p>
+ * The {@code .sld} sources of a jar are compiled together, in order of their dependencies, and their classes are
+ * kept under a key derived from the checksum of the jar, the Kawa version, the compile options and the libraries of
+ * the jars before it on the classpath. A jar whose libraries could not be read or compiled is remembered for an hour,
+ * so that it is not compiled again by every build, yet is retried after a transient failure.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaLibraryCache {
+    private static final String CLASSES = "classes";
+    private static final String FAILED = ".failed";
+    private static final String LIBRARY_EXTENSION = ".sld";
+    private static final Logger LOGGER = Logger.getLogger(KawaLibraryCache.class.getName());
+    private static final long RETRY_MILLIS = TimeUnit.HOURS.toMillis(1L);
+    private final Compilers compilers_;
+    private final File directory_;
+    private final String kawaVersion_;
+    private final List<String> options_;
+    private int compiled_;
+
+    /**
+     * Creates a new library cache.
+     *
+     * @param directory   the cache directory
+     * @param kawaVersion the Kawa version the libraries are compiled with
+     * @param options     the arguments of the {@link KawaCompileOptions compile options} the libraries are compiled
+     *                    with
+     * @param compilers   creates the compilers of the libraries
+     */
+    KawaLibraryCache(File directory, String kawaVersion, List<String> options, Compilers compilers) {
+        directory_ = directory;
+        kawaVersion_ = kawaVersion;
+        options_ = List.copyOf(options);
+        compilers_ = compilers;
+    }
+
+    /**
+     * Lists the library sources of a jar.
+     *
+     * @param jar the jar file
+     * @return the paths of the {@code .sld} entries
+     * @throws IOException if the jar could not be read
+     */
+    static List<String> librarySources(File jar) throws IOException {
+        var sources = new ArrayList<String>();
+        try (var zip = new ZipFile(jar)) {
+            var entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                var entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(LIBRARY_EXTENSION)) {
+                    sources.add(entry.getName());
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Retrieves the classes compiled from the libraries of a jar, compiling them if they are not cached yet.
+     *
+     * @param jar       the jar file
+     * @param classpath the classpath the libraries are compiled with, starting with the classes of the libraries of
+     *                  the jars before this one
+     * @return the directory of the compiled classes, or {@code null} if the jar has no libraries or they could not be
+     * read or compiled
+     * @throws IOException if the jar could not be listed or the cache could not be written
+     */
+    File classes(File jar, Collection<File> classpath) throws IOException {
+        var sources = librarySources(jar);
+        if (sources.isEmpty()) {
+            return null;
+        }
+
+        var key = key(jar, classpath);
+        var entry = new File(directory_, key.substring(0, 2) + File.separator + key);
+        var classes = new File(entry, CLASSES);
+        if (classes.isDirectory()) {
+            return classes;
+        }
+        var failed = new File(entry.getPath() + FAILED);
+        if (failed.exists()) {
+            if (System.currentTimeMillis() - failed.lastModified() < RETRY_MILLIS) {
+                return null;
+            }
+            Files.deleteIfExists(failed.toPath());
+        }
+
+        Files.createDirectories(entry.getParentFile().toPath());
+        var tmp = Files.createTempDirectory(entry.getParentFile().toPath(), key + ".tmp").toFile();
+        try {
+            try {
+                var ordered = extract(jar, sources, new File(tmp, "src"));
+                var tmpClasses = new File(tmp, CLASSES);
+                Files.createDirectories(tmpClasses.toPath());
+                try (var compiler = compilers_.compiler(classpath)) {
+                    compiler.compile(ordered, tmpClasses);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.warning("Could not compile the Kawa libraries of " + jar.getPath() + ": " + e.getMessage());
+                }
+                Files.writeString(failed.toPath(), String.valueOf(e.getMessage()));
+                return null;
+            }
+            compiled_++;
+
+            try {
+                Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // compiled by another build at the same time
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), entry.toPath());
+            }
+            return classes;
+        } finally {
+            KawaClassOutputs.delete(tmp);
+        }
+    }
+
+    /**
+     * Retrieves the number of jars whose libraries were compiled, rather than found in the cache.
+     *
+     * @return the number of compiled jars
+     */
+    int compiled() {
+        return compiled_;
+    }
+
+    // Derives the key of the libraries of a jar from everything their compilation depends on
+    private String key(File jar, Collection<File> classpath) throws IOException {
+        var parts = new ArrayList<>(List.of(kawaVersion_, String.join(" ", options_),
+                KawaSourceManifest.hash(jar.toPath())));
+        var root = directory_.getAbsoluteFile().toPath().normalize();
+        for (var entry : classpath) {
+            // the libraries of the jars before this one, by their own key
+            if (entry.getAbsoluteFile().toPath().normalize().startsWith(root)) {
+                parts.add(entry.getAbsoluteFile().getParentFile().getName());
+            }
+        }
+        return KawaBuildCache.key(parts);
+    }
+
+    // Extracts the library sources of a jar, returning them in order of their dependencies
+    private static List<File> extract(File jar, List<String> sources, File directory) throws IOException {
+        var root = directory.toPath().toAbsolutePath().normalize();
+        var files = new ArrayList<File>();
+        try (var zip = new ZipFile(jar)) {
+            for (var source : sources) {
+                var target = root.resolve(source).normalize();
+                if (!target.startsWith(root)) {
+                    throw new IOException("Invalid library path in " + jar.getPath() + ": " + source);
+                }
+                Files.createDirectories(target.getParent());
+                try (var in = zip.getInputStream(zip.getEntry(source))) {
+                    Files.copy(in, target);
+                }
+                files.add(target.toFile());
+            }
+        }
+
+        var graph = new KawaDependencyGraph(KawaSyntaxCheck.check(files).headers(), List.of(directory));
+        var ordered = new LinkedHashSet<File>();
+        graph.waves(files).forEach(ordered::addAll);
+        // libraries in dependency cycles last
+        ordered.addAll(graph.sources());
+        return new ArrayList<>(ordered);
+    }
+
+    /**
+     * Creates the compilers of the libraries.
+     */
+    @FunctionalInterface
+    interface Compilers {
+        /**
+         * Creates a compiler.
+         *
+         * @param classpath the classpath the libraries are compiled with
+         * @return the compiler
+         * @throws IOException if the compiler could not be created
+         */
+        KawaCompiler compiler(Collection<File> classpath) throws IOException;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * The module declaration and dependencies of a Kawa source.
+ * <p>
+ * Module and library names are normalized to their dotted form, e.g. both {@code (edu example util)} and
+ * {@code <edu.example.util>} become {@code edu.example.util}. Sources required by path, and files included with
+ * {@code include}, {@code include-ci} or {@code include-library-declarations}, are recorded with the
+ * {@link #FILE_PREFIX} followed by their absolute path. The imports of all the clauses of {@code cond-expand} are
+ * recorded, since the features of the compiler are not known.
+ *
+ * @param name    the declared module or library name, or {@code null} if none
+ * @param imports the names of the modules imported or required by the source
+ * @author Anthony S.
+ * @since 1.0
+ */
+record KawaModuleHeader(String name, List<String> imports) {
+    /**
+     * The prefix of dependencies on a source path.
+     */
+    static final String FILE_PREFIX = "file:";
+    private static final Set<String> IMPORT_SET_MODIFIERS = Set.of("only", "except", "prefix", "rename", "library");
+    private static final Logger LOGGER = Logger.getLogger(KawaModuleHeader.class.getName());
+
+    /**
+     * Reads the header of a source file.
+     * <p>
+     * A source that cannot be read is logged and reported as having no module declaration or dependencies, leaving
+     * it to the compiler to report the actual error.
+     *
+     * @param source the source file
+     * @return the header
+     * @throws IOException if the file could not be read
+     */
+    static KawaModuleHeader parse(File source) throws IOException {
+        try {
+            return read(source);
+        } catch (IllegalArgumentException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Could not read the header of " + source.getAbsolutePath() + ": " + e.getMessage());
+            }
+            return new KawaModuleHeader(null, List.of());
+        }
+    }
+
+    /**
+     * Reads the header of a source file, checking that the whole source is well-formed.
+     *
+     * @param source the source file
+     * @return the header
+     * @throws IOException              if the file could not be read
+     * @throws IllegalArgumentException if the source is not well-formed
+     */
+    static KawaModuleHeader read(File source) throws IOException {
+        return of(KawaForms.read(text(source.toPath())), source);
+    }
+
+    /**
+     * Reads the text of a source file as UTF-8, replacing the bytes that are not, since only the forms of the header
+     * are needed.
+     *
+     * @param path the source file
+     * @return the text
+     * @throws IOException if the file could not be read
+     */
+    static String text(Path path) throws IOException {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(ByteBuffer.wrap(Files.readAllBytes(path)))
+                .toString();
+    }
+
+    /**
+     * Extracts the header from the top-level forms of a source file.
+     *
+     * @param forms  the top-level forms, as read by {@link KawaForms}
+     * @param source the source file
+     * @return the header
+     */
+    static KawaModuleHeader of(List<Object> forms, File source) {
+        var names = new ArrayList<String>();
+        var imports = new ArrayList<String>();
+        collect(forms, source, names, imports, new HashSet<>());
+        return new KawaModuleHeader(names.isEmpty() ? null : names.get(0),
+                imports.stream().distinct().collect(Collectors.toList()));
+    }
+
+    private static void collect(List<Object> forms, File source, List<String> names, List<String> imports,
+                                Set<Path> included) {
+        for (var form : forms) {
+            if (!(form instanceof List<?> list) || list.isEmpty() || !(list.get(0) instanceof String head)) {
+                continue;
+            }
+            var args = castList(list.subList(1, list.size()));
+            switch (head) {
+                case "module-name" -> {
+                    if (!args.isEmpty() && name(args.get(0)) != null) {
+                        names.add(name(args.get(0)));
+                    }
+                }
+                case "define-library" -> {
+                    if (!args.isEmpty() && name(args.get(0)) != null) {
+                        names.add(name(args.get(0)));
+                    }
+                    collect(args, source, names, imports, included);
+                }
+                case "begin" -> collect(args, source, names, imports, included);
+                case "cond-expand" -> {
+                    for (var clause : args) {
+                        if (clause instanceof List<?> requirement && !requirement.isEmpty()) {
+                            collect(castList(requirement.subList(1, requirement.size())), source, names, imports,
+                                    included);
+                        }
+                    }
+                }
+                case "include", "include-ci" -> {
+                    for (var arg : args) {
+                        if (arg instanceof KawaForms.StringLiteral path) {
+                            imports.add(FILE_PREFIX + file(path, source).toPath());
+                        }
+                    }
+                }
+                case "include-library-declarations" -> {
+                    for (var arg : args) {
+                        if (arg instanceof KawaForms.StringLiteral path) {
+                            var file = file(path, source);
+                            imports.add(FILE_PREFIX + file.toPath());
+                            // the declarations are part of the library, e.g. its imports
+                            if (included.add(file.toPath()) && file.isFile()) {
+                                try {
+                                    collect(KawaForms.read(text(file.toPath())), file, names, imports, included);
+                                } catch (IOException | IllegalArgumentException e) {
+                                    if (LOGGER.isLoggable(Level.WARNING)) {
+                                        LOGGER.warning("Could not read the library declarations of "
+                                                + file.getPath() + ": " + e.getMessage());
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                case "import" -> {
+                    for (var set : args) {
+                        var name = importName(set);
+                        if (name != null) {
+                            imports.add(name);
+                        }
+                    }
+                }
+                case "require" -> {
+                    if (!args.isEmpty()) {
+                        var name = requireName(args.get(0), source);
+                        if (name != null) {
+                            imports.add(name);
+                        }
+                    }
+                }
+                default -> {
+                    // not part of the header
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> castList(List<?> list) {
+        return (List<Object>) list;
+    }
+
+    // Returns the name of the library imported by an import set
+    private static String importName(Object set) {
+        if (set instanceof List<?> list && list.size() > 1 && list.get(0) instanceof String modifier
+                && IMPORT_SET_MODIFIERS.contains(modifier) && list.get(1) instanceof List) {
+            return importName(list.get(1));
+        }
+        return name(set);
+    }
+
+    // Resolves a path relative to the directory of the source it appears in
+    private static File file(KawaForms.StringLiteral path, File source) {
+        var file = new File(path.value());
+        if (!file.isAbsolute()) {
+            file = new File(source.getAbsoluteFile().getParentFile(), path.value());
+        }
+        return file.toPath().normalize().toFile();
+    }
+
+    // Returns the name of the module required by a require form
+    private static String requireName(Object arg, File source) {
+        if (arg instanceof KawaForms.StringLiteral path) {
+            return FILE_PREFIX + file(path, source).toPath();
+        }
+        if (arg instanceof List<?> list && list.size() == 2 && "quote".equals(list.get(0))) {
+            return name(list.get(1));
+        }
+        return name(arg);
+    }
+
+    /**
+     * Normalizes a module or library name.
+     *
+     * @param form the name, either a symbol or a list of symbols
+     * @return the dotted name, or {@code null} if the form is not a name
+     */
+    static String name(Object form) {
+        if (form instanceof String symbol) {
+            if (symbol.length() > 2 && symbol.startsWith("<") && symbol.endsWith(">")) {
+                return symbol.substring(1, symbol.length() - 1);
+            }
+            return symbol;
+        }
+        if (form instanceof List<?> parts && !parts.isEmpty()) {
+            var name = new StringBuilder();
+            for (var part : parts) {
+                if (!(part instanceof String)) {
+                    return null;
+                }
+                if (!name.isEmpty()) {
+                    name.append('.');
+                }
+                name.append(part);
+            }
+            return name.toString();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates the registry of the Kawa modules compiled to a build directory.
+ * <p>
+ * The registry is made of a resource index, {@value #INDEX}, listing the name and class of each module, and of a
+ * generated class mapping the same module names to their classes. The class looks modules up without scanning the
+ * classpath, and loads them without initializing them until they are first used.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaModuleRegistry {
+    /**
+     * The path of the resource index, relative to the build directory.
+     */
+    static final String INDEX = "META-INF/kawa/modules.index";
+    private final String className_;
+    private final Map<String, String> modules_ = new TreeMap<>();
+
+    /**
+     * Creates a new empty registry.
+     *
+     * @param className the fully qualified name of the registry class
+     */
+    KawaModuleRegistry(String className) {
+        className_ = className;
+    }
+
+    /**
+     * Picks the class of a module among the class files compiled from its source.
+     * <p>
+     * This is the class named after the module, or else the class with the shortest name, since the other classes
+     * compiled from a source are nested in the module class.
+     *
+     * @param module  the module name
+     * @param outputs the class files compiled from the source of the module
+     * @return the fully qualified class name, or {@code null} if there are no class files
+     */
+    static String moduleClass(String module, Collection<String> outputs) {
+        String moduleClass = null;
+        for (var output : outputs) {
+            var name = output.replaceFirst("\\.class$", "").replace('/', '.');
+            if (name.equals(module)) {
+                return name;
+            }
+            if (moduleClass == null || name.length() < moduleClass.length()
+                    || (name.length() == moduleClass.length() && name.compareTo(moduleClass) < 0)) {
+                moduleClass = name;
+            }
+        }
+        return moduleClass;
+    }
+
+    /**
+     * Generates the resource index.
+     *
+     * @return the lines of the index, one module name and class name per line, separated by a tab
+     */
+    List<String> index() {
+        var lines = new ArrayList<String>();
+        modules_.forEach((module, moduleClass) -> lines.add(module + '\t' + moduleClass));
+        return lines;
+    }
+
+    /**
+     * Generates the source code of the registry class.
+     *
+     * @return the Java source code, compatible with Java 8
+     */
+    String javaSource() {
+        var dot = className_.lastIndexOf('.');
+        var simpleName = className_.substring(dot + 1);
+        var lines = new ArrayList<String>();
+        if (dot > 0) {
+            lines.add("package " + className_.substring(0, dot) + ";");
+            lines.add("");
+        }
+        lines.add("/**");
+        lines.add(" * Registry of the Kawa modules of the application, generated by the bld Kawa extension.");
+        lines.add(" * <p>");
+        lines.add(" * Modules are loaded by name without scanning the classpath, and only initialized when requested.");
+        lines.add(" */");
+        lines.add("public final class " + simpleName + " {");
+        lines.add("    private static final java.util.Map<String, String> CLASSES = new java.util.HashMap<>();");
+        lines.add("");
+        lines.add("    static {");
+        modules_.forEach((module, moduleClass) -> lines.add("        CLASSES.put(" + KawaDependencyGraph.json(module)
+                + ", " + KawaDependencyGraph.json(moduleClass) + ");"));
+        lines.add("    }");
+        lines.add("");
+        lines.add("    private " + simpleName + "() {");
+        lines.add("        // no-op");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    /** Returns the names of the modules. */");
+        lines.add("    public static java.util.Set<String> names() {");
+        lines.add("        return java.util.Collections.unmodifiableSet(CLASSES.keySet());");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    /** Returns the class name of a module, or null if it is unknown. */");
+        lines.add("    public static String className(String module) {");
+        lines.add("        return CLASSES.get(module);");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    /** Loads the class of a module, without initializing the module. */");
+        lines.add("    public static Class<?> moduleClass(String module) throws ClassNotFoundException {");
+        lines.add("        return load(module, false);");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    /** Loads the class of a module, and initializes the module if it was not yet. */");
+        lines.add("    public static Class<?> initializeModule(String module) throws ClassNotFoundException {");
+        lines.add("        return load(module, true);");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    private static Class<?> load(String module, boolean initialize)");
+        lines.add("            throws ClassNotFoundException {");
+        lines.add("        String className = CLASSES.get(module);");
+        lines.add("        if (className == null) {");
+        lines.add("            throw new ClassNotFoundException(\"Unknown Kawa module: \" + module);");
+        lines.add("        }");
+        lines.add("        return Class.forName(className, initialize, " + simpleName + ".class.getClassLoader());");
+        lines.add("    }");
+        lines.add("}");
+        return String.join("\n", lines) + "\n";
+    }
+
+    /**
+     * Registers a module.
+     *
+     * @param module      the module name
+     * @param moduleClass the fully qualified name of the module class
+     */
+    void put(String module, String moduleClass) {
+        modules_.put(module, moduleClass);
+    }
+
+    /**
+     * Writes the resource index and the registry class to a build directory.
+     * <p>
+     * Nothing is written if the index did not change and the registry class exists, so that their modification times
+     * are preserved.
+     *
+     * @param destination   the build directory
+     * @param workDirectory the directory to generate the source code of the registry class in
+     * @return {@code true} if the registry was written
+     * @throws IOException if the registry could not be written, or the registry class could not be compiled
+     */
+    boolean write(File destination, File workDirectory) throws IOException {
+        var index = new File(destination, INDEX);
+        var lines = index();
+        var classFile = new File(destination, className_.replace('.', '/') + ".class");
+        if (index.isFile() && classFile.isFile()
+                && Files.readAllLines(index.toPath(), StandardCharsets.UTF_8).equals(lines)) {
+            return false;
+        }
+
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("A JDK is required to compile the Kawa module registry.");
+        }
+        var source = new File(workDirectory, className_.replace('.', File.separatorChar) + ".java");
+        var classes = new File(workDirectory, "classes");
+        KawaClassOutputs.delete(source.getParentFile());
+        KawaClassOutputs.delete(classes);
+        Files.createDirectories(source.getParentFile().toPath());
+        Files.createDirectories(classes.toPath());
+        Files.writeString(source.toPath(), javaSource(), StandardCharsets.UTF_8);
+
+        var errors = new ByteArrayOutputStream();
+        var exitCode = compiler.run(null, null, errors, "--release", "8", "-Xlint:-options", "-proc:none",
+                "-d", classes.getAbsolutePath(), source.getAbsolutePath());
+        if (exitCode != 0) {
+            throw new IOException("Could not compile the Kawa module registry: "
+                    + errors.toString(StandardCharsets.UTF_8));
+        }
+
+        KawaClassOutputs.publish(classes, destination);
+        Files.createDirectories(index.getParentFile().toPath());
+        Files.write(index.toPath(), lines, StandardCharsets.UTF_8);
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+
+/**
+ * Statistics of the compilation of a Kawa module.
+ * <p>
+ * The CPU time and allocated bytes are measured on the thread compiling the module, and are {@code -1} when they
+ * cannot be measured, e.g. when compiling with the {@link CompileKawaOperation#daemon(boolean) compiler daemon}.
+ *
+ * @param source         the source file
+ * @param module         the declared or implicit module name
+ * @param wallNanos      the elapsed time, in nanoseconds
+ * @param cpuNanos       the CPU time, in nanoseconds, or {@code -1}
+ * @param allocatedBytes the number of bytes allocated, or {@code -1}
+ * @param classCount     the number of class files written
+ * @param classBytes     the total size of the class files written, in bytes
+ * @author Anthony S.
+ * @since 1.0
+ */
+public record KawaModuleStats(
+    File source,
+    String module,
+    long wallNanos,
+    long cpuNanos,
+    long allocatedBytes,
+    int classCount,
+    long classBytes
+) {
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles independent Kawa modules at the same time.
+ * <p>
+ * The sources are compiled one module at a time, each worker thread using its own compiler so that no compiler state
+ * is shared. A module is compiled as soon as all the modules it depends on are compiled, even when they are compiled
+ * to another destination, e.g. test modules as soon as the main modules they import are. Sources that are part of a
+ * dependency cycle are compiled together once all the other modules are done.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaParallelCompiler implements KawaCompiler {
+    private final ConcurrentLinkedQueue<KawaCompiler> compilers_ = new ConcurrentLinkedQueue<>();
+    private final Callable<KawaCompiler> factory_;
+    private final KawaDependencyGraph graph_;
+    private final int parallelism_;
+    private final ThreadLocal<KawaCompiler> workerCompiler_ = new ThreadLocal<>();
+
+    /**
+     * Creates a new parallel compiler.
+     *
+     * @param graph       the dependency graph of the sources
+     * @param parallelism the number of modules to compile at the same time
+     * @param factory     creates the compiler of each worker
+     */
+    KawaParallelCompiler(KawaDependencyGraph graph, int parallelism, Callable<KawaCompiler> factory) {
+        graph_ = graph;
+        parallelism_ = parallelism;
+        factory_ = factory;
+    }
+
+    // Waits for a compilation to finish, cancelling all the others if it failed
+    private static File await(CompletionService<File> completion, List<Future<File>> futures) throws IOException {
+        try {
+            return completion.take().get();
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Kawa compilation was interrupted.", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (var compiler : compilers_) {
+            try {
+                compiler.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        compilers_.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void compile(List<File> sources, File destination) throws IOException {
+        var destinations = new LinkedHashMap<File, File>();
+        sources.forEach(source -> destinations.put(source, destination));
+        compile(destinations);
+    }
+
+    @Override
+    public void compile(Map<File, File> destinations) throws IOException {
+        var selected = new LinkedHashMap<File, File>();
+        destinations.forEach((source, destination) -> selected.put(source.getAbsoluteFile(), destination));
+
+        // number of dependencies of each source that are not compiled yet
+        var pending = new HashMap<File, Integer>();
+        var ready = new ArrayList<File>();
+        for (var source : selected.keySet()) {
+            var count = (int) graph_.dependencies(source).stream().filter(selected::containsKey).count();
+            pending.put(source, count);
+            if (count == 0) {
+                ready.add(source);
+            }
+        }
+
+        var executor = newExecutor();
+        try {
+            var completion = new ExecutorCompletionService<File>(executor);
+            var futures = new ArrayList<Future<File>>();
+            for (var source : ready) {
+                futures.add(submit(completion, source, selected.get(source)));
+            }
+            var running = ready.size();
+            while (running > 0) {
+                var compiled = await(completion, futures);
+                running--;
+                pending.remove(compiled);
+                for (var dependent : graph_.dependents(compiled)) {
+                    if (pending.containsKey(dependent) && pending.merge(dependent, -1, Integer::sum) == 0) {
+                        futures.add(submit(completion, dependent, selected.get(dependent)));
+                        running++;
+                    }
+                }
+            }
+
+            if (!pending.isEmpty()) {
+                var cycles = new LinkedHashMap<File, File>();
+                selected.forEach((source, destination) -> {
+                    if (pending.containsKey(source)) {
+                        cycles.put(source, destination);
+                    }
+                });
+                futures.add(completion.submit(() -> {
+                    workerCompiler().compile(cycles);
+                    return null;
+                }));
+                await(completion, futures);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<File> submit(CompletionService<File> completion, File source, File destination) {
+        return completion.submit(() -> {
+            workerCompiler().compile(List.of(source), destination);
+            return source;
+        });
+    }
+
+    private ExecutorService newExecutor() {
+        var count = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism_, runnable -> {
+            var thread = new Thread(runnable, "kawa-compiler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Returns the compiler of the current worker thread, creating it if needed
+    private KawaCompiler workerCompiler() throws Exception {
+        var compiler = workerCompiler_.get();
+        if (compiler == null) {
+            compiler = factory_.call();
+            compilers_.add(compiler);
+            workerCompiler_.set(compiler);
+        }
+        return compiler;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Manifest of the classes exported by a shard of the Kawa compilation.
+ * <p>
+ * The manifest records the shard, the plan it is part of, the Kawa version, compile options and fingerprint of the
+ * compile classpath, and for each source of the shard its content hash and the class files it was compiled to. Source
+ * paths are relative to the project, so that shards compiled on other machines can be merged.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaShardManifest {
+    /**
+     * The name of the manifest file, in the directory of a shard.
+     */
+    static final String FILE = "shard.manifest";
+    private static final String HEADER = "# bld-kawa shard manifest";
+    private final String classpath_;
+    private final int count_;
+    private final Map<String, Entry> entries_ = new TreeMap<>();
+    private final int index_;
+    private final String kawaVersion_;
+    private final String options_;
+    private final String plan_;
+
+    /**
+     * Creates a new empty manifest.
+     *
+     * @param kawaVersion the Kawa version
+     * @param options     the compile options
+     * @param classpath   the fingerprint of the compile classpath
+     * @param plan        the key of the shard plan
+     * @param index       the shard index
+     * @param count       the number of shards
+     */
+    KawaShardManifest(String kawaVersion, String options, String classpath, String plan, int index, int count) {
+        kawaVersion_ = kawaVersion;
+        options_ = options;
+        classpath_ = classpath;
+        plan_ = plan;
+        index_ = index;
+        count_ = count;
+    }
+
+    /**
+     * Loads a manifest.
+     *
+     * @param file the manifest file
+     * @return the manifest
+     * @throws IOException if the manifest could not be read, or is not a shard manifest
+     */
+    static KawaShardManifest load(File file) throws IOException {
+        var lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            if (lines.size() < 6 || !HEADER.equals(lines.get(0))) {
+                throw new IllegalArgumentException("not a shard manifest");
+            }
+            var shard = lines.get(4).split("\t", -1);
+            if (shard.length != 3 || !"shard".equals(shard[0])) {
+                throw new IllegalArgumentException("Expected shard, got: " + lines.get(4));
+            }
+            var manifest = new KawaShardManifest(value(lines.get(1), "kawa"), value(lines.get(2), "options"),
+                    value(lines.get(3), "classpath"), value(lines.get(5), "plan"), Integer.parseInt(shard[1]),
+                    Integer.parseInt(shard[2]));
+            Entry entry = null;
+            for (var line : lines.subList(6, lines.size())) {
+                var fields = line.split("\t", -1);
+                if ("source".equals(fields[0]) && fields.length == 3) {
+                    entry = new Entry(fields[2], new ArrayList<>());
+                    manifest.entries_.put(fields[1], entry);
+                } else if ("output".equals(fields[0]) && fields.length == 2 && entry != null) {
+                    entry.outputs().add(fields[1]);
+                } else {
+                    throw new IllegalArgumentException("Unexpected line: " + line);
+                }
+            }
+            return manifest;
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid Kawa shard manifest " + file.getPath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Computes the key of a shard plan.
+     *
+     * @param sources the content hash of each source, by relative path
+     * @param shards  the shard of each source, by relative path
+     * @return the hexadecimal hash of the sources and their shards
+     * @throws IOException if SHA-256 is not available
+     */
+    static String plan(Map<String, String> sources, Map<String, Integer> shards) throws IOException {
+        var parts = new ArrayList<String>();
+        new TreeMap<>(sources).forEach((path, hash) -> parts.add(path + '\t' + hash + '\t' + shards.get(path)));
+        return KawaBuildCache.key(parts);
+    }
+
+    /**
+     * Verifies that shards together export the classes of all the sources.
+     * <p>
+     * All the shards of the plan must be present, compiled with the given Kawa version, compile options and compile
+     * classpath, and every source must be exported by exactly one shard, from its current content.
+     *
+     * @param shards      the shard manifests
+     * @param sources     the content hash of each source to merge, by relative path
+     * @param kawaVersion the Kawa version
+     * @param options     the compile options
+     * @param classpath   the fingerprint of the compile classpath
+     * @return the problems found, empty if the shards are complete
+     */
+    static List<String> verify(Collection<KawaShardManifest> shards, Map<String, String> sources,
+                               String kawaVersion, String options, String classpath) {
+        var problems = new ArrayList<String>();
+        if (shards.isEmpty()) {
+            problems.add("no shards");
+            return problems;
+        }
+
+        var first = shards.iterator().next();
+        var indices = new TreeMap<Integer, KawaShardManifest>();
+        for (var shard : shards) {
+            if (shard.count_ != first.count_ || !shard.plan_.equals(first.plan_)) {
+                problems.add("shard " + shard.index_ + " is part of another plan");
+            } else if (indices.putIfAbsent(shard.index_, shard) != null) {
+                problems.add("shard " + shard.index_ + " is present more than once");
+            }
+            if (!Objects.equals(shard.kawaVersion_, kawaVersion)) {
+                problems.add("shard " + shard.index_ + " was compiled with Kawa " + shard.kawaVersion_);
+            }
+            if (!Objects.equals(shard.options_, options)) {
+                problems.add("shard " + shard.index_ + " was compiled with other options: " + shard.options_);
+            }
+            if (!Objects.equals(shard.classpath_, classpath)) {
+                problems.add("shard " + shard.index_ + " was compiled with another classpath");
+            }
+        }
+        for (var i = 0; i < first.count_; i++) {
+            if (!indices.containsKey(i)) {
+                problems.add("shard " + i + " of " + first.count_ + " is missing");
+            }
+        }
+
+        var exported = new HashMap<String, Integer>();
+        for (var shard : indices.values()) {
+            shard.entries_.forEach((path, entry) -> {
+                var previous = exported.put(path, shard.index_);
+                if (previous != null) {
+                    problems.add(path + " is exported by shards " + previous + " and " + shard.index_);
+                } else if (!sources.containsKey(path)) {
+                    problems.add(path + " is exported by shard " + shard.index_ + " but is not a source");
+                } else if (!sources.get(path).equals(entry.hash())) {
+                    problems.add(path + " was compiled from other content by shard " + shard.index_);
+                } else if (entry.outputs().isEmpty()) {
+                    problems.add(path + " has no classes in shard " + shard.index_);
+                }
+            });
+        }
+        new TreeMap<>(sources).keySet().forEach(path -> {
+            if (!exported.containsKey(path)) {
+                problems.add(path + " is not exported by any shard");
+            }
+        });
+        return problems;
+    }
+
+    private static String value(String line, String key) {
+        var fields = line.split("\t", -1);
+        if (fields.length != 2 || !key.equals(fields[0])) {
+            throw new IllegalArgumentException("Expected " + key + ", got: " + line);
+        }
+        return fields[1];
+    }
+
+    /**
+     * Retrieves the number of shards.
+     *
+     * @return the number of shards
+     */
+    int count() {
+        return count_;
+    }
+
+    /**
+     * Retrieves the sources exported by the shard.
+     *
+     * @return the entries, by relative source path
+     */
+    Map<String, Entry> entries() {
+        return entries_;
+    }
+
+    /**
+     * Retrieves the shard index.
+     *
+     * @return the shard index
+     */
+    int index() {
+        return index_;
+    }
+
+    /**
+     * Records a source exported by the shard.
+     *
+     * @param path    the source path, relative to the project
+     * @param hash    the content hash of the source
+     * @param outputs the class files compiled from the source, relative to the classes directory
+     */
+    void put(String path, String hash, List<String> outputs) {
+        entries_.put(path, new Entry(hash, new ArrayList<>(outputs)));
+    }
+
+    /**
+     * Saves this manifest.
+     *
+     * @param file the manifest file
+     * @throws IOException if the manifest could not be written
+     */
+    void save(File file) throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add(HEADER);
+        lines.add("kawa\t" + kawaVersion_);
+        lines.add("options\t" + options_);
+        lines.add("classpath\t" + classpath_);
+        lines.add("shard\t" + index_ + '\t' + count_);
+        lines.add("plan\t" + plan_);
+        entries_.forEach((path, entry) -> {
+            lines.add("source\t" + path + '\t' + entry.hash());
+            entry.outputs().forEach(output -> lines.add("output\t" + output));
+        });
+
+        var parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A source exported by a shard.
+     *
+     * @param hash    the content hash of the source
+     * @param outputs the class files compiled from the source, relative to the classes directory of the shard
+     */
+    record Entry(String hash, List<String> outputs) {
+    }
+}
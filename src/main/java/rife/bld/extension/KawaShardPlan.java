@@ -0,0 +1,213 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Partitions the Kawa sources of a dependency graph into shards of about the same weight, each compiled by a separate
+ * build.
+ * <p>
+ * Sources that are connected by their imports are kept in the same shard, so that each module is only compiled once.
+ * A group of connected sources heavier than a shard is split into its sources instead, and a shard then also compiles
+ * the modules its sources depend on. The plan only depends on the sources and their weights, so that every build
+ * computes the same one.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaShardPlan {
+    private final int count_;
+    private final KawaDependencyGraph graph_;
+    private final Map<File, Integer> shards_ = new LinkedHashMap<>();
+    private final long[] weights_;
+
+    /**
+     * Plans the shards of sources.
+     *
+     * @param graph   the dependency graph of the sources
+     * @param sources the sources, in a deterministic order
+     * @param weights the weight of each source, e.g. its size or compile time
+     * @param count   the number of shards
+     */
+    KawaShardPlan(KawaDependencyGraph graph, List<File> sources, Map<File, Long> weights, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The shard count must be at least 1.");
+        }
+        count_ = count;
+        graph_ = graph;
+        weights_ = new long[count];
+
+        var total = 0L;
+        for (var source : sources) {
+            shards_.put(source.getAbsoluteFile(), -1);
+            total += weight(weights, source);
+        }
+
+        // groups of connected sources, split when heavier than a shard
+        var units = new ArrayList<List<File>>();
+        for (var component : components(graph, sources)) {
+            var weight = component.stream().mapToLong(source -> weight(weights, source)).sum();
+            if (component.size() > 1 && weight * count > total) {
+                component.forEach(source -> units.add(List.of(source)));
+            } else {
+                units.add(component);
+            }
+        }
+
+        // the heaviest groups first, each to the lightest shard
+        var unitWeights = new HashMap<List<File>, Long>();
+        units.forEach(unit -> unitWeights.put(unit,
+                unit.stream().mapToLong(source -> weight(weights, source)).sum()));
+        units.sort(Comparator.comparing((List<File> unit) -> unitWeights.get(unit)).reversed());
+        for (var unit : units) {
+            var shard = 0;
+            for (var i = 1; i < count; i++) {
+                if (weights_[i] < weights_[shard]) {
+                    shard = i;
+                }
+            }
+            weights_[shard] += unitWeights.get(unit);
+            for (var source : unit) {
+                shards_.put(source.getAbsoluteFile(), shard);
+            }
+        }
+    }
+
+    // Groups the sources connected by their imports, in order of their first source
+    private static List<List<File>> components(KawaDependencyGraph graph, List<File> sources) {
+        var selected = new LinkedHashSet<File>();
+        sources.forEach(source -> selected.add(source.getAbsoluteFile()));
+        var visited = new HashSet<File>();
+        var components = new ArrayList<List<File>>();
+        for (var source : selected) {
+            if (visited.contains(source)) {
+                continue;
+            }
+            var members = new LinkedHashSet<File>();
+            var queue = new ArrayDeque<File>();
+            queue.add(source);
+            visited.add(source);
+            while (!queue.isEmpty()) {
+                var member = queue.poll();
+                members.add(member);
+                var neighbours = new ArrayList<>(graph.dependencies(member));
+                neighbours.addAll(graph.dependents(member));
+                for (var neighbour : neighbours) {
+                    if (selected.contains(neighbour) && visited.add(neighbour)) {
+                        queue.add(neighbour);
+                    }
+                }
+            }
+
+            var component = new ArrayList<File>();
+            for (var candidate : selected) {
+                if (members.contains(candidate)) {
+                    component.add(candidate);
+                }
+            }
+            components.add(component);
+        }
+        return components;
+    }
+
+    private static long weight(Map<File, Long> weights, File source) {
+        return Math.max(1L, weights.getOrDefault(source.getAbsoluteFile(), 1L));
+    }
+
+    /**
+     * Retrieves the sources to compile for a shard.
+     * <p>
+     * These are the sources of the shard, and the sources they depend on, directly or transitively.
+     *
+     * @param shard the shard index
+     * @return the sources, in plan order
+     */
+    Set<File> closure(int shard) {
+        var closure = new LinkedHashSet<File>();
+        var queue = new ArrayDeque<>(sources(shard));
+        while (!queue.isEmpty()) {
+            var source = queue.poll();
+            if (closure.add(source)) {
+                queue.addAll(graph_.dependencies(source));
+            }
+        }
+
+        var ordered = new LinkedHashSet<File>();
+        for (var source : shards_.keySet()) {
+            if (closure.contains(source)) {
+                ordered.add(source);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Retrieves the number of shards.
+     *
+     * @return the number of shards
+     */
+    int count() {
+        return count_;
+    }
+
+    /**
+     * Retrieves the shard of a source.
+     *
+     * @param source the source
+     * @return the shard index, or {@code -1} if the source is not part of the plan
+     */
+    int shard(File source) {
+        return shards_.getOrDefault(source.getAbsoluteFile(), -1);
+    }
+
+    /**
+     * Retrieves the sources of a shard, whose classes the shard exports.
+     *
+     * @param shard the shard index
+     * @return the sources, in plan order
+     */
+    Set<File> sources(int shard) {
+        var sources = new LinkedHashSet<File>();
+        shards_.forEach((source, index) -> {
+            if (index == shard) {
+                sources.add(source);
+            }
+        });
+        return sources;
+    }
+
+    /**
+     * Retrieves the total weight of the sources of a shard.
+     *
+     * @param shard the shard index
+     * @return the weight
+     */
+    long weight(int shard) {
+        return weights_[shard];
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fingerprint manifest of the Kawa sources compiled to a build destination.
+ * <p>
+ * For each source the manifest records its content hash, size and modification time, its
+ * {@link KawaModuleHeader module header}, as well as the class files it was compiled to. The Kawa version, compile
+ * options and fingerprint of the compile classpath the sources were compiled with are recorded once for the whole
+ * manifest, since changing any of them invalidates all the outputs. The hash, size and modification time of each jar on
+ * the compile classpath are recorded as well, so that unchanged jars need not be read again to fingerprint the
+ * classpath.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaSourceManifest {
+    private static final String HEADER = "# bld-kawa source manifest";
+    private static final Logger LOGGER = Logger.getLogger(KawaSourceManifest.class.getName());
+    private final String destination_;
+    private final String classpath_;
+    private final Map<String, Entry> entries_ = new LinkedHashMap<>();
+    private final Map<String, Entry> jars_ = new LinkedHashMap<>();
+    private final String kawaVersion_;
+    private final String options_;
+
+    /**
+     * Creates a new empty manifest.
+     *
+     * @param kawaVersion the Kawa version
+     * @param options     the compile options
+     * @param classpath   the fingerprint of the compile classpath
+     * @param destination the build destination directory
+     */
+    KawaSourceManifest(String kawaVersion, String options, String classpath, File destination) {
+        this(kawaVersion, options, classpath, destination.getAbsolutePath());
+    }
+
+    private KawaSourceManifest(String kawaVersion, String options, String classpath, String destination) {
+        kawaVersion_ = kawaVersion;
+        options_ = options;
+        classpath_ = classpath;
+        destination_ = destination;
+    }
+
+    /**
+     * Computes the fingerprint of a source file.
+     * <p>
+     * If the size and modification time of the file match the previous entry, its hash is reused instead of reading
+     * the file again.
+     *
+     * @param source   the source file
+     * @param previous the previous entry for the source, may be {@code null}
+     * @return the fingerprint, without outputs, and without header unless the content is unchanged
+     * @throws IOException if the file could not be read
+     */
+    static Entry fingerprint(File source, Entry previous) throws IOException {
+        var path = source.toPath();
+        var size = Files.size(path);
+        var modified = Files.getLastModifiedTime(path).toMillis();
+        if (previous != null && previous.size() == size && previous.modified() == modified) {
+            return new Entry(previous.hash(), size, modified, previous.header(), List.of());
+        }
+        return new Entry(hash(path), size, modified, null, List.of());
+    }
+
+    /**
+     * Computes the SHA-256 hash of a file.
+     *
+     * @param path the file
+     * @return the hexadecimal hash
+     * @throws IOException if the file could not be read
+     */
+    static String hash(Path path) throws IOException {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            try (var in = Files.newInputStream(path)) {
+                var buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Loads a manifest.
+     *
+     * @param file the manifest file
+     * @return the manifest, or {@code null} if it does not exist or could not be read
+     */
+    static KawaSourceManifest load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            var lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() < 5 || !HEADER.equals(lines.get(0))) {
+                return null;
+            }
+            var manifest = new KawaSourceManifest(value(lines.get(1), "kawa"), value(lines.get(2), "options"),
+                    value(lines.get(3), "classpath"), value(lines.get(4), "destination"));
+            String source = null;
+            Entry entry = null;
+            for (var line : lines.subList(5, lines.size())) {
+                var fields = line.split("\t", -1);
+                if ("jar".equals(fields[0]) && fields.length == 5 && source == null) {
+                    manifest.jars_.put(fields[1], new Entry(fields[2], Long.parseLong(fields[3]),
+                            Long.parseLong(fields[4]), null, List.of()));
+                } else if ("source".equals(fields[0]) && fields.length == 5) {
+                    source = fields[1];
+                    entry = new Entry(fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                            new KawaModuleHeader(null, new ArrayList<>()), new ArrayList<>());
+                    manifest.entries_.put(source, entry);
+                } else if ("module".equals(fields[0]) && fields.length == 2 && entry != null) {
+                    entry = entry.withHeader(new KawaModuleHeader(fields[1], entry.header().imports()));
+                    manifest.entries_.put(source, entry);
+                } else if ("import".equals(fields[0]) && fields.length == 2 && entry != null) {
+                    entry.header().imports().add(fields[1]);
+                } else if ("output".equals(fields[0]) && fields.length == 2 && entry != null) {
+                    entry.outputs().add(fields[1]);
+                } else {
+                    return null;
+                }
+            }
+            return manifest;
+        } catch (IOException | RuntimeException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Could not read Kawa manifest: " + file.getAbsolutePath());
+            }
+            return null;
+        }
+    }
+
+    private static String value(String line, String key) {
+        var fields = line.split("\t", -1);
+        if (fields.length != 2 || !key.equals(fields[0])) {
+            throw new IllegalArgumentException("Expected " + key + ", got: " + line);
+        }
+        return fields[1];
+    }
+
+    /**
+     * Determines whether the outputs recorded in this manifest can be reused for a new compilation.
+     *
+     * @param other the manifest for the new compilation
+     * @return {@code true} if the Kawa version, compile options, compile classpath and destination are identical
+     */
+    boolean isCompatible(KawaSourceManifest other) {
+        return other != null
+                && Objects.equals(kawaVersion_, other.kawaVersion_)
+                && Objects.equals(options_, other.options_)
+                && Objects.equals(classpath_, other.classpath_)
+                && Objects.equals(destination_, other.destination_);
+    }
+
+    /**
+     * Determines whether this manifest records the outputs of the given build destination.
+     *
+     * @param destination the build destination directory
+     * @return {@code true} if the destination is the same
+     */
+    boolean isDestination(File destination) {
+        return destination_.equals(destination.getAbsolutePath());
+    }
+
+    /**
+     * Retrieves the class files compiled from all the sources in this manifest.
+     *
+     * @return the class files, relative to the destination directory
+     */
+    Set<String> outputs() {
+        var outputs = new TreeSet<String>();
+        entries_.values().forEach(entry -> outputs.addAll(entry.outputs()));
+        return outputs;
+    }
+
+    /**
+     * Retrieves the entry of a source file.
+     *
+     * @param source the source file
+     * @return the entry, or {@code null} if none
+     */
+    Entry entry(File source) {
+        return entries_.get(source.getAbsolutePath());
+    }
+
+    /**
+     * Retrieves the fingerprint of a jar on the compile classpath.
+     *
+     * @param jar the jar file
+     * @return the fingerprint, or {@code null} if none
+     */
+    Entry jar(File jar) {
+        return jars_.get(jar.getAbsolutePath());
+    }
+
+    /**
+     * Records the fingerprint of a jar on the compile classpath.
+     *
+     * @param jar   the jar file
+     * @param entry the fingerprint, as computed by {@link #fingerprint(File, Entry)}
+     */
+    void putJar(File jar, Entry entry) {
+        jars_.put(jar.getAbsolutePath(), entry);
+    }
+
+    /**
+     * Records the entry of a source file.
+     *
+     * @param source the source file
+     * @param entry  the entry
+     */
+    void put(File source, Entry entry) {
+        entries_.put(source.getAbsolutePath(), entry);
+    }
+
+    /**
+     * Retrieves the source paths recorded in this manifest.
+     *
+     * @return the absolute source paths
+     */
+    Collection<String> sources() {
+        return entries_.keySet();
+    }
+
+    /**
+     * Saves this manifest.
+     *
+     * @param file the manifest file
+     * @throws IOException if the manifest could not be written
+     */
+    void save(File file) throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add(HEADER);
+        lines.add("kawa\t" + kawaVersion_);
+        lines.add("options\t" + options_);
+        lines.add("classpath\t" + classpath_);
+        lines.add("destination\t" + destination_);
+        jars_.forEach((jar, entry) -> lines.add(String.join("\t", "jar", jar, entry.hash(),
+                String.valueOf(entry.size()), String.valueOf(entry.modified()))));
+        entries_.forEach((source, entry) -> {
+            lines.add(String.join("\t", "source", source, entry.hash(), String.valueOf(entry.size()),
+                    String.valueOf(entry.modified())));
+            if (entry.header() != null) {
+                if (entry.header().name() != null) {
+                    lines.add("module\t" + entry.header().name());
+                }
+                entry.header().imports().forEach(name -> lines.add("import\t" + name));
+            }
+            entry.outputs().forEach(output -> lines.add("output\t" + output));
+        });
+
+        var parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A manifest entry.
+     *
+     * @param hash     the SHA-256 hash of the source content
+     * @param size     the size of the source
+     * @param modified the modification time of the source
+     * @param header   the module header of the source, may be {@code null} if it was not read yet
+     * @param outputs  the class files compiled from the source, relative to the destination directory
+     */
+    record Entry(String hash, long size, long modified, KawaModuleHeader header, List<String> outputs) {
+        /**
+         * Returns a copy of this entry with the given header.
+         *
+         * @param header the header
+         * @return the new entry
+         */
+        Entry withHeader(KawaModuleHeader header) {
+            return new Entry(hash, size, modified, header, outputs);
+        }
+
+        /**
+         * Returns a copy of this entry with the given outputs.
+         *
+         * @param outputs the outputs
+         * @return the new entry
+         */
+        Entry withOutputs(List<String> outputs) {
+            return new Entry(hash, size, modified, header, new ArrayList<>(outputs));
+        }
+
+        /**
+         * Determines whether the source has the same content as another entry.
+         *
+         * @param other the other entry, may be {@code null}
+         * @return {@code true} if the content hashes are identical
+         */
+        boolean isSameContent(Entry other) {
+            return other != null && hash.equals(other.hash);
+        }
+
+        /**
+         * Determines whether all the outputs still exist.
+         * <p>
+         * A source without any recorded output is never considered intact, since every Kawa module compiles to at
+         * least one class.
+         *
+         * @param destination the destination directory
+         * @return {@code true} if all the outputs exist
+         */
+        boolean isIntact(File destination) {
+            if (outputs.isEmpty()) {
+                return false;
+            }
+            for (var output : outputs) {
+                if (!new File(destination, output).isFile()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Discovers Kawa sources in directories.
+ * <p>
+ * Sources are recognized by their extension. The Kawa files and subdirectories of each directory can be kept in a
+ * snapshot keyed by the directory modification time, which only changes when entries are added, removed or renamed.
+ * On the next scan, unchanged directories are not listed again, only their subdirectories are checked.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaSourceScanner {
+    /**
+     * The extensions of Kawa sources.
+     */
+    static final List<String> EXTENSIONS = List.of(".scm", ".sld");
+    private static final String HEADER = "# bld-kawa source snapshot";
+    private static final Logger LOGGER = Logger.getLogger(KawaSourceScanner.class.getName());
+    // directories modified more recently could still change within the same timestamp
+    private static final long RACY_MICROS = 2_000_000L;
+    private final List<PathMatcher> excludes_ = new ArrayList<>();
+    private final Map<String, Snapshot> next_ = new LinkedHashMap<>();
+    private final Map<String, Snapshot> previous_ = new HashMap<>();
+    private final File snapshotFile_;
+    private final Set<Path> visitedLinks_ = new HashSet<>();
+    private long now_;
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param excludes     the glob patterns of the sources to exclude, relative to their source directory
+     * @param snapshotFile the file to keep the directory snapshot in, or {@code null} for none
+     */
+    KawaSourceScanner(Collection<String> excludes, File snapshotFile) {
+        var fileSystem = FileSystems.getDefault();
+        excludes.forEach(glob -> excludes_.add(fileSystem.getPathMatcher("glob:" + glob)));
+        snapshotFile_ = snapshotFile;
+        if (snapshotFile != null) {
+            load(snapshotFile);
+        }
+    }
+
+    /**
+     * Determines whether a file name has a Kawa source extension.
+     *
+     * @param name the file name
+     * @return {@code true} if the file is a Kawa source
+     */
+    static boolean isKawaFile(String name) {
+        for (var extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExcluded(Path relative) {
+        for (var exclude : excludes_) {
+            if (exclude.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void load(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            var lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !HEADER.equals(lines.get(0))) {
+                return;
+            }
+            Snapshot snapshot = null;
+            for (var line : lines.subList(1, lines.size())) {
+                var fields = line.split("\t", -1);
+                if ("dir".equals(fields[0]) && fields.length == 3) {
+                    snapshot = new Snapshot(Long.parseLong(fields[2]), new ArrayList<>(), new ArrayList<>());
+                    previous_.put(fields[1], snapshot);
+                } else if ("file".equals(fields[0]) && fields.length == 2 && snapshot != null) {
+                    snapshot.files().add(fields[1]);
+                } else if ("sub".equals(fields[0]) && fields.length == 2 && snapshot != null) {
+                    snapshot.directories().add(fields[1]);
+                } else {
+                    previous_.clear();
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            previous_.clear();
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Could not read Kawa source snapshot: " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Saves the snapshot of the directories scanned so far, if a snapshot file was provided.
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    void save() throws IOException {
+        if (snapshotFile_ == null || next_.equals(previous_)) {
+            return;
+        }
+        var lines = new ArrayList<String>();
+        lines.add(HEADER);
+        next_.forEach((directory, snapshot) -> {
+            lines.add("dir\t" + directory + '\t' + snapshot.modified());
+            snapshot.files().forEach(name -> lines.add("file\t" + name));
+            snapshot.directories().forEach(name -> lines.add("sub\t" + name));
+        });
+
+        var parent = snapshotFile_.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+        }
+        Files.write(snapshotFile_.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Collects the Kawa sources from individual files and directories.
+     * <p>
+     * Files are only included once, even if they are both listed individually and found in a directory, or found
+     * both directly and through a linked directory: individual files are canonical, and a file found in a directory
+     * keeps the path it was first found at, inside its source directory. The exclude patterns only apply to the files
+     * found in directories.
+     *
+     * @param files       the individual source files
+     * @param directories the source directories
+     * @return the sources, individual files first
+     * @throws IOException if a directory could not be read
+     */
+    List<File> scan(Collection<File> files, Collection<File> directories) throws IOException {
+        now_ = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        var sources = new LinkedHashMap<File, File>();
+        for (var file : files) {
+            var canonical = file.getCanonicalFile();
+            sources.putIfAbsent(canonical, canonical);
+        }
+        for (var directory : directories) {
+            if (directory == null) {
+                continue;
+            }
+            if (!directory.isDirectory()) {
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.warning("Directory not found: " + directory.getAbsolutePath());
+                }
+                continue;
+            }
+            var root = directory.getCanonicalFile().toPath();
+            scan(root, root, sources);
+        }
+        return new ArrayList<>(sources.values());
+    }
+
+    // Collects the sources of a directory, by canonical file
+    private void scan(Path root, Path directory, Map<File, File> sources) throws IOException {
+        var key = directory.toString();
+        var modified = Files.getLastModifiedTime(directory).to(TimeUnit.MICROSECONDS);
+        var snapshot = previous_.get(key);
+        if (snapshot == null || snapshot.modified() != modified || now_ - modified < RACY_MICROS) {
+            snapshot = list(directory, modified);
+        }
+        next_.put(key, snapshot);
+
+        for (var name : snapshot.files()) {
+            var file = directory.resolve(name);
+            if (!isExcluded(root.relativize(file))) {
+                sources.putIfAbsent(file.toFile().getCanonicalFile(), file.toFile());
+            }
+        }
+        for (var name : snapshot.directories()) {
+            var subdirectory = directory.resolve(name);
+            if (!isExcluded(root.relativize(subdirectory)) && Files.isDirectory(subdirectory)) {
+                scan(root, subdirectory, sources);
+            }
+        }
+    }
+
+    // Lists the Kawa files and subdirectories of a directory
+    private Snapshot list(Path directory, long modified) throws IOException {
+        var files = new ArrayList<String>();
+        var directories = new ArrayList<String>();
+        try (var entries = Files.newDirectoryStream(directory)) {
+            for (var entry : entries) {
+                var attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                var name = entry.getFileName().toString();
+                if (attributes.isSymbolicLink()) {
+                    if (Files.isDirectory(entry)) {
+                        // only follow each linked directory once, to avoid cycles
+                        if (visitedLinks_.add(entry.toRealPath())) {
+                            directories.add(name);
+                        }
+                        continue;
+                    }
+                } else if (attributes.isDirectory()) {
+                    directories.add(name);
+                    continue;
+                }
+                if (isKawaFile(name)) {
+                    files.add(name);
+                }
+            }
+        }
+        files.sort(null);
+        directories.sort(null);
+        return new Snapshot(modified, files, directories);
+    }
+
+    /**
+     * The Kawa files and subdirectories of a directory.
+     *
+     * @param modified    the modification time of the directory, in microseconds
+     * @param files       the names of the Kawa files
+     * @param directories the names of the subdirectories
+     */
+    private record Snapshot(long modified, List<String> files, List<String> directories) {
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the syntax of Kawa sources, reading their headers along the way.
+ * <p>
+ * The sources are read in parallel on the common fork-join pool with the {@link KawaForms} reader, nothing is
+ * compiled. All the sources are read, even when some are not well-formed, so that their errors can be reported at
+ * once.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaSyntaxCheck {
+    private final List<String> errors_;
+    private final Map<File, KawaModuleHeader> headers_;
+
+    private KawaSyntaxCheck(Map<File, KawaModuleHeader> headers, List<String> errors) {
+        headers_ = headers;
+        errors_ = errors;
+    }
+
+    /**
+     * Checks the syntax of sources.
+     *
+     * @param sources the source files
+     * @return the result of the check
+     * @throws IOException if a source could not be read
+     */
+    static KawaSyntaxCheck check(Collection<File> sources) throws IOException {
+        List<Read> reads;
+        try {
+            reads = sources.parallelStream().map(KawaSyntaxCheck::read).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        var headers = new LinkedHashMap<File, KawaModuleHeader>();
+        var errors = new ArrayList<String>();
+        for (var read : reads) {
+            headers.put(read.source(), read.header());
+            if (read.error() != null) {
+                errors.add(read.source().getPath() + ": " + read.error());
+            }
+        }
+        return new KawaSyntaxCheck(headers, errors);
+    }
+
+    private static Read read(File source) {
+        try {
+            return new Read(source, KawaModuleHeader.read(source), null);
+        } catch (IllegalArgumentException e) {
+            return new Read(source, new KawaModuleHeader(null, List.of()), e.getMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retrieves the syntax errors, in the order of the sources.
+     *
+     * @return the errors, each prefixed with the path of its source
+     */
+    List<String> errors() {
+        return errors_;
+    }
+
+    /**
+     * Retrieves the headers of the sources.
+     * <p>
+     * Sources that are not well-formed have an empty header.
+     *
+     * @return the headers, in the order of the sources
+     */
+    Map<File, KawaModuleHeader> headers() {
+        return headers_;
+    }
+
+    // The outcome of reading a single source
+    private record Read(File source, KawaModuleHeader header, String error) {
+    }
+}
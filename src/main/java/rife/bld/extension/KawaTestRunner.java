@@ -0,0 +1,207 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+import kawa.standard.Scheme;
+
+/**
+ * Runs compiled Kawa test modules in a forked JVM.
+ * <p>
+ * The runner reads the class name of a module on each line of its standard input, runs the module, and writes its
+ * result on a single line of its standard output, until the standard input is closed. The output of each module is
+ * captured, and the summary printed by the SRFI-64 simple test runner is read to count its passed, failed and skipped
+ * tests. If a module exits the JVM, its output so far is saved to {@code <module>}{@value #EXIT_OUTPUT} in the working
+ * directory of the runner.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public final class KawaTestRunner {
+    /**
+     * The prefix of a result line.
+     */
+    static final String RESULT = "result";
+    /**
+     * The suffix of the file the output of a module that exits the JVM is saved to.
+     */
+    static final String EXIT_OUTPUT = ".exit.out";
+    private static final Pattern SUMMARY = Pattern.compile(
+            "^# of (expected passes|expected failures|unexpected failures|unexpected successes|skipped tests)"
+                    + "\\s+(\\d+)", Pattern.MULTILINE);
+    private final Scheme scheme_ = Scheme.getInstance();
+
+    /**
+     * Starts the runner.
+     *
+     * @param args no arguments
+     * @throws IOException if a module name could not be read or a result could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        // keep the output of the tests out of the results
+        var out = System.out;
+        System.setOut(System.err);
+
+        var runner = new KawaTestRunner();
+        var in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        String module;
+        while ((module = in.readLine()) != null) {
+            writer.write(runner.run(module).toLine());
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    /**
+     * Runs a test module.
+     *
+     * @param module the class name of the module
+     * @return the result
+     */
+    Result run(String module) {
+        var start = System.nanoTime();
+        var output = "";
+        String error = null;
+        var hook = new Thread(() -> saveOutput(module));
+        Runtime.getRuntime().addShutdownHook(hook);
+        try {
+            scheme_.eval("(define kawa-test-output (open-output-string))");
+            try {
+                scheme_.eval("(parameterize ((current-output-port kawa-test-output)"
+                        + " (current-error-port kawa-test-output))"
+                        + " (eval '(require <" + module + ">) (interaction-environment)))");
+            } finally {
+                output = String.valueOf(scheme_.eval("(get-output-string kawa-test-output)"));
+            }
+        } catch (Throwable e) {
+            error = KawaCompilerDaemon.singleLine(e);
+        } finally {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        }
+        return Result.of(module, Duration.ofNanos(System.nanoTime() - start), output, error);
+    }
+
+    /**
+     * Determines whether the output of a module has the summary of the SRFI-64 simple test runner.
+     *
+     * @param output the output of the module
+     * @return {@code true} if the summary was printed
+     */
+    static boolean hasSummary(String output) {
+        return SUMMARY.matcher(output).find();
+    }
+
+    // Saves the output of a module that is exiting the JVM
+    private void saveOutput(String module) {
+        try {
+            Files.writeString(Path.of(module + EXIT_OUTPUT),
+                    String.valueOf(scheme_.eval("(get-output-string kawa-test-output)")), StandardCharsets.UTF_8);
+        } catch (Throwable e) {
+            // the output is lost, the exit is still reported
+        }
+    }
+
+    /**
+     * The result of a test module.
+     *
+     * @param module  the class name of the module
+     * @param time    the time the module took to run
+     * @param passed  the number of passed tests, including expected failures
+     * @param failed  the number of failed tests, including unexpected successes
+     * @param skipped the number of skipped tests
+     * @param error   the error that stopped the module, or {@code null} if it completed
+     * @param output  the output of the module
+     */
+    record Result(String module, Duration time, int passed, int failed, int skipped, String error, String output) {
+        /**
+         * Creates the result of a module from its output.
+         *
+         * @param module the class name of the module
+         * @param time   the time the module took to run
+         * @param output the output of the module, with the summary of the SRFI-64 simple test runner
+         * @param error  the error that stopped the module, or {@code null} if it completed
+         * @return the result
+         */
+        static Result of(String module, Duration time, String output, String error) {
+            var passed = 0;
+            var failed = 0;
+            var skipped = 0;
+            var matcher = SUMMARY.matcher(output);
+            while (matcher.find()) {
+                var count = Integer.parseInt(matcher.group(2));
+                switch (matcher.group(1)) {
+                    case "expected passes", "expected failures" -> passed += count;
+                    case "unexpected failures", "unexpected successes" -> failed += count;
+                    default -> skipped += count;
+                }
+            }
+            return new Result(module, time, passed, failed, skipped, error, output);
+        }
+
+        /**
+         * Parses a result line.
+         *
+         * @param line the result line
+         * @return the result, or {@code null} if the line is not a result
+         */
+        static Result parse(String line) {
+            var fields = line.split("\t", -1);
+            if (fields.length != 8 || !RESULT.equals(fields[0])) {
+                return null;
+            }
+            var decoder = Base64.getDecoder();
+            var error = new String(decoder.decode(fields[6]), StandardCharsets.UTF_8);
+            return new Result(fields[1], Duration.ofMillis(Long.parseLong(fields[2])), Integer.parseInt(fields[3]),
+                    Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), error.isEmpty() ? null : error,
+                    new String(decoder.decode(fields[7]), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Determines whether the module completed without failed tests.
+         *
+         * @return {@code true} if the module succeeded
+         */
+        boolean isSuccessful() {
+            return error == null && failed == 0;
+        }
+
+        /**
+         * Converts this result to a single line.
+         *
+         * @return the result line
+         */
+        String toLine() {
+            var encoder = Base64.getEncoder();
+            return String.join("\t", RESULT, module, String.valueOf(time.toMillis()), String.valueOf(passed),
+                    String.valueOf(failed), String.valueOf(skipped),
+                    encoder.encodeToString((error == null ? "" : error).getBytes(StandardCharsets.UTF_8)),
+                    encoder.encodeToString(output.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool of {@link ForkedKawaCompiler forked compiler workers}.
+ * <p>
+ * Workers are started on demand, and returned to the pool once the compiler acquired from it is closed, so that they
+ * can be reused by the following compilations, e.g. of the test sources after the main sources. Workers that exited,
+ * most likely because of a compile error, are discarded.
+ * <p>
+ * A pool can be kept for several builds, e.g. while watching the sources. The workers then reload the modules whose
+ * class files changed once per build, when first acquired after {@link #reload()}, rather than before each compile
+ * request.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+final class KawaWorkerPool implements Closeable {
+    // the build each worker was last reloaded for
+    private final Map<ForkedKawaCompiler, Long> builds_ = new HashMap<>();
+    private final Deque<ForkedKawaCompiler> idle_ = new ArrayDeque<>();
+    private final List<String> jvmOptions_;
+    private final List<ForkedKawaCompiler> workers_ = new ArrayList<>();
+    private long build_;
+
+    /**
+     * Creates a new worker pool.
+     *
+     * @param jvmOptions the options of the worker JVMs
+     */
+    KawaWorkerPool(List<String> jvmOptions) {
+        jvmOptions_ = List.copyOf(jvmOptions);
+    }
+
+    /**
+     * Acquires a worker, starting a new one if none is idle.
+     *
+     * @param classpath the directories and jars the compiler can load modules from, besides the destination
+     * @return a compiler using the worker, that returns it to the pool when closed
+     * @throws IOException if a worker could not be started
+     */
+    KawaCompiler acquire(Collection<File> classpath) throws IOException {
+        return acquire(classpath, List.of());
+    }
+
+    /**
+     * Acquires a worker, starting a new one if none is idle.
+     *
+     * @param classpath the directories and jars the compiler can load modules from, besides the destination
+     * @param options   the arguments of the {@link KawaCompileOptions compile options}
+     * @return a compiler using the worker, that returns it to the pool when closed
+     * @throws IOException if a worker could not be started
+     */
+    KawaCompiler acquire(Collection<File> classpath, List<String> options) throws IOException {
+        ForkedKawaCompiler worker;
+        var reload = false;
+        synchronized (this) {
+            worker = idle_.poll();
+            while (worker != null && !worker.isAlive()) {
+                discard(worker);
+                worker = idle_.poll();
+            }
+            if (worker != null) {
+                var built = builds_.put(worker, build_);
+                reload = built == null || built < build_;
+            }
+        }
+        if (reload) {
+            try {
+                worker.reload();
+            } catch (IOException e) {
+                synchronized (this) {
+                    discard(worker);
+                }
+                worker.close();
+                worker = null;
+            }
+        }
+        if (worker == null) {
+            worker = new ForkedKawaCompiler(jvmOptions_);
+            synchronized (this) {
+                workers_.add(worker);
+                builds_.put(worker, build_);
+            }
+        }
+
+        var acquired = worker;
+        var entries = List.copyOf(classpath);
+        var args = List.copyOf(options);
+        return new KawaCompiler() {
+            @Override
+            public void compile(List<File> sources, File destination) throws IOException {
+                acquired.compile(sources, destination, entries, args);
+            }
+
+            @Override
+            public void close() throws IOException {
+                release(acquired);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<ForkedKawaCompiler> workers;
+        synchronized (this) {
+            workers = new ArrayList<>(workers_);
+            workers_.clear();
+            idle_.clear();
+            builds_.clear();
+        }
+        IOException failure = null;
+        for (var worker : workers) {
+            try {
+                worker.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Forgets a worker that is no longer usable
+    private void discard(ForkedKawaCompiler worker) {
+        workers_.remove(worker);
+        builds_.remove(worker);
+    }
+
+    private void release(ForkedKawaCompiler worker) throws IOException {
+        synchronized (this) {
+            if (worker.isAlive() && workers_.contains(worker)) {
+                idle_.push(worker);
+                return;
+            }
+            discard(worker);
+        }
+        worker.close();
+    }
+
+    /**
+     * Starts a new build, after which the workers reload the modules whose class files changed.
+     */
+    synchronized void reload() {
+        build_++;
+    }
+
+    /**
+     * Retrieves the number of workers started and not discarded.
+     *
+     * @return the number of workers
+     */
+    synchronized int size() {
+        return workers_.size();
+    }
+}
@@ -0,0 +1,647 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import rife.bld.BaseProject;
+import rife.bld.operations.AbstractOperation;
+
+/**
+ * Runs compiled Kawa test modules, such as SRFI-64 test suites, in parallel forked JVMs.
+ * <p>
+ * The test modules are the modules compiled from the Kawa test sources to the {@link #testDirectory() test directory},
+ * as recorded by {@link CompileKawaOperation} in its {@link #workDirectory() work directory}. They are split into
+ * {@link #forks(int) shards}, balanced by the time each module took in the previous runs, and each shard runs in its
+ * own JVM. The results of all the shards are merged into a single JUnit XML report.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public class TestKawaOperation extends AbstractOperation<TestKawaOperation> {
+    /**
+     * The name of the JUnit XML report.
+     */
+    public static final String REPORT = "TEST-kawa.xml";
+    private static final long EXIT_SECONDS = 10L;
+    private static final Logger LOGGER = Logger.getLogger(TestKawaOperation.class.getName());
+    private static final String TIMINGS = "timings.tsv";
+    private final List<String> classpath_ = new ArrayList<>();
+    private final List<String> jvmOptions_ = new ArrayList<>();
+    private final List<KawaTestRunner.Result> results_ = new ArrayList<>();
+    private int forks_ = Runtime.getRuntime().availableProcessors();
+    private File reportDirectory_;
+    private File testDirectory_;
+    private File timingsFile_;
+    private File workDirectory_;
+
+    /**
+     * Lists the test modules compiled to a directory.
+     * <p>
+     * These are the module classes of the Kawa sources recorded in the manifest of the compilation, so that the other
+     * classes of the directory, e.g. compiled by javac, are not run.
+     *
+     * @param manifestFile the manifest of the compilation of the test sources
+     * @param directory    the directory the test sources were compiled to
+     * @return the class names of the modules, sorted
+     */
+    static List<String> modules(File manifestFile, File directory) {
+        var manifest = KawaSourceManifest.load(manifestFile);
+        if (manifest == null || !manifest.isDestination(directory)) {
+            if (directory.isDirectory() && LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("No Kawa manifest of the test modules compiled to " + directory.getPath()
+                        + ", expected " + manifestFile.getPath());
+            }
+            return List.of();
+        }
+        var modules = new TreeSet<String>();
+        for (var path : manifest.sources()) {
+            var entry = manifest.entry(new File(path));
+            var moduleClass = KawaModuleRegistry.moduleClass(entry.header() == null ? null : entry.header().name(),
+                    entry.outputs());
+            if (moduleClass != null) {
+                modules.add(moduleClass);
+            }
+        }
+        return new ArrayList<>(modules);
+    }
+
+    /**
+     * Splits modules into balanced shards.
+     * <p>
+     * The modules are assigned from the longest to the shortest to the shard with the least total time. Modules
+     * without a previous timing are assumed to take the average time of the others.
+     *
+     * @param modules the class names of the modules
+     * @param timings the previous time of each module, in milliseconds
+     * @param count   the maximum number of shards
+     * @return the shards, none of them empty
+     */
+    static List<List<String>> shards(Collection<String> modules, Map<String, Long> timings, int count) {
+        var known = modules.stream().filter(timings::containsKey).mapToLong(timings::get).toArray();
+        var average = known.length == 0 ? 1L : Math.max(1L, Arrays.stream(known).sum() / known.length);
+        var sorted = new ArrayList<>(modules);
+        sorted.sort(Comparator.<String>comparingLong(module -> timings.getOrDefault(module, average)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+
+        var shards = new ArrayList<List<String>>();
+        var totals = new long[Math.min(count, sorted.size())];
+        for (var i = 0; i < totals.length; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (var module : sorted) {
+            var lightest = 0;
+            for (var i = 1; i < totals.length; i++) {
+                if (totals[i] < totals[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).add(module);
+            totals[lightest] += timings.getOrDefault(module, average);
+        }
+        return shards;
+    }
+
+    /**
+     * Renders test results as a JUnit XML report, with a test suite for each module.
+     *
+     * @param results the results
+     * @return the XML report
+     */
+    static String junitXml(List<KawaTestRunner.Result> results) {
+        var failures = results.stream().filter(result -> result.error() == null && result.failed() > 0).count();
+        var errors = results.stream().filter(result -> result.error() != null).count();
+        var time = results.stream().map(KawaTestRunner.Result::time).reduce(Duration.ZERO, Duration::plus);
+
+        var xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<testsuites name=\"kawa\" tests=\"").append(results.size()).append("\" failures=\"")
+                .append(failures).append("\" errors=\"").append(errors).append("\" time=\"").append(seconds(time))
+                .append("\">\n");
+        for (var result : results) {
+            var module = xml(result.module());
+            xml.append("  <testsuite name=\"").append(module).append("\" tests=\"1\" failures=\"")
+                    .append(result.error() == null && result.failed() > 0 ? 1 : 0).append("\" errors=\"")
+                    .append(result.error() == null ? 0 : 1).append("\" skipped=\"0\" time=\"")
+                    .append(seconds(result.time())).append("\">\n");
+            xml.append("    <properties>\n");
+            xml.append("      <property name=\"passed\" value=\"").append(result.passed()).append("\"/>\n");
+            xml.append("      <property name=\"failed\" value=\"").append(result.failed()).append("\"/>\n");
+            xml.append("      <property name=\"skipped\" value=\"").append(result.skipped()).append("\"/>\n");
+            xml.append("    </properties>\n");
+            xml.append("    <testcase classname=\"").append(module).append("\" name=\"").append(module)
+                    .append("\" time=\"").append(seconds(result.time())).append("\">\n");
+            if (result.error() != null) {
+                xml.append("      <error message=\"").append(xml(result.error())).append("\"/>\n");
+            } else if (result.failed() > 0) {
+                xml.append("      <failure message=\"").append(result.failed()).append(" failed test(s)\"/>\n");
+            }
+            xml.append("      <system-out><![CDATA[")
+                    .append(xmlText(result.output()).replace("]]>", "]]]]><![CDATA[>"))
+                    .append("]]></system-out>\n");
+            xml.append("    </testcase>\n");
+            xml.append("  </testsuite>\n");
+        }
+        return xml.append("</testsuites>\n").toString();
+    }
+
+    // Formats a duration in seconds, as in JUnit XML reports
+    private static String seconds(Duration duration) {
+        return String.format(Locale.ROOT, "%.3f", duration.toMillis() / 1000.0);
+    }
+
+    // Escapes a value for an XML attribute
+    private static String xml(String value) {
+        return xmlText(value).replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+
+    // Removes the characters that are not allowed in XML
+    private static String xmlText(String value) {
+        var text = new StringBuilder(value.length());
+        value.codePoints().forEach(c -> {
+            if (c == '\t' || c == '\n' || c == '\r' || (c >= 0x20 && c != 0xfffe && c != 0xffff)) {
+                text.appendCodePoint(c);
+            }
+        });
+        return text.toString();
+    }
+
+    /**
+     * Provides the classpath the tests run with, besides the test directory.
+     *
+     * @param classpath one or more classpath entries
+     * @return this operation instance
+     */
+    public TestKawaOperation classpath(String... classpath) {
+        classpath_.addAll(List.of(classpath));
+        return this;
+    }
+
+    /**
+     * Provides the classpath the tests run with, besides the test directory.
+     *
+     * @param classpath the classpath entries
+     * @return this operation instance
+     */
+    public TestKawaOperation classpath(Collection<String> classpath) {
+        classpath_.addAll(classpath);
+        return this;
+    }
+
+    /**
+     * Retrieves the classpath the tests run with, besides the test directory.
+     *
+     * @return the classpath entries
+     */
+    public List<String> classpath() {
+        return classpath_;
+    }
+
+    /**
+     * Runs the test modules, writes the JUnit XML report and records the time of each module.
+     *
+     * @throws IOException if a test module failed, or an error occurs
+     */
+    @Override
+    @SuppressWarnings("PMD.SystemPrintln")
+    public void execute() throws IOException {
+        if (testDirectory_ == null) {
+            throw new IllegalArgumentException("A test directory must be specified.");
+        }
+        if (reportDirectory_ == null) {
+            throw new IllegalArgumentException("A report directory must be specified.");
+        }
+
+        results_.clear();
+        var modules = modules(new File(workDirectory(), testDirectory_.getName() + ".manifest"), testDirectory_);
+        if (modules.isEmpty()) {
+            if (!silent()) {
+                System.out.println("No Kawa test modules to run.");
+            }
+            return;
+        }
+
+        executeRunShards(shards(modules, timings(), forks_));
+        executeWriteReport();
+
+        var failed = results_.stream().filter(result -> !result.isSuccessful()).toList();
+        if (!silent()) {
+            System.out.println("Ran " + results_.size() + " Kawa test module(s), " + failed.size() + " failed.");
+        }
+        if (!failed.isEmpty()) {
+            throw new IOException("Kawa tests failed: " + String.join(", ",
+                    failed.stream().map(KawaTestRunner.Result::module).toList()));
+        }
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, runs each shard of test modules in its own JVM.
+     *
+     * @param shards the class names of the modules of each shard
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings("PMD.SystemPrintln")
+    protected void executeRunShards(List<List<String>> shards) throws IOException {
+        var classpath = new ArrayList<String>();
+        classpath.add(testDirectory_.getAbsolutePath());
+        classpath.addAll(classpath_);
+        classpath.add(DaemonKawaCompiler.classpath());
+        var path = String.join(File.pathSeparator, classpath);
+
+        if (!silent()) {
+            System.out.println("Running " + shards.stream().mapToInt(List::size).sum() + " Kawa test module(s) in "
+                    + shards.size() + " JVM(s).");
+        }
+        var executor = Executors.newFixedThreadPool(shards.size());
+        try {
+            var futures = new ArrayList<Future<List<KawaTestRunner.Result>>>();
+            for (var i = 0; i < shards.size(); i++) {
+                var index = i;
+                futures.add(executor.submit(() -> runShard(index, shards.get(index), path)));
+            }
+            for (var future : futures) {
+                results_.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the Kawa tests.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        results_.sort(Comparator.comparing(KawaTestRunner.Result::module));
+    }
+
+    /**
+     * Part of the {@link #execute execute} operation, writes the JUnit XML report and the time of each module.
+     *
+     * @throws IOException if an error occurs
+     */
+    protected void executeWriteReport() throws IOException {
+        Files.createDirectories(reportDirectory_.toPath());
+        Files.writeString(new File(reportDirectory_, REPORT).toPath(), junitXml(results_), StandardCharsets.UTF_8);
+
+        // keep the timings of the modules that did not run this time
+        var timings = new TreeMap<>(timings());
+        for (var result : results_) {
+            timings.put(result.module(), result.time().toMillis());
+        }
+        var lines = new ArrayList<String>();
+        timings.forEach((module, millis) -> lines.add(module + '\t' + millis));
+        var file = timingsFile();
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Provides the number of JVMs the test modules are run in.
+     * <p>
+     * Defaults to the number of available processors.
+     *
+     * @param forks the number of JVMs
+     * @return this operation instance
+     */
+    public TestKawaOperation forks(int forks) {
+        if (forks < 1) {
+            throw new IllegalArgumentException("The number of forks must be at least 1.");
+        }
+        forks_ = forks;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of JVMs the test modules are run in.
+     *
+     * @return the number of JVMs
+     */
+    public int forks() {
+        return forks_;
+    }
+
+    /**
+     * Configures a test operation from a {@link BaseProject}.
+     * <p>
+     * Sets the following from the project:
+     * <ul>
+     *     <li>{@link #testDirectory() testDirectory} to the
+     *     {@link BaseProject#buildTestDirectory() buildTestDirectory}</li>
+     *     <li>{@link #classpath() classpath} to the test classpath</li>
+     *     <li>{@link #reportDirectory() reportDirectory} to {@code test-results/kawa} in the build directory</li>
+     * </ul>
+     *
+     * @param project the project to configure the test operation from
+     * @return this operation instance
+     */
+    public TestKawaOperation fromProject(BaseProject project) {
+        return testDirectory(project.buildTestDirectory())
+                .classpath(project.testClasspath())
+                .reportDirectory(new File(project.buildDirectory(), "test-results" + File.separator + "kawa"));
+    }
+
+    /**
+     * Provides options of the JVMs the tests run in, e.g. {@code -Xmx256m}.
+     *
+     * @param options one or more JVM options
+     * @return this operation instance
+     */
+    public TestKawaOperation jvmOptions(String... options) {
+        jvmOptions_.addAll(List.of(options));
+        return this;
+    }
+
+    /**
+     * Provides options of the JVMs the tests run in, e.g. {@code -Xmx256m}.
+     *
+     * @param options the JVM options
+     * @return this operation instance
+     */
+    public TestKawaOperation jvmOptions(Collection<String> options) {
+        jvmOptions_.addAll(options);
+        return this;
+    }
+
+    /**
+     * Retrieves the options of the JVMs the tests run in.
+     *
+     * @return the JVM options
+     */
+    public List<String> jvmOptions() {
+        return jvmOptions_;
+    }
+
+    /**
+     * Provides the directory of the JUnit XML report.
+     * <p>
+     * The tests run in a {@code shard-<n>} subdirectory of this directory, where the SRFI-64 test logs are written.
+     *
+     * @param directory the report directory
+     * @return this operation instance
+     */
+    public TestKawaOperation reportDirectory(File directory) {
+        reportDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the directory of the JUnit XML report.
+     *
+     * @return the report directory
+     */
+    public File reportDirectory() {
+        return reportDirectory_;
+    }
+
+    /**
+     * Retrieves the results of the last execution, sorted by module.
+     *
+     * @return the results
+     */
+    List<KawaTestRunner.Result> results() {
+        return results_;
+    }
+
+    /**
+     * Provides the directory of the compiled test modules.
+     *
+     * @param directory the test directory
+     * @return this operation instance
+     */
+    public TestKawaOperation testDirectory(File directory) {
+        testDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the directory of the compiled test modules.
+     *
+     * @return the test directory
+     */
+    public File testDirectory() {
+        return testDirectory_;
+    }
+
+    /**
+     * Provides the file the time of each module is recorded in, to balance the shards of the next runs.
+     * <p>
+     * Defaults to {@value #TIMINGS} in the {@link #reportDirectory() report directory}. On CI, persist this file
+     * between runs.
+     *
+     * @param file the timings file
+     * @return this operation instance
+     */
+    public TestKawaOperation timingsFile(File file) {
+        timingsFile_ = file;
+        return this;
+    }
+
+    /**
+     * Retrieves the file the time of each module is recorded in.
+     *
+     * @return the timings file
+     */
+    public File timingsFile() {
+        return timingsFile_ == null ? new File(reportDirectory_, TIMINGS) : timingsFile_;
+    }
+
+    /**
+     * Provides the work directory of the {@link CompileKawaOperation} of the test sources, where the manifest of the
+     * compiled test modules is read from.
+     *
+     * @param directory the work directory
+     * @return this operation instance
+     */
+    public TestKawaOperation workDirectory(File directory) {
+        workDirectory_ = directory;
+        return this;
+    }
+
+    /**
+     * Retrieves the work directory of the {@link CompileKawaOperation} of the test sources.
+     * <p>
+     * Defaults to the {@code kawa} directory next to the {@link #testDirectory() test directory}.
+     *
+     * @return the work directory
+     */
+    public File workDirectory() {
+        if (workDirectory_ == null && testDirectory_ != null) {
+            return new File(testDirectory_.getAbsoluteFile().getParentFile(), "kawa");
+        }
+        return workDirectory_;
+    }
+
+    // Runs the modules of a shard in a forked JVM, starting a new one if a module exits it
+    private List<KawaTestRunner.Result> runShard(int index, List<String> modules, String classpath)
+            throws IOException {
+        var directory = new File(reportDirectory_, "shard-" + index);
+        Files.createDirectories(directory.toPath());
+        var command = new ArrayList<String>();
+        command.add(DaemonKawaCompiler.javaTool());
+        command.addAll(jvmOptions_);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(KawaTestRunner.class.getName());
+
+        var results = new ArrayList<KawaTestRunner.Result>();
+        var remaining = new ArrayDeque<>(modules);
+        while (!remaining.isEmpty()) {
+            var process = new ProcessBuilder(command)
+                    .directory(directory)
+                    .redirectError(ProcessBuilder.Redirect.appendTo(new File(directory, "runner.log")))
+                    .start();
+            try (var in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                 var out = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(),
+                         StandardCharsets.UTF_8))) {
+                while (!remaining.isEmpty()) {
+                    var module = remaining.poll();
+                    var start = System.nanoTime();
+                    var result = request(in, out, module);
+                    if (result == null) {
+                        // the module exited the JVM
+                        results.add(exited(directory, module, Duration.ofNanos(System.nanoTime() - start), process));
+                        break;
+                    }
+                    results.add(result);
+                }
+            } finally {
+                stop(process);
+            }
+        }
+        return results;
+    }
+
+    // Sends a module to a runner, returning its result or null if the runner exited
+    private static KawaTestRunner.Result request(BufferedReader in, BufferedWriter out, String module) {
+        try {
+            out.write(module);
+            out.newLine();
+            out.flush();
+            String line;
+            while ((line = in.readLine()) != null) {
+                var result = KawaTestRunner.Result.parse(line);
+                if (result != null) {
+                    return result;
+                }
+            }
+        } catch (IOException e) {
+            // the runner exited
+        }
+        return null;
+    }
+
+    /**
+     * Determines the error of a module that exited the JVM it ran in.
+     * <p>
+     * Exiting successfully is only a success once the module printed the summary of its tests.
+     *
+     * @param exitValue the exit code of the JVM
+     * @param output    the output of the module until it exited
+     * @return the error, or {@code null} if the module completed
+     */
+    static String exitError(int exitValue, String output) {
+        if (exitValue != 0) {
+            return "The module exited with code " + exitValue + '.';
+        }
+        return KawaTestRunner.hasSummary(output) ? null : "The module exited before the summary of its tests.";
+    }
+
+    // Returns the result of a module that exited the runner, with the output it saved on exit
+    private static KawaTestRunner.Result exited(File directory, String module, Duration time, Process process) {
+        var exited = false;
+        try {
+            exited = process.waitFor(EXIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        var output = "";
+        var file = new File(directory, module + KawaTestRunner.EXIT_OUTPUT);
+        try {
+            if (file.isFile()) {
+                output = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+                Files.delete(file.toPath());
+            }
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Could not read the output of " + module + ": " + e.getMessage());
+            }
+        }
+        return KawaTestRunner.Result.of(module, time, output,
+                exited ? exitError(process.exitValue(), output) : "The module stopped the test runner.");
+    }
+
+    private static void stop(Process process) {
+        try {
+            if (!process.waitFor(EXIT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reads the time of each module recorded by the previous runs
+    private Map<String, Long> timings() {
+        var timings = new HashMap<String, Long>();
+        var file = timingsFile();
+        if (!file.isFile()) {
+            return timings;
+        }
+        try {
+            for (var line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                var fields = line.split("\t");
+                if (fields.length == 2) {
+                    timings.put(fields[0], Long.parseLong(fields[1]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.warning("Could not read the Kawa test timings: " + file.getAbsolutePath());
+            }
+        }
+        return timings;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import rife.bld.BaseProject;
+import rife.bld.operations.AbstractOperation;
+
+/**
+ * Watches Kawa sources and recompiles them as they change.
+ * <p>
+ * The source directories of the {@link #compileOperation() compile operation} are watched recursively, along with
+ * its individual source files. Bursts of changes are coalesced into a single batch, which is then compiled
+ * incrementally, so that only the affected modules are recompiled. The changed sources of each batch are passed to
+ * the compile operation, which then only checks these sources. When the compile operation compiles in
+ * {@link CompileKawaOperation#fork(boolean) forked workers}, the workers stay warm until the watch stops.
+ *
+ * @author Anthony S.
+ * @since 1.0
+ */
+public class WatchKawaOperation extends AbstractOperation<WatchKawaOperation> {
+    private static final Logger LOGGER = Logger.getLogger(WatchKawaOperation.class.getName());
+    private final Map<WatchKey, Path> directories_ = new HashMap<>();
+    private final Set<Path> listedFiles_ = new HashSet<>();
+    private final Set<Path> sourceDirectories_ = new HashSet<>();
+    private int batches_;
+    private CompileKawaOperation compileOperation_;
+    private Duration debounce_ = Duration.ofMillis(200);
+    private volatile WatchService watcher_;
+
+    private static boolean isKawaFile(Path path) {
+        return KawaSourceScanner.isKawaFile(path.getFileName().toString());
+    }
+
+    /**
+     * Retrieves the number of batches of changes compiled so far.
+     *
+     * @return the number of batches
+     */
+    public int batches() {
+        return batches_;
+    }
+
+    /**
+     * Provides the compile operation to run when sources change.
+     * <p>
+     * The operation is made {@link CompileKawaOperation#incremental(boolean) incremental}. Since the Kawa compiler
+     * exits the JVM it runs in when a source has errors, compile in
+     * {@link CompileKawaOperation#fork(boolean) forked workers} or with the
+     * {@link CompileKawaOperation#daemon(boolean) compiler daemon} so that a compile error does not stop the watch.
+     *
+     * @param operation the compile operation
+     * @return this operation instance
+     */
+    public WatchKawaOperation compileOperation(CompileKawaOperation operation) {
+        compileOperation_ = operation.incremental(true);
+        return this;
+    }
+
+    /**
+     * Retrieves the compile operation to run when sources change.
+     *
+     * @return the compile operation
+     */
+    public CompileKawaOperation compileOperation() {
+        return compileOperation_;
+    }
+
+    /**
+     * Provides how long to wait for more changes before compiling a batch.
+     * <p>
+     * Defaults to 200 milliseconds.
+     *
+     * @param debounce the quiet period
+     * @return this operation instance
+     */
+    public WatchKawaOperation debounce(Duration debounce) {
+        debounce_ = debounce;
+        return this;
+    }
+
+    /**
+     * Retrieves how long to wait for more changes before compiling a batch.
+     *
+     * @return the quiet period
+     */
+    public Duration debounce() {
+        return debounce_;
+    }
+
+    /**
+     * Compiles the sources, then watches them and recompiles them as they change, until {@link #stop() stopped}
+     * or interrupted.
+     */
+    @Override
+    @SuppressWarnings("PMD.SystemPrintln")
+    public void execute() throws IOException {
+        if (compileOperation_ == null) {
+            throw new IllegalArgumentException("A compile operation must be specified.");
+        }
+
+        var pool = compileOperation_.isFork() ? new KawaWorkerPool(compileOperation_.jvmOptions()) : null;
+        try (var watcher = FileSystems.getDefault().newWatchService()) {
+            watcher_ = watcher;
+            // the workers are kept for the whole watch
+            compileOperation_.workerPool(pool);
+            register(watcher, compileOperation_.mainSourceDirectories(), compileOperation_.mainSourceFiles());
+            register(watcher, compileOperation_.testSourceDirectories(), compileOperation_.testSourceFiles());
+
+            compile(null);
+            if (!silent()) {
+                System.out.println("Watching Kawa sources for changes.");
+            }
+
+            while (!Thread.currentThread().isInterrupted()) {
+                var changes = new LinkedHashSet<Path>();
+                var complete = collect(watcher, watcher.take(), changes);
+                WatchKey key;
+                while ((key = watcher.poll(debounce_.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    complete &= collect(watcher, key, changes);
+                }
+
+                if (!changes.isEmpty() || !complete) {
+                    if (!silent()) {
+                        System.out.println("Detected " + changes.size() + " changed Kawa source(s).");
+                    }
+                    compile(complete ? changes.stream().map(Path::toFile).toList() : null);
+                    batches_++;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watcher_ = null;
+            directories_.clear();
+            listedFiles_.clear();
+            sourceDirectories_.clear();
+            compileOperation_.workerPool(null);
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * Configures a watch operation from a {@link BaseProject}.
+     * <p>
+     * Sets the {@link #compileOperation() compile operation} to a {@link CompileKawaOperation} configured from the
+     * project.
+     *
+     * @param project the project to configure the watch operation from
+     * @return this operation instance
+     */
+    public WatchKawaOperation fromProject(BaseProject project) {
+        return compileOperation(new CompileKawaOperation().fromProject(project));
+    }
+
+    /**
+     * Stops watching the sources.
+     */
+    public void stop() {
+        var watcher = watcher_;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.warning("Could not stop watching: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Processes the events of a watch key, keeping track of the changed Kawa sources, and returns whether the changes
+    // are known
+    private boolean collect(WatchService watcher, WatchKey key, Set<Path> changes) throws IOException {
+        var complete = true;
+        var directory = directories_.get(key);
+        for (var event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                // events were lost, every source must be checked
+                complete = false;
+                continue;
+            }
+
+            var path = directory.resolve((Path) event.context());
+            if (listedFiles_.contains(path)) {
+                // an individual source file, deleted or created again
+                changes.add(path);
+            } else if (sourceDirectories_.contains(directory)) {
+                // other files next to individual source files are not sources
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    // a new directory in a watched source directory
+                    registerTree(watcher, path);
+                    try (var files = Files.walk(path)) {
+                        files.filter(WatchKawaOperation::isKawaFile).forEach(changes::add);
+                    }
+                } else if (isKawaFile(path)) {
+                    changes.add(path);
+                }
+            }
+        }
+        if (!key.reset()) {
+            directories_.remove(key);
+        }
+        return complete;
+    }
+
+    // Compiles the changed sources, or all of them if unknown, reporting errors without stopping
+    @SuppressWarnings("PMD.SystemPrintln")
+    private void compile(Collection<File> changes) {
+        try {
+            compileOperation_.changedSources(changes).execute();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Kawa compilation failed: " + e.getMessage());
+        }
+    }
+
+    private void register(WatchService watcher, Collection<File> directories, Collection<File> files)
+            throws IOException {
+        for (var directory : directories) {
+            if (directory.isDirectory()) {
+                registerTree(watcher, directory.getAbsoluteFile().toPath().normalize());
+            }
+        }
+        for (var file : files) {
+            var path = file.getAbsoluteFile().toPath().normalize();
+            listedFiles_.add(path);
+            var parent = path.getParent();
+            directories_.put(parent.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), parent);
+        }
+    }
+
+    private void registerTree(WatchService watcher, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                sourceDirectories_.add(dir);
+                directories_.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
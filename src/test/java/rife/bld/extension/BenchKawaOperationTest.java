@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class BenchKawaOperationTest {
+    @Test
+    void testBenchmarks() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src");
+            var classes = new File(tmpDir, "classes");
+            Files.createDirectories(new File(sources, "edu/example").toPath());
+            Files.writeString(new File(sources, "edu/example/sort.sld").toPath(), """
+                    (define-library (edu example sort)
+                      (export bench-sort (rename bench-reverse bench-reversed))
+                      (import (scheme base))
+                      (begin
+                        (define data (list 3 1 2))
+                        (define (bench-sort) (list-sort < data))
+                        (define (bench-reverse) (reverse data))
+                        (define (bench-not-exported) data)
+                        (define (bench-with-argument n) n)
+                        (define (helper) data)))
+                    """);
+            Files.writeString(new File(sources, "edu/example/vectors.scm").toPath(), """
+                    (module-export bench-fill)
+                    (define (bench-fill) (make-vector 10 0))
+                    (define (bench-copy) (vector-copy (vector 1 2)))
+                    """);
+            Files.writeString(new File(sources, "edu/example/private.scm").toPath(), """
+                    (define-private (bench-private) 1)
+                    """);
+            Files.writeString(new File(sources, "edu/example/strings.scm").toPath(), """
+                    (define (bench-append) (string-append "a" "b"))
+                    (define bench-not-a-procedure 1)
+                    (define (bench-upcase) (string-upcase "a"))
+                    """);
+            Files.writeString(new File(sources, "edu/example/none.scm").toPath(), "(define (run) 1)\n");
+            // the implicit module is compiled under its path
+            Files.createDirectories(new File(classes, "edu/example").toPath());
+            Files.writeString(new File(classes, "edu/example/strings.class").toPath(), "");
+
+            assertThat(BenchKawaOperation.benchmarks(List.of(sources), classes)).containsExactlyInAnyOrder(
+                    new BenchKawaOperation.Benchmark("edu.example.sort", "bench-sort"),
+                    new BenchKawaOperation.Benchmark("edu.example.sort", "bench-reversed"),
+                    new BenchKawaOperation.Benchmark("edu.example.vectors", "bench-fill"),
+                    new BenchKawaOperation.Benchmark("edu.example.strings", "bench-append"),
+                    new BenchKawaOperation.Benchmark("edu.example.strings", "bench-upcase"));
+            assertThat(new BenchKawaOperation.Benchmark("edu.example.sort", "bench-sort").name())
+                    .isEqualTo("edu.example.sort:bench-sort");
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteWithoutBenchmarks() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var op = new BenchKawaOperation()
+                    .sourceDirectories(new File(tmpDir, "src"))
+                    .classesDirectory(new File(tmpDir, "classes"))
+                    .resultsFile(new File(tmpDir, "bench.tsv"))
+                    .silent(true);
+            op.execute();
+
+            assertThat(op.results()).isEmpty();
+            assertThat(new File(tmpDir, "bench.tsv")).doesNotExist();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testOptions() {
+        var op = new BenchKawaOperation();
+        assertThat(op.forks()).isEqualTo(2);
+        assertThat(op.warmupIterations()).isEqualTo(5);
+        assertThat(op.measurementIterations()).isEqualTo(5);
+        assertThat(op.iterationMillis()).isEqualTo(1000L);
+        assertThat(op.tolerance()).isEqualTo(0.1);
+        assertThatThrownBy(() -> op.forks(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> op.measurementIterations(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> op.warmupIterations(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> op.tolerance(-0.1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testRegressions() {
+        var baseline = Map.of(
+                "a:bench-fast", new BenchKawaOperation.Result("a:bench-fast", 1000.0, 10.0, 100.0),
+                "a:bench-lean", new BenchKawaOperation.Result("a:bench-lean", 1000.0, 10.0, 0.0));
+        var results = List.of(
+                new BenchKawaOperation.Result("a:bench-fast", 850.0, 10.0, 105.0),
+                new BenchKawaOperation.Result("a:bench-lean", 950.0, 10.0, 12.0),
+                new BenchKawaOperation.Result("a:bench-new", 1.0, 0.0, 1.0e6));
+
+        // slower beyond the tolerance, allocations within the tolerance or the noise
+        assertThat(BenchKawaOperation.regressions(results, baseline, 0.1))
+                .containsExactly("a:bench-fast: 850.0 ops/s, baseline 1000.0 ops/s (-15.0%)");
+        assertThat(BenchKawaOperation.regressions(results, baseline, 0.2)).isEmpty();
+
+        var allocating = List.of(new BenchKawaOperation.Result("a:bench-fast", 1000.0, 10.0, 200.0));
+        assertThat(BenchKawaOperation.regressions(allocating, baseline, 0.1))
+                .containsExactly("a:bench-fast: 200.0 bytes/op, baseline 100.0 bytes/op");
+    }
+
+    @Test
+    void testResultOf() {
+        // calls, nanoseconds, allocated bytes
+        var result = BenchKawaOperation.Result.of("a:bench", List.of(new long[]{100, 1_000_000_000L, 800},
+                new long[]{300, 1_000_000_000L, 2400}));
+        assertThat(result.throughput()).isEqualTo(200.0);
+        assertThat(result.error()).isCloseTo(141.42, within(0.01));
+        assertThat(result.bytesPerOp()).isEqualTo(8.0);
+        assertThat(result.allocationRate()).isEqualTo(1600.0);
+    }
+
+    @Test
+    void testWriteRead() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var file = new File(tmpDir, "baseline/kawa-bench-baseline.tsv");
+            var result = new BenchKawaOperation.Result("edu.example.sort:bench-sort", 1234.5, 6.5, 48.0);
+            BenchKawaOperation.write(file, List.of(result));
+
+            assertThat(BenchKawaOperation.read(file)).containsExactly(Map.entry(result.benchmark(), result));
+            assertThat(BenchKawaOperation.read(new File(tmpDir, "missing.tsv"))).isEmpty();
+
+            Files.writeString(file.toPath(), "a:bench\tfast\n");
+            assertThatThrownBy(() -> BenchKawaOperation.read(file)).isInstanceOf(IOException.class);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CdsKawaOperationTest {
+    @Test
+    void testExecute() throws IOException, URISyntaxException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var classes = new File(Hello.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            var archive = new File(tmpDir, "cds/app.jsa");
+            var op = new CdsKawaOperation()
+                    .mainClass(Hello.class.getName())
+                    .classpath(classes.getAbsolutePath())
+                    .archiveFile(archive)
+                    .trainingArguments("world")
+                    .comparisonRuns(1)
+                    .silent(true);
+            op.execute();
+
+            assertThat(archive).isFile();
+            if (classes.isDirectory()) {
+                // only classes loaded from JAR files can be archived
+                assertThat(new File(archive.getParentFile(), classes.getName() + ".jar")).isFile();
+            }
+            assertThat(op.startupWithArchive()).isPositive();
+            assertThat(op.startupWithoutArchive()).isPositive();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteFailure() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var op = new CdsKawaOperation()
+                    .mainClass("edu.example.DoesNotExist")
+                    .archiveFile(new File(tmpDir, "app.jsa"))
+                    .silent(true);
+
+            assertThatThrownBy(op::execute).isInstanceOf(IOException.class)
+                    .hasMessageContaining("edu.example.DoesNotExist exited with code 1");
+            assertThatThrownBy(() -> new CdsKawaOperation().archiveFile(new File(tmpDir, "app.jsa")).execute())
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> new CdsKawaOperation().comparisonRuns(-1))
+                    .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    static final class Hello {
+        public static void main(String[] args) {
+            System.out.println("Hello " + String.join(" ", args) + '!');
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rife.bld.blueprints.BaseProjectBlueprint;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the Kawa compile pipeline, on synthetic source trees generated by {@link KawaCorpus}.
+ * <p>
+ * Run with {@code ./bld jmh}, the results are saved as JSON in {@code build/jmh}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompileKawaBenchmark {
+    @Param({"10", "100", "500", "1000"})
+    public int modules;
+
+    private File destination_;
+    private CompileKawaOperation incremental_;
+    private CompileKawaOperation parallel_;
+    private List<File> sources_;
+    private File sourceDirectory_;
+    private File tmpDir_;
+    private CompileKawaOperation warm_;
+
+    private CompileKawaOperation operation(File destination) {
+        return new CompileKawaOperation()
+                .fromProject(new BaseProjectBlueprint(tmpDir_, "bench", "bench"))
+                .mainSourceDirectories(sourceDirectory_)
+                .buildMainDirectory(destination)
+                .silent(true);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tmpDir_ = Files.createTempDirectory("bld-kawa-jmh").toFile();
+        sourceDirectory_ = new File(tmpDir_, "src");
+        KawaCorpus.generate(sourceDirectory_, modules, 42L);
+        sources_ = new ArrayList<>(CompileKawaOperation.getKawaFileList(sourceDirectory_));
+        destination_ = new File(tmpDir_, "cold");
+
+        warm_ = operation(new File(tmpDir_, "warm"));
+        parallel_ = operation(new File(tmpDir_, "parallel"))
+                .parallelism(Runtime.getRuntime().availableProcessors());
+        incremental_ = operation(new File(tmpDir_, "incremental")).incremental(true);
+        incremental_.execute();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteDirectory(tmpDir_);
+    }
+
+    /**
+     * Compiles the sources with a new copy of the Kawa compiler, which was neither loaded nor optimized yet.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 5)
+    public void coldCompile() throws IOException {
+        try (var compiler = new IsolatedKawaCompiler(List.of(destination_))) {
+            compiler.compile(sources_, destination_);
+        }
+    }
+
+    /**
+     * Compiles the sources with the Kawa compiler loaded in the build, once it was optimized by the JIT.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public void warmCompile() throws IOException {
+        warm_.execute();
+    }
+
+    /**
+     * Compiles the sources with one worker per available processor, to compare with {@link #warmCompile}.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public void parallelCompile() throws IOException {
+        parallel_.execute();
+    }
+
+    /**
+     * Rebuilds the sources incrementally when none of them changed.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void noOpIncremental() throws IOException {
+        incremental_.execute();
+    }
+
+    /**
+     * Discovers the sources in the source directory.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public Collection<File> scan() {
+        return CompileKawaOperation.getKawaFileList(sourceDirectory_);
+    }
+}
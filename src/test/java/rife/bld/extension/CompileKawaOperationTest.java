@@ -21,18 +21,24 @@ import org.junit.jupiter.api.Test;
 import rife.bld.blueprints.BaseProjectBlueprint;
 import rife.tools.FileUtils;
 
+import javax.tools.ToolProvider;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CompileKawaOperationTest {
     @BeforeAll
@@ -46,6 +52,28 @@ class CompileKawaOperationTest {
         logger.setUseParentHandlers(false);
     }
 
+    // Reads all the files in a directory, keyed by their relative path
+    private static Map<String, byte[]> contents(File directory) throws IOException {
+        var contents = new HashMap<String, byte[]>();
+        try (var paths = Files.walk(directory.toPath())) {
+            for (var path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                contents.put(directory.toPath().relativize(path).toString(), Files.readAllBytes(path));
+            }
+        }
+        return contents;
+    }
+
+    // Compiles a synthetic source tree
+    private static void compileCorpus(File sources, File destination, int parallelism) throws IOException {
+        new CompileKawaOperation()
+                .fromProject(new BaseProjectBlueprint(sources.getParentFile(), "bench", "bench"))
+                .mainSourceDirectories(sources)
+                .buildMainDirectory(destination)
+                .parallelism(parallelism)
+                .silent(true)
+                .execute();
+    }
+
     @Test
     void testExecute() throws IOException {
         var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
@@ -78,4 +106,507 @@ class CompileKawaOperationTest {
             FileUtils.deleteDirectory(tmpDir);
         }
     }
+
+    @Test
+    void testChangedSources() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var source = new File(tmpDir, "src/lib.scm");
+            Files.createDirectories(source.getParentFile().toPath());
+            Files.writeString(source.toPath(), "(define (f x) x)\n");
+            var deleted = new File(tmpDir, "src/deleted.scm");
+
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "edu.example", "app"))
+                    .buildMainDirectory(new File(tmpDir, "build/main"))
+                    .mainSourceFiles(source, deleted)
+                    .incremental(true)
+                    .silent(true);
+            assertThat(op.changedSources()).isNull();
+
+            // a listed source that was deleted is only skipped when known to have changed
+            assertThatThrownBy(op::execute).isInstanceOf(IOException.class);
+            op.changedSources(List.of(deleted)).execute();
+            assertThat(op.changedSources()).isNull();
+            assertThat(op.mainSourceFiles()).containsExactly(source, deleted);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testClassReport() {
+        var op = new CompileKawaOperation();
+        assertThat(op.isClassReport()).isFalse();
+        assertThat(op.isStripDebugInfo()).isFalse();
+        assertThat(op.classReport(true).isClassReport()).isTrue();
+        assertThat(op.stripDebugInfo(true).isStripDebugInfo()).isTrue();
+    }
+
+    @Test
+    void testClasspathJarHash() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var source = new File(tmpDir, "src/lib.scm");
+            Files.createDirectories(source.getParentFile().toPath());
+            Files.writeString(source.toPath(), "(define (f x) x)\n");
+            var jar = new File(tmpDir, "lib/util.jar");
+            Files.createDirectories(jar.getParentFile().toPath());
+            Files.writeString(jar.toPath(), "not really a jar");
+
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "edu.example", "app"))
+                    .buildMainDirectory(new File(tmpDir, "build/main"))
+                    .compileClasspath(jar)
+                    .mainSourceFiles(source)
+                    .incremental(true)
+                    .silent(true);
+            op.execute();
+
+            var file = new File(op.workDirectory(), "main.manifest");
+            var manifest = KawaSourceManifest.load(file);
+            assertThat(manifest).isNotNull();
+            var fingerprint = manifest.jar(jar);
+            assertThat(fingerprint.hash()).isEqualTo(KawaSourceManifest.hash(jar.toPath()));
+
+            // the hash of an unchanged jar is reused, rather than read again
+            manifest.putJar(jar, new KawaSourceManifest.Entry("cached", fingerprint.size(), fingerprint.modified(),
+                    null, List.of()));
+            manifest.save(file);
+            op.execute();
+            assertThat(KawaSourceManifest.load(file).jar(jar).hash()).isEqualTo("cached");
+
+            assertThat(jar.setLastModified(fingerprint.modified() - 10_000L)).isTrue();
+            op.execute();
+            assertThat(KawaSourceManifest.load(file).jar(jar).hash()).isEqualTo(fingerprint.hash());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testStripDebugInfo() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            // a class compiled by javac to the same destination
+            var lines = KawaClassFileTest.compile(tmpDir);
+            var classes = new File(tmpDir, "classes");
+            var source = new File(tmpDir, "src/edu/example/Words.java");
+            Files.writeString(source.toPath(), String.join("\n",
+                    "package edu.example;",
+                    "public class Words {",
+                    "    public static int count(String text) {",
+                    "        int words = text.split(\" \").length;",
+                    "        return words;",
+                    "    }",
+                    "}",
+                    ""), StandardCharsets.UTF_8);
+            assertThat(ToolProvider.getSystemJavaCompiler().run(null, null, null, "-g", "-proc:none", "-d",
+                    classes.getAbsolutePath(), source.getAbsolutePath())).isZero();
+            var words = new File(classes, "edu/example/Words.class");
+            var debugBytes = KawaClassFile.read(lines.toPath()).debugBytes();
+
+            CompileKawaOperation.stripDebugInfo(List.of(source), classes, Map.of());
+            assertThat(KawaClassFile.read(words.toPath()).debugBytes()).isZero();
+            assertThat(KawaClassFile.read(lines.toPath()).debugBytes()).isEqualTo(debugBytes).isPositive();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteShards() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var mainDir = new File(tmpDir, "build/main");
+            var shardDir = new File(tmpDir, "shards");
+            for (var i = 0; i < 2; i++) {
+                // each shard on its own machine
+                new CompileKawaOperation()
+                        .fromProject(new BaseProjectBlueprint(new File("examples"), "edu.example", "app"))
+                        .buildMainDirectory(new File(tmpDir, "node-" + i + "/main"))
+                        .buildTestDirectory(new File(tmpDir, "node-" + i + "/test"))
+                        .shardDirectory(shardDir)
+                        .shard(i, 2)
+                        .execute();
+            }
+            assertThat(new File(shardDir, "shard-0/shard.manifest")).exists();
+            assertThat(new File(shardDir, "shard-1/shard.manifest")).exists();
+            assertThat(new File(tmpDir, "node-0/main")).isEmptyDirectory();
+
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(new File("examples"), "edu.example", "app"))
+                    .buildMainDirectory(mainDir)
+                    .buildTestDirectory(new File(tmpDir, "build/test"))
+                    .shardDirectory(shardDir)
+                    .mergeShards(true);
+            op.execute();
+            assertThat(new File(mainDir, "edu/example/App.class")).exists();
+            assertThat(new File(tmpDir, "build/kawa/main.manifest")).exists();
+
+            FileUtils.deleteDirectory(new File(shardDir, "shard-1"));
+            assertThatThrownBy(op::execute).isInstanceOf(IOException.class).hasMessageContaining("shard 1 of 2");
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testShard() {
+        var op = new CompileKawaOperation();
+        assertThat(op.shardCount()).isZero();
+        assertThat(op.shard(2, 4).shardIndex()).isEqualTo(2);
+        assertThat(op.shardCount()).isEqualTo(4);
+        assertThatThrownBy(() -> op.shard(0, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> op.shard(4, 4)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> op.shard(-1, 4)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> op.mergeShards(true).fromProject(new BaseProjectBlueprint(new File("examples"),
+                "edu.example", "app")).execute()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testBatches() {
+        var op = new CompileKawaOperation();
+        assertThat(op.batchSize()).isZero();
+        assertThat(op.batchMemory()).isZero();
+        assertThat(op.batchSize(50).batchSize()).isEqualTo(50);
+        assertThat(op.batchMemory(256L << 20).batchMemory()).isEqualTo(256L << 20);
+        assertThatThrownBy(() -> op.batchSize(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> op.batchMemory(-1L)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testExecuteBatched() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src");
+            KawaCorpus.generate(sources, 20, 7L);
+
+            var unbatchedDir = new File(tmpDir, "unbatched");
+            var batchedDir = new File(tmpDir, "batched");
+            compileCorpus(sources, unbatchedDir, 1);
+            new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "bench", "bench"))
+                    .mainSourceDirectories(sources)
+                    .buildMainDirectory(batchedDir)
+                    .batchSize(6)
+                    .silent(true)
+                    .execute();
+
+            var unbatched = contents(unbatchedDir);
+            var batched = contents(batchedDir);
+            assertThat(unbatched).isNotEmpty();
+            assertThat(batched).containsOnlyKeys(unbatched.keySet());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteBuildCache() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var cacheDir = new File(tmpDir, "cache");
+            for (var checkout : List.of("first", "second")) {
+                var buildDir = new File(tmpDir, checkout);
+                var mainDir = new File(buildDir, "main");
+                new CompileKawaOperation()
+                        .fromProject(new BaseProjectBlueprint(new File("examples"), "edu.example", "app"))
+                        .buildMainDirectory(mainDir)
+                        .buildTestDirectory(new File(buildDir, "test"))
+                        .buildCacheDirectory(cacheDir)
+                        .execute();
+                assertThat(Path.of(mainDir.getAbsolutePath(), "edu", "example", "App.class")).exists();
+            }
+
+            // the second checkout was restored from the cache
+            var first = contents(new File(tmpDir, "first/main"));
+            var second = contents(new File(tmpDir, "second/main"));
+            assertThat(second).containsOnlyKeys(first.keySet());
+            first.forEach((path, bytes) -> assertThat(second.get(path)).as(path).isEqualTo(bytes));
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteCompileReport() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var buildDir = new File(tmpDir, "build");
+            var stats = new ArrayList<KawaModuleStats>();
+
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(new File("examples"), "edu.example", "app"))
+                    .buildMainDirectory(new File(buildDir, "main"))
+                    .buildTestDirectory(new File(buildDir, "test"))
+                    .compileListener(stats::add)
+                    .compileReport(true);
+            op.execute();
+
+            assertThat(stats).isNotEmpty().allSatisfy(module -> {
+                assertThat(module.wallNanos()).isPositive();
+                assertThat(module.classCount()).isPositive();
+                assertThat(module.classBytes()).isPositive();
+            });
+            assertThat(new File(op.workDirectory(), "main-compile-report.json")).exists();
+            assertThat(new File(op.workDirectory(), "main-compile-report.csv")).exists();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteDaemon() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var buildDir = new File(tmpDir, "build");
+            var mainDir = new File(buildDir, "main");
+
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(new File("examples"), "edu.example", "app"))
+                    .buildMainDirectory(mainDir)
+                    .buildTestDirectory(new File(buildDir, "test"))
+                    .daemon(true)
+                    .daemonIdleTimeout(Duration.ofSeconds(2));
+
+            op.execute();
+            assertThat(Path.of(mainDir.getAbsolutePath(), "edu", "example", "App.class")).exists();
+
+            // the second compilation reuses the running daemon
+            op.execute();
+            assertThat(new File(op.workDirectory(), "daemon.log")).exists();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteForked() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src");
+            KawaCorpus.generate(sources, 12, 3L);
+
+            var inProcessDir = new File(tmpDir, "in-process");
+            var forkedDir = new File(tmpDir, "forked");
+            compileCorpus(sources, inProcessDir, 1);
+            new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "bench", "bench"))
+                    .mainSourceDirectories(sources)
+                    .buildMainDirectory(forkedDir)
+                    .fork(true)
+                    .jvmOptions("-Xmx256m", "-XX:+UseSerialGC")
+                    .parallelism(2)
+                    .silent(true)
+                    .execute();
+
+            var inProcess = contents(inProcessDir);
+            var forked = contents(forkedDir);
+            assertThat(inProcess).isNotEmpty();
+            assertThat(forked).containsOnlyKeys(inProcess.keySet());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecutePipelined() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var mainSources = new File(tmpDir, "main");
+            KawaCorpus.generate(mainSources, 12, 5L);
+            var testSources = new File(tmpDir, "test");
+            var testPackage = new File(testSources, "bench");
+            assertThat(testPackage.mkdirs()).isTrue();
+            Files.write(new File(testPackage, "t0000.sld").toPath(), List.of(
+                    "(define-library (bench t0000)",
+                    "  (export t0000)",
+                    "  (import (scheme base) (bench m0011))",
+                    "  (begin (define (t0000) (f0011 1))))"), StandardCharsets.UTF_8);
+
+            var mainDir = new File(tmpDir, "build/main");
+            var testDir = new File(tmpDir, "build/test");
+            new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "bench", "bench"))
+                    .mainSourceDirectories(mainSources)
+                    .testSourceDirectories(testSources)
+                    .buildMainDirectory(mainDir)
+                    .buildTestDirectory(testDir)
+                    .parallelism(4)
+                    .silent(true)
+                    .execute();
+
+            assertThat(new File(mainDir, "bench/m0011.class")).exists();
+            assertThat(new File(testDir, "bench/t0000.class")).exists();
+            // main modules are only on the classpath of the test modules, not compiled again
+            assertThat(new File(testDir, "bench/m0011.class")).doesNotExist();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteIncremental() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var buildDir = new File(tmpDir, "build");
+            var mainDir = new File(buildDir, "main");
+            var testDir = new File(buildDir, "test");
+
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(new File("examples"), "edu.example", "app"))
+                    .buildMainDirectory(mainDir)
+                    .buildTestDirectory(testDir)
+                    .incremental(true);
+
+            assertThat(op.workDirectory()).isEqualTo(new File(buildDir, "kawa"));
+
+            op.execute();
+
+            var app = Path.of(mainDir.getAbsolutePath(), "edu", "example", "App.class").toFile();
+            assertThat(app).exists();
+            assertThat(new File(op.workDirectory(), "main.manifest")).exists();
+
+            var modified = app.lastModified();
+            op.execute();
+            assertThat(app.lastModified()).isEqualTo(modified);
+
+            assertThat(app.delete()).isTrue();
+            op.execute();
+            assertThat(app).exists();
+
+            // recompiling identical classes does not replace them
+            modified = app.lastModified();
+            op.incremental(false).execute();
+            assertThat(app.lastModified()).isEqualTo(modified);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecutePruneStaleClasses() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src");
+            KawaCorpus.generate(sources, 3, 7L);
+            var mainDir = new File(tmpDir, "build/main");
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "bench", "bench"))
+                    .mainSourceDirectories(sources)
+                    .buildMainDirectory(mainDir)
+                    .incremental(true)
+                    .silent(true);
+            op.execute();
+
+            var removed = new File(mainDir, "bench/m0002.class");
+            assertThat(removed).exists();
+            assertThat(new File(sources, "bench/m0002.sld").delete()).isTrue();
+            op.execute();
+
+            assertThat(removed).doesNotExist();
+            assertThat(new File(mainDir, "bench/m0001.class")).exists();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testSyntaxCheckDisabledByDefault() {
+        assertThat(new CompileKawaOperation().isSyntaxCheck()).isFalse();
+    }
+
+    @Test
+    void testExecuteSyntaxErrors() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src");
+            KawaCorpus.generate(sources, 3, 11L);
+            Files.writeString(new File(sources, "bench/broken.scm").toPath(), "(define (f x) (+ x 1)))\n");
+            Files.writeString(new File(sources, "bench/open.scm").toPath(), "(define (g x)\n");
+            var mainDir = new File(tmpDir, "build/main");
+            var op = new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "bench", "bench"))
+                    .mainSourceDirectories(sources)
+                    .buildMainDirectory(mainDir)
+                    .syntaxCheck(true)
+                    .silent(true);
+
+            assertThatThrownBy(op::execute).isInstanceOf(IOException.class)
+                    .hasMessageContaining("2 error(s)")
+                    .hasMessageContaining("broken.scm: Unexpected ')' on line 1")
+                    .hasMessageContaining("open.scm: Unbalanced parentheses, list opened on line 1");
+            // nothing was compiled
+            assertThat(new File(mainDir, "bench")).doesNotExist();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteModuleRegistry() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var mainDir = new File(tmpDir, "build/main");
+            new CompileKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(new File("examples"), "edu.example", "app"))
+                    .buildMainDirectory(mainDir)
+                    .buildTestDirectory(new File(tmpDir, "build/test"))
+                    .moduleRegistry("edu.example.KawaModules")
+                    .silent(true)
+                    .execute();
+
+            assertThat(new File(mainDir, "edu/example/KawaModules.class")).isFile();
+            assertThat(Files.readAllLines(new File(mainDir, "META-INF/kawa/modules.index").toPath()))
+                    .containsExactly("edu.example.App\tedu.example.App");
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteParallel() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src");
+            KawaCorpus.generate(sources, 40, 42L);
+
+            var sequentialDir = new File(tmpDir, "sequential");
+            var parallelDir = new File(tmpDir, "parallel");
+            compileCorpus(sources, sequentialDir, 1);
+            compileCorpus(sources, parallelDir, 4);
+
+            var sequential = contents(sequentialDir);
+            var parallel = contents(parallelDir);
+            assertThat(sequential).isNotEmpty();
+            assertThat(parallel).containsOnlyKeys(sequential.keySet());
+            sequential.forEach((path, bytes) -> assertThat(parallel.get(path)).as(path).isEqualTo(bytes));
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testParallelism() {
+        var op = new CompileKawaOperation();
+        assertThat(op.parallelism()).isEqualTo(1);
+        assertThat(op.parallelism(8).parallelism()).isEqualTo(8);
+        assertThatThrownBy(() -> op.parallelism(0)).isInstanceOf(IllegalArgumentException.class);
+    }
 }
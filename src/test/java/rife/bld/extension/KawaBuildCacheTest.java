@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaBuildCacheTest {
+    private static void write(File file, int size) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[size]);
+    }
+
+    @Test
+    void testKey() throws IOException {
+        assertThat(KawaBuildCache.key(List.of("3.1.1", "", "edu.example.App")))
+                .hasSize(64)
+                .isEqualTo(KawaBuildCache.key(List.of("3.1.1", "", "edu.example.App")))
+                .isNotEqualTo(KawaBuildCache.key(List.of("3.1.0", "", "edu.example.App")));
+    }
+
+    @Test
+    void testStoreAndRestore() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var build = new File(tmpDir, "build");
+            write(new File(build, "edu/example/App.class"), 10);
+            write(new File(build, "edu/example/App$frame.class"), 20);
+            var outputs = List.of("edu/example/App.class", "edu/example/App$frame.class");
+
+            var key = KawaBuildCache.key(List.of("App"));
+            var cache = new KawaBuildCache(new File(tmpDir, "cache"), 1024L);
+            assertThat(cache.restore(key, build)).isNull();
+            cache.store(key, build, outputs);
+
+            var restored = new File(tmpDir, "restored");
+            assertThat(cache.restore(key, restored)).isEqualTo(outputs);
+            assertThat(new File(restored, "edu/example/App$frame.class")).hasSize(20);
+            assertThat(cache.hits()).isEqualTo(1);
+            assertThat(cache.misses()).isEqualTo(1);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testEvict() throws IOException, InterruptedException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var build = new File(tmpDir, "build");
+            var cache = new KawaBuildCache(new File(tmpDir, "cache"), 250L);
+            for (var name : List.of("A", "B", "C")) {
+                write(new File(build, name + ".class"), 100);
+                cache.store(KawaBuildCache.key(List.of(name)), build, List.of(name + ".class"));
+                Thread.sleep(20L);
+            }
+
+            // using A makes B the least recently used entry
+            assertThat(cache.restore(KawaBuildCache.key(List.of("A")), build)).isNotNull();
+            cache.evict();
+
+            assertThat(cache.restore(KawaBuildCache.key(List.of("A")), build)).isNotNull();
+            assertThat(cache.restore(KawaBuildCache.key(List.of("B")), build)).isNull();
+            assertThat(cache.restore(KawaBuildCache.key(List.of("C")), build)).isNotNull();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testEvictStaleTemporaryEntries() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var build = new File(tmpDir, "build");
+            var cacheDir = new File(tmpDir, "cache");
+            var stale = new File(cacheDir, "tmp-stale");
+            write(new File(stale, "classes/A.class"), 100);
+            Files.setLastModifiedTime(stale.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 7_200_000L));
+            var active = new File(cacheDir, "tmp-active");
+            write(new File(active, "classes/B.class"), 100);
+
+            var cache = new KawaBuildCache(cacheDir, 1_000L);
+            write(new File(build, "C.class"), 100);
+            cache.store(KawaBuildCache.key(List.of("C")), build, List.of("C.class"));
+            cache.evict();
+
+            assertThat(stale).doesNotExist();
+            assertThat(active).exists();
+            assertThat(cache.restore(KawaBuildCache.key(List.of("C")), build)).isNotNull();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
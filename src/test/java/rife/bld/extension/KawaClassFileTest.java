@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KawaClassFileTest {
+    /**
+     * Compiles a class with all its debug information.
+     *
+     * @param directory the directory to compile the class to
+     * @return the class file
+     */
+    static File compile(File directory) throws IOException {
+        var source = new File(directory, "src/edu/example/Lines.java");
+        Files.createDirectories(source.getParentFile().toPath());
+        Files.writeString(source.toPath(), String.join("\n",
+                "package edu.example;",
+                "public class Lines {",
+                "    public static int sum(int n) {",
+                "        int total = 0;",
+                "        for (int i = 1; i <= n; i++) {",
+                "            total += i;",
+                "        }",
+                "        return total;",
+                "    }",
+                "}",
+                ""), StandardCharsets.UTF_8);
+        var classes = new File(directory, "classes");
+        assertThat(ToolProvider.getSystemJavaCompiler().run(null, null, null, "-g", "-proc:none", "-d",
+                classes.getAbsolutePath(), source.getAbsolutePath())).isZero();
+        return new File(classes, "edu/example/Lines.class");
+    }
+
+    @Test
+    void testRead() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var classFile = KawaClassFile.read(compile(tmpDir).toPath());
+            assertThat(classFile.sourceFile()).isEqualTo("Lines.java");
+            assertThat(classFile.methodCount()).isEqualTo(2);
+            assertThat(classFile.constantPoolCount()).isPositive();
+            assertThat(classFile.debugBytes()).isPositive();
+            assertThat(classFile.size()).isEqualTo(new File(tmpDir, "classes/edu/example/Lines.class").length());
+
+            var notClass = new File(tmpDir, "src/edu/example/Lines.java").toPath();
+            assertThatThrownBy(() -> KawaClassFile.read(notClass)).isInstanceOf(IOException.class);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testStripDebugInfo() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var file = compile(tmpDir);
+            var bytes = Files.readAllBytes(file.toPath());
+            var stripped = KawaClassFile.stripDebugInfo(bytes);
+            var debugBytes = KawaClassFile.read(file.toPath()).debugBytes();
+            assertThat(stripped).hasSize((int) (bytes.length - debugBytes));
+            Files.write(file.toPath(), stripped);
+
+            var classFile = KawaClassFile.read(file.toPath());
+            assertThat(classFile.debugBytes()).isZero();
+            assertThat(classFile.methodCount()).isEqualTo(2);
+            assertThat(classFile.sourceFile()).isEqualTo("Lines.java");
+            assertThat(KawaClassFile.stripDebugInfo(stripped)).isSameAs(stripped);
+
+            // the class still verifies and behaves the same
+            try (var loader = new URLClassLoader(new URL[]{new File(tmpDir, "classes").toURI().toURL()}, null)) {
+                var lines = loader.loadClass("edu.example.Lines");
+                assertThat(lines.getMethod("sum", int.class).invoke(null, 10)).isEqualTo(55);
+            }
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
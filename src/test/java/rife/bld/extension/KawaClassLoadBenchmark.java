@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rife.bld.blueprints.BaseProjectBlueprint;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the time it takes to load the classes of a synthetic source tree generated by {@link KawaCorpus},
+ * as at the startup of an application, with and without {@link CompileKawaOperation#stripDebugInfo(boolean) debug
+ * information}.
+ * <p>
+ * Run with {@code ./bld jmh}, the results are saved as JSON in {@code build/jmh}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class KawaClassLoadBenchmark {
+    @Param({"false", "true"})
+    public boolean stripDebugInfo;
+
+    private File classes_;
+    private List<String> names_;
+    private File tmpDir_;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tmpDir_ = Files.createTempDirectory("bld-kawa-jmh").toFile();
+        var sourceDirectory = new File(tmpDir_, "src");
+        KawaCorpus.generate(sourceDirectory, 500, 42L);
+        classes_ = new File(tmpDir_, "classes");
+        new CompileKawaOperation()
+                .fromProject(new BaseProjectBlueprint(tmpDir_, "bench", "bench"))
+                .mainSourceDirectories(sourceDirectory)
+                .buildMainDirectory(classes_)
+                .stripDebugInfo(stripDebugInfo)
+                .silent(true)
+                .execute();
+
+        var root = classes_.toPath();
+        try (var paths = Files.walk(root)) {
+            names_ = paths.map(Path::toString)
+                    .filter(path -> path.endsWith(".class"))
+                    .map(path -> root.relativize(Path.of(path)).toString()
+                            .replaceFirst("\\.class$", "").replace(File.separatorChar, '.'))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tmpDir_);
+    }
+
+    /**
+     * Loads all the classes in a new class loader, without initializing them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int load() throws IOException, ClassNotFoundException {
+        // the Kawa runtime is shared with the benchmark, only the compiled classes are loaded each time
+        try (var loader = new URLClassLoader(new URL[]{classes_.toURI().toURL()}, getClass().getClassLoader())) {
+            var loaded = 0;
+            for (var name : names_) {
+                if (Class.forName(name, false, loader).getClassLoader() == loader) {
+                    loaded++;
+                }
+            }
+            return loaded;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaClassOutputsTest {
+    private static void write(File file, String content) throws IOException {
+        assertThat(file.getParentFile().mkdirs() || file.getParentFile().isDirectory()).isTrue();
+        Files.writeString(file.toPath(), content);
+    }
+
+    @Test
+    void testPrune() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            write(new File(tmpDir, "edu/example/App.class"), "app");
+            write(new File(tmpDir, "edu/example/util.class"), "util");
+            write(new File(tmpDir, "bench/m0000.class"), "m0000");
+
+            assertThat(KawaClassOutputs.prune(tmpDir, List.of("edu/example/util.class", "bench/m0000.class",
+                    "bench/m0001.class"))).containsExactly("bench/m0000.class", "edu/example/util.class");
+            assertThat(new File(tmpDir, "edu/example/App.class")).exists();
+            assertThat(new File(tmpDir, "edu/example/util.class")).doesNotExist();
+            // empty package directories are removed too
+            assertThat(new File(tmpDir, "bench")).doesNotExist();
+            assertThat(tmpDir).exists();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testPublish() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var staging = new File(tmpDir, "staging");
+            var destination = new File(tmpDir, "main");
+            var unchanged = new File(destination, "edu/example/App.class");
+            var modified = new File(destination, "edu/example/util.class");
+            write(unchanged, "app");
+            write(modified, "util");
+            var time = FileTime.fromMillis(System.currentTimeMillis() - 60_000L);
+            Files.setLastModifiedTime(unchanged.toPath(), time);
+            Files.setLastModifiedTime(modified.toPath(), time);
+
+            write(new File(staging, "edu/example/App.class"), "app");
+            write(new File(staging, "edu/example/util.class"), "util, changed");
+            write(new File(staging, "edu/example/math.class"), "math");
+
+            assertThat(KawaClassOutputs.publish(staging, destination))
+                    .containsExactly("edu/example/math.class", "edu/example/util.class");
+            assertThat(Files.getLastModifiedTime(unchanged.toPath())).isEqualTo(time);
+            assertThat(Files.readString(modified.toPath())).isEqualTo("util, changed");
+            assertThat(new File(destination, "edu/example/math.class")).exists();
+            assertThat(staging).doesNotExist();
+
+            // nothing to publish
+            assertThat(KawaClassOutputs.publish(staging, destination)).isEmpty();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
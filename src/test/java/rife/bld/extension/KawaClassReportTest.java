@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaClassReportTest {
+    private static final List<KawaClassReport.ModuleClasses> MODULES = List.of(
+            new KawaClassReport.ModuleClasses(new File("/src/App.scm"), "edu.example.App", 3, 9000L, 600L, 300, 40L,
+                    1200L),
+            new KawaClassReport.ModuleClasses(new File("/src/a,b.scm"), "a,b", 1, 500L, 50L, 50, 3L, 0L),
+            new KawaClassReport.ModuleClasses(new File("/src/big.scm"), "big", 40, 900_000L, 60_000L, 60_000, 900L,
+                    0L));
+
+    @Test
+    void testLargest() {
+        assertThat(KawaClassReport.largest(MODULES, 2)).extracting(KawaClassReport.ModuleClasses::module)
+                .containsExactly("big", "edu.example.App");
+        assertThat(MODULES).filteredOn(KawaClassReport.ModuleClasses::isNearConstantPoolLimit)
+                .extracting(KawaClassReport.ModuleClasses::module).containsExactly("big");
+    }
+
+    @Test
+    void testMeasure() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var classFile = KawaClassFileTest.compile(tmpDir);
+            var module = KawaClassReport.measure(new File(tmpDir, "src/edu/example/Lines.java"), "edu.example.Lines",
+                    new File(tmpDir, "classes"), List.of("edu/example/Lines.class"));
+            assertThat(module.classCount()).isEqualTo(1);
+            assertThat(module.classBytes()).isEqualTo(classFile.length());
+            assertThat(module.methodCount()).isEqualTo(2);
+            assertThat(module.maxConstantPoolEntries()).isEqualTo((int) module.constantPoolEntries());
+            assertThat(module.debugBytes()).isPositive();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testToCsv() {
+        assertThat(KawaClassReport.toCsv(MODULES.subList(0, 2))).containsExactly(
+                "source,module,class_count,class_bytes,constant_pool_entries,max_constant_pool_entries,method_count,"
+                        + "debug_bytes",
+                new File("/src/App.scm").getPath() + ",edu.example.App,3,9000,600,300,40,1200",
+                '"' + new File("/src/a,b.scm").getPath() + "\",\"a,b\",1,500,50,50,3,0");
+    }
+
+    @Test
+    void testWrite() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            KawaClassReport.write(MODULES, new File(tmpDir, "kawa/main-class-report"));
+            assertThat(new File(tmpDir, "kawa/main-class-report.csv")).hasContent(
+                    String.join("\n", KawaClassReport.toCsv(MODULES)));
+            assertThat(Files.readString(new File(tmpDir, "kawa/main-class-report.json").toPath()))
+                    .isEqualTo(KawaClassReport.toJson(MODULES)).contains("\"maxConstantPoolEntries\": 60000");
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
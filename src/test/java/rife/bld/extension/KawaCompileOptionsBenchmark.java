@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import gnu.mapping.Procedure;
+import kawa.standard.Scheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the {@link KawaCompileOptions compile option presets}, measuring the compile time of a synthetic
+ * source tree generated by {@link KawaCorpus}, and the throughput of a sample workload compiled with each preset.
+ * <p>
+ * Run with {@code ./bld jmh}, the results are saved as JSON in {@code build/jmh}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class KawaCompileOptionsBenchmark {
+    private static final String WORKLOAD = String.join("\n",
+            "(define-library (bench workload)",
+            "  (export run)",
+            "  (import (scheme base))",
+            "  (begin",
+            "    (define (fib n)",
+            "      (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))",
+            "    (define (sum lst acc)",
+            "      (if (null? lst) acc (sum (cdr lst) (+ acc (car lst)))))",
+            "    (define (run n)",
+            "      (let loop ((i 0) (acc 0))",
+            "        (if (= i n)",
+            "            acc",
+            "            (loop (+ i 1) (+ acc (fib 15) (sum (list i 1 2 3) 0))))))))",
+            "");
+
+    @Param({"default", "dev", "release"})
+    public String preset;
+
+    private KawaCompiler compiler_;
+    private File destination_;
+    private URLClassLoader loader_;
+    private Procedure run_;
+    private List<File> sources_;
+    private File tmpDir_;
+
+    private KawaCompileOptions options() {
+        return switch (preset) {
+            case "dev" -> KawaCompileOptions.dev();
+            case "release" -> KawaCompileOptions.release();
+            default -> new KawaCompileOptions();
+        };
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        tmpDir_ = Files.createTempDirectory("bld-kawa-jmh").toFile();
+        var sourceDirectory = new File(tmpDir_, "src");
+        KawaCorpus.generate(sourceDirectory, 100, 42L);
+        sources_ = new ArrayList<>(CompileKawaOperation.getKawaFileList(sourceDirectory));
+        destination_ = new File(tmpDir_, "corpus");
+        compiler_ = new IsolatedKawaCompiler(List.of(destination_), options().args());
+
+        var workload = new File(tmpDir_, "workload/bench/workload.scm");
+        Files.createDirectories(workload.getParentFile().toPath());
+        Files.writeString(workload.toPath(), WORKLOAD, StandardCharsets.UTF_8);
+        var classes = new File(tmpDir_, "workload-classes");
+        try (var compiler = new IsolatedKawaCompiler(List.of(classes), options().args())) {
+            compiler.compile(List.of(workload), classes);
+        }
+
+        // the workload runs on the Kawa runtime of the benchmark, which loads the module through the context loader
+        loader_ = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+        Thread.currentThread().setContextClassLoader(loader_);
+        var scheme = Scheme.getInstance();
+        scheme.eval("(import (bench workload))");
+        run_ = (Procedure) scheme.eval("run");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        compiler_.close();
+        loader_.close();
+        FileUtils.deleteDirectory(tmpDir_);
+    }
+
+    /**
+     * Compiles a tree of 100 modules with a warm compiler.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public void compile() throws IOException {
+        compiler_.compile(sources_, destination_);
+    }
+
+    /**
+     * Runs the workload, made of recursive calls, a tail-recursive loop and list traversal.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public Object run() throws Throwable {
+        return run_.apply1(100);
+    }
+}
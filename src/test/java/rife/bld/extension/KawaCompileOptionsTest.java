@@ -0,0 +1,50 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaCompileOptionsTest {
+    @Test
+    void testArgs() {
+        var options = new KawaCompileOptions().fullTailCalls(true).inline(false).moduleStatic(true)
+                .warnAsError(true).target("17");
+        assertThat(options.args()).containsExactly("--full-tailcalls", "--no-inline", "--module-static",
+                "--warn-as-error", "--target", "17");
+        assertThat(options).hasToString("--full-tailcalls --no-inline --module-static --warn-as-error --target 17");
+    }
+
+    @Test
+    void testDefaults() {
+        var options = new KawaCompileOptions();
+        assertThat(options.isFullTailCalls()).isFalse();
+        assertThat(options.isInline()).isTrue();
+        assertThat(options.isModuleStatic()).isFalse();
+        assertThat(options.isWarnAsError()).isFalse();
+        assertThat(options.target()).isNull();
+        // the manifests and build cache keys of the default options are unchanged
+        assertThat(options.args()).isEmpty();
+        assertThat(options).hasToString("");
+    }
+
+    @Test
+    void testPresets() {
+        assertThat(KawaCompileOptions.dev().args()).containsExactly("--no-inline");
+        assertThat(KawaCompileOptions.release().args()).containsExactly("--module-static", "--warn-as-error");
+    }
+}
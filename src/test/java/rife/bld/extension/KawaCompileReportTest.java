@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class KawaCompileReportTest {
+    private static final List<KawaModuleStats> STATS = List.of(
+            new KawaModuleStats(new File("/src/App.scm"), "edu.example.App", 2_000_000L, 1_500_000L, 4096L, 2, 1234L),
+            new KawaModuleStats(new File("/src/a,b.scm"), "a,b", 1_000L, -1L, -1L, 1, 100L));
+
+    @Test
+    void testInstrumentedCompiler() throws IOException {
+        var compiled = new ArrayList<List<File>>();
+        var timings = new ConcurrentLinkedQueue<InstrumentedKawaCompiler.Timing>();
+        try (var compiler = new InstrumentedKawaCompiler((sources, destination) -> compiled.add(sources), timings,
+                true)) {
+            compiler.compile(List.of(new File("A.scm"), new File("B.scm")), new File("build"));
+        }
+
+        assertThat(compiled).containsExactly(List.of(new File("A.scm")), List.of(new File("B.scm")));
+        assertThat(timings).extracting(InstrumentedKawaCompiler.Timing::source)
+                .containsExactly(new File("A.scm").getAbsoluteFile(), new File("B.scm").getAbsoluteFile());
+        assertThat(timings).allSatisfy(timing -> assertThat(timing.wallNanos()).isNotNegative());
+    }
+
+    @Test
+    void testToCsv() {
+        assertThat(KawaCompileReport.toCsv(STATS)).containsExactly(
+                "source,module,wall_nanos,cpu_nanos,allocated_bytes,class_count,class_bytes",
+                new File("/src/App.scm").getPath() + ",edu.example.App,2000000,1500000,4096,2,1234",
+                '"' + new File("/src/a,b.scm").getPath() + "\",\"a,b\",1000,-1,-1,1,100");
+    }
+
+    @Test
+    void testToJson() {
+        assertThat(KawaCompileReport.toJson(List.of())).isEqualTo("[]\n");
+        assertThat(KawaCompileReport.toJson(STATS.subList(0, 1))).isEqualTo("[\n"
+                + "  {\"source\": \"" + new File("/src/App.scm").getPath().replace("\\", "\\\\")
+                + "\", \"module\": \"edu.example.App\", \"wallNanos\": 2000000, \"cpuNanos\": 1500000, "
+                + "\"allocatedBytes\": 4096, \"classCount\": 2, \"classBytes\": 1234}\n]\n");
+    }
+
+    @Test
+    void testWrite() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            KawaCompileReport.write(STATS, new File(tmpDir, "kawa/main-compile-report"));
+            assertThat(new File(tmpDir, "kawa/main-compile-report.json")).exists();
+            assertThat(new File(tmpDir, "kawa/main-compile-report.csv")).exists();
+
+            assertThat(KawaCompileReport.wallTimes(new File(tmpDir, "kawa/main-compile-report.csv")))
+                    .containsOnly(entry("edu.example.App", 2_000_000L), entry("a,b", 1_000L));
+            assertThatThrownBy(() -> KawaCompileReport.wallTimes(new File(tmpDir, "kawa/main-compile-report.json")))
+                    .isInstanceOf(IOException.class);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
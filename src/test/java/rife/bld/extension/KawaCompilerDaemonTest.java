@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaCompilerDaemonTest {
+    // Sends a compile request to a daemon, returning the response
+    private static String request(KawaCompilerDaemon daemon, File source, File destination) throws IOException {
+        var request = new ByteArrayOutputStream();
+        try (var out = new BufferedWriter(new OutputStreamWriter(request, StandardCharsets.UTF_8))) {
+            KawaCompilerDaemon.writeRequest(out, List.of(source), destination, List.of(), List.of());
+        }
+        var response = new ByteArrayOutputStream();
+        daemon.serve(new ByteArrayInputStream(request.toByteArray()), response);
+        return response.toString(StandardCharsets.UTF_8).trim();
+    }
+
+    @Test
+    void testIsCurrent() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var jar = new File(tmpDir, "lib.jar");
+            new JarOutputStream(new FileOutputStream(jar)).close();
+            try (var compiler = new IsolatedKawaCompiler(List.of(new File(tmpDir, "classes"), jar))) {
+                assertThat(compiler.isCurrent()).isTrue();
+                assertThat(compiler.reload()).isFalse();
+
+                Files.setLastModifiedTime(jar.toPath(), FileTime.fromMillis(jar.lastModified() + 2000L));
+                assertThat(compiler.isCurrent()).isFalse();
+            }
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testListenStopsWhenIdle() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var socket = tmpDir.toPath().resolve("daemon.sock");
+            var start = System.nanoTime();
+            new KawaCompilerDaemon().listen(socket, Duration.ofMillis(1));
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+            assertThat(socket).doesNotExist();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testServeRecompilesDependent() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src/bench");
+            assertThat(sources.mkdirs()).isTrue();
+            var destination = new File(tmpDir, "build");
+            assertThat(destination.mkdirs()).isTrue();
+            var lib = new File(sources, "lib.sld");
+            var app = new File(sources, "app.sld");
+            var daemon = new KawaCompilerDaemon();
+
+            Files.write(lib.toPath(), List.of(
+                    "(define-library (bench lib)",
+                    "  (export f)",
+                    "  (import (scheme base))",
+                    "  (begin (define (f x) (+ x 1))))"), StandardCharsets.UTF_8);
+            Files.write(app.toPath(), List.of(
+                    "(define-library (bench app)",
+                    "  (export main)",
+                    "  (import (scheme base) (bench lib))",
+                    "  (begin (define (main) (f 1))))"), StandardCharsets.UTF_8);
+            // the compiler loads the classes of the library to compile the application
+            assertThat(request(daemon, lib, destination)).isEqualTo(KawaCompilerDaemon.OK);
+            assertThat(request(daemon, app, destination)).isEqualTo(KawaCompilerDaemon.OK);
+
+            // the next build changes the exports of the library
+            Files.write(lib.toPath(), List.of(
+                    "(define-library (bench lib)",
+                    "  (export g)",
+                    "  (import (scheme base))",
+                    "  (begin (define (g x) (+ x 2))))"), StandardCharsets.UTF_8);
+            Files.write(app.toPath(), List.of(
+                    "(define-library (bench app)",
+                    "  (export main)",
+                    "  (import (scheme base) (bench lib))",
+                    "  (begin (define (main) (g 1))))"), StandardCharsets.UTF_8);
+            var response = new ByteArrayOutputStream();
+            daemon.serve(new ByteArrayInputStream("reload\n".getBytes(StandardCharsets.UTF_8)), response);
+            assertThat(response.toString(StandardCharsets.UTF_8).trim()).isEqualTo(KawaCompilerDaemon.OK);
+            assertThat(request(daemon, lib, destination)).isEqualTo(KawaCompilerDaemon.OK);
+            assertThat(request(daemon, app, destination)).isEqualTo(KawaCompilerDaemon.OK);
+            assertThat(new File(destination, "bench/app.class")).exists();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testServeReload() throws IOException {
+        var in = new ByteArrayInputStream("reload\n".getBytes(StandardCharsets.UTF_8));
+        var out = new ByteArrayOutputStream();
+
+        new KawaCompilerDaemon().serve(in, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(KawaCompilerDaemon.OK + System.lineSeparator());
+    }
+
+    @Test
+    void testServeUnknownCommand() throws IOException {
+        var in = new ByteArrayInputStream("stop\n".getBytes(StandardCharsets.UTF_8));
+        var out = new ByteArrayOutputStream();
+
+        new KawaCompilerDaemon().serve(in, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .isEqualTo(KawaCompilerDaemon.ERROR + "\tUnknown command: stop" + System.lineSeparator());
+    }
+
+    @Test
+    void testSingleLine() {
+        assertThat(KawaCompilerDaemon.singleLine(new IOException("first\nsecond\tthird")))
+                .isEqualTo("first second third");
+        assertThat(KawaCompilerDaemon.singleLine(new IllegalStateException()))
+                .isEqualTo(IllegalStateException.class.getName());
+    }
+}
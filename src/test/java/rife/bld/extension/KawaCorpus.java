@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Generates synthetic Kawa source trees.
+ * <p>
+ * Each module is an R7RS library in the {@code bench} package that imports up to three of the modules generated
+ * before it, which gives a dependency graph with both long chains and wide fan-outs. The same seed always produces
+ * the same tree.
+ */
+final class KawaCorpus {
+    private KawaCorpus() {
+        // no-op
+    }
+
+    /**
+     * Generates a source tree.
+     *
+     * @param directory the source directory
+     * @param modules   the number of modules
+     * @param seed      the seed of the import graph
+     * @throws IOException if a source could not be written
+     */
+    static void generate(File directory, int modules, long seed) throws IOException {
+        var random = new Random(seed);
+        var packageDir = new File(directory, "bench");
+        if (!packageDir.exists() && !packageDir.mkdirs()) {
+            throw new IOException("Could not create directory: " + packageDir.getAbsolutePath());
+        }
+
+        for (var i = 0; i < modules; i++) {
+            var imports = new TreeSet<Integer>();
+            var count = i == 0 ? 0 : random.nextInt(Math.min(i, 3) + 1);
+            while (imports.size() < count) {
+                // favor recent modules to get chains as well as shared dependencies
+                imports.add(random.nextBoolean() ? i - 1 - random.nextInt(Math.min(i, 5)) : random.nextInt(i));
+            }
+
+            var body = new ArrayList<String>();
+            var expression = new StringBuilder("(+ x ").append(i);
+            for (var dependency : imports) {
+                expression.append(" (").append(function(dependency)).append(" x)");
+            }
+            expression.append(')');
+            body.add("(define-library (bench " + module(i) + ")");
+            body.add("  (export " + function(i) + ")");
+            body.add("  (import (scheme base)" + imports.stream().map(d -> " (bench " + module(d) + ")")
+                    .reduce("", String::concat) + ")");
+            body.add("  (begin");
+            body.add("    (define (" + function(i) + " x)");
+            body.add("      (if (> x 100) x " + expression + "))))");
+
+            Files.write(new File(packageDir, module(i) + ".sld").toPath(), body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String function(int index) {
+        return "f" + module(index).substring(1);
+    }
+
+    private static String module(int index) {
+        return String.format("m%04d", index);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaDependencyGraphTest {
+    private static final File ROOT = new File("src/main/kawa").getAbsoluteFile();
+    private static final File APP = new File(ROOT, "edu/example/App.scm");
+    private static final File MATH = new File(ROOT, "edu/example/math.sld");
+    private static final File OTHER = new File(ROOT, "edu/example/Other.scm");
+    private static final File UTIL = new File(ROOT, "edu/example/util.scm");
+
+    private static KawaDependencyGraph graph() {
+        Map<File, KawaModuleHeader> headers = new LinkedHashMap<>();
+        headers.put(APP, new KawaModuleHeader("edu.example.App", List.of("scheme.base", "edu.example.util")));
+        // no module-name, known by its path
+        headers.put(UTIL, new KawaModuleHeader(null, List.of("edu.example.math")));
+        headers.put(MATH, new KawaModuleHeader("edu.example.math", List.of("scheme.base")));
+        headers.put(OTHER, new KawaModuleHeader("edu.example.Other", List.of()));
+        return new KawaDependencyGraph(headers, List.of(ROOT));
+    }
+
+    @Test
+    void testAffected() {
+        var graph = graph();
+
+        assertThat(graph.affected(List.of(MATH))).containsExactly(APP, UTIL, MATH);
+        assertThat(graph.affected(List.of(APP))).containsExactly(APP);
+        assertThat(graph.affected(List.of(OTHER))).containsExactly(OTHER);
+        assertThat(graph.affected(List.of())).isEmpty();
+    }
+
+    @Test
+    void testDependencies() {
+        var graph = graph();
+
+        assertThat(graph.sources()).containsExactly(APP, UTIL, MATH, OTHER);
+        assertThat(graph.moduleName(UTIL)).isEqualTo("edu.example.util");
+        assertThat(graph.dependencies(APP)).containsExactly(UTIL);
+        assertThat(graph.dependencies(MATH)).isEmpty();
+        assertThat(graph.dependents(MATH)).containsExactly(UTIL);
+    }
+
+    @Test
+    void testIncludes() {
+        Map<File, KawaModuleHeader> headers = new LinkedHashMap<>();
+        headers.put(MATH, new KawaModuleHeader("edu.example.math",
+                List.of(KawaModuleHeader.FILE_PREFIX + OTHER.toPath().normalize())));
+        headers.put(OTHER, new KawaModuleHeader(null, List.of()));
+        var graph = new KawaDependencyGraph(headers, List.of(ROOT));
+
+        // editing the included file rebuilds the library including it
+        assertThat(graph.dependencies(MATH)).containsExactly(OTHER);
+        assertThat(graph.affected(List.of(OTHER))).containsExactly(MATH, OTHER);
+    }
+
+    @Test
+    void testWaves() {
+        var graph = graph();
+
+        assertThat(graph.waves(List.of(APP, UTIL, MATH, OTHER)))
+                .containsExactly(Set.of(MATH, OTHER), Set.of(UTIL), Set.of(APP));
+        // only the dependencies between the given sources count
+        assertThat(graph.waves(List.of(APP, MATH))).containsExactly(Set.of(APP, MATH));
+    }
+
+    @Test
+    void testWavesWithCycle() {
+        Map<File, KawaModuleHeader> headers = new LinkedHashMap<>();
+        headers.put(APP, new KawaModuleHeader("edu.example.App", List.of("edu.example.math")));
+        headers.put(MATH, new KawaModuleHeader("edu.example.math", List.of("edu.example.util")));
+        headers.put(UTIL, new KawaModuleHeader("edu.example.util", List.of("edu.example.math")));
+        var graph = new KawaDependencyGraph(headers, List.of(ROOT));
+
+        assertThat(graph.waves(List.of(APP, MATH, UTIL))).isEmpty();
+    }
+
+    @Test
+    void testToDot() {
+        assertThat(graph().toDot())
+                .startsWith("digraph kawa {")
+                .contains("\"edu.example.App\" -> \"edu.example.util\";")
+                .contains("\"edu.example.util\" -> \"edu.example.math\";");
+    }
+
+    @Test
+    void testToJson() {
+        assertThat(graph().toJson())
+                .contains("\"module\": \"edu.example.App\", \"dependencies\": [\"edu.example.util\"]")
+                .contains("\"module\": \"edu.example.Other\", \"dependencies\": []");
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaJarWriterTest {
+    private static void write(File file, String content) throws IOException {
+        assertThat(file.getParentFile().mkdirs() || file.getParentFile().isDirectory()).isTrue();
+        Files.writeString(file.toPath(), content);
+    }
+
+    @Test
+    void testWrite() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var classes = new File(tmpDir, "classes");
+            write(new File(classes, "edu/example/util.class"), "util");
+            write(new File(classes, "edu/example/App.class"), "app");
+            write(new File(classes, "bench/m0000.class"), "m0000");
+
+            var first = new File(tmpDir, "first.jar");
+            assertThat(KawaJarWriter.write(classes, first, KawaJarWriter.DEFAULT_TIMESTAMP)).isEqualTo(3);
+
+            try (var jar = new JarFile(first)) {
+                var names = new ArrayList<String>();
+                jar.stream().map(ZipEntry::getName).forEach(names::add);
+                assertThat(names).containsExactly("META-INF/", "META-INF/MANIFEST.MF", "bench/",
+                        "bench/m0000.class", "edu/", "edu/example/", "edu/example/App.class",
+                        "edu/example/util.class");
+                assertThat(jar.getManifest()).isNotNull();
+                try (var in = jar.getInputStream(jar.getEntry("edu/example/App.class"))) {
+                    assertThat(new String(in.readAllBytes())).isEqualTo("app");
+                }
+            }
+
+            // the modification times of the classes do not matter
+            Files.setLastModifiedTime(new File(classes, "edu/example/App.class").toPath(),
+                    FileTime.fromMillis(System.currentTimeMillis() - 60_000L));
+            var second = new File(tmpDir, "second.jar");
+            KawaJarWriter.write(classes, second, KawaJarWriter.DEFAULT_TIMESTAMP);
+            assertThat(Files.readAllBytes(second.toPath())).isEqualTo(Files.readAllBytes(first.toPath()));
+
+            // replaces an existing JAR
+            Files.delete(new File(classes, "bench/m0000.class").toPath());
+            assertThat(KawaJarWriter.write(classes, first, KawaJarWriter.DEFAULT_TIMESTAMP)).isEqualTo(2);
+            assertThat(tmpDir.list()).containsExactlyInAnyOrder("classes", "first.jar", "second.jar");
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
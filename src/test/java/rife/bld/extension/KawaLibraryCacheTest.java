@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaLibraryCacheTest {
+    private static File jar(File file, String... entries) throws IOException {
+        try (var zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (var i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(entries[i]));
+                zip.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    @Test
+    void testClasses() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var jar = jar(new File(tmpDir, "lib.jar"),
+                    "edu/example/util.sld", "(define-library (edu example util) (import (edu example base)))",
+                    "edu/example/base.sld", "(define-library (edu example base) (import (scheme base)))",
+                    "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+            assertThat(KawaLibraryCache.librarySources(jar)).containsExactlyInAnyOrder("edu/example/util.sld",
+                    "edu/example/base.sld");
+
+            var compiled = new ArrayList<String>();
+            var cache = new KawaLibraryCache(new File(tmpDir, "cache"), "3.1.1", List.of(), classpath -> (sources, dest) -> {
+                for (var source : sources) {
+                    compiled.add(source.getName());
+                    Files.writeString(new File(dest, source.getName() + ".class").toPath(), "");
+                }
+            });
+
+            var classes = cache.classes(jar, List.of());
+            assertThat(compiled).containsExactly("base.sld", "util.sld");
+            assertThat(cache.compiled()).isEqualTo(1);
+            assertThat(new File(classes, "util.sld.class")).isFile();
+
+            // cached
+            assertThat(cache.classes(jar, List.of())).isEqualTo(classes);
+            assertThat(cache.compiled()).isEqualTo(1);
+
+            // another Kawa version
+            var other = new KawaLibraryCache(new File(tmpDir, "cache"), "3.1.2", List.of(), classpath -> (sources, dest) -> {
+                compiled.add("other");
+                Files.writeString(new File(dest, "other.class").toPath(), "");
+            });
+            assertThat(other.classes(jar, List.of())).isNotEqualTo(classes);
+            assertThat(other.compiled()).isEqualTo(1);
+
+            // other compile options
+            var options = new KawaLibraryCache(new File(tmpDir, "cache"), "3.1.1", List.of("--warn-as-error"),
+                    classpath -> (sources, dest) -> Files.writeString(new File(dest, "options.class").toPath(), ""));
+            assertThat(options.classes(jar, List.of())).isNotEqualTo(classes);
+            assertThat(options.compiled()).isEqualTo(1);
+
+            // the libraries of another jar before this one
+            var before = cache.classes(jar(new File(tmpDir, "before.jar"), "before.sld",
+                    "(define-library (before) (import (scheme base)))"), List.of());
+            assertThat(cache.classes(jar, List.of(before))).isNotEqualTo(classes);
+            assertThat(cache.compiled()).isEqualTo(3);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testClassesFailed() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var jar = jar(new File(tmpDir, "lib.jar"), "broken.sld", "(define-library (broken))");
+            var attempts = new int[1];
+            var cache = new KawaLibraryCache(new File(tmpDir, "cache"), "3.1.1", List.of(), classpath -> (sources, dest) -> {
+                attempts[0]++;
+                throw new IOException("unbound variable");
+            });
+
+            assertThat(cache.classes(jar, List.of())).isNull();
+            // the failure is remembered
+            assertThat(cache.classes(jar, List.of())).isNull();
+            assertThat(attempts[0]).isEqualTo(1);
+            assertThat(cache.compiled()).isZero();
+
+            // then retried
+            try (var paths = Files.walk(new File(tmpDir, "cache").toPath())) {
+                var failed = paths.filter(path -> path.toString().endsWith(".failed")).findFirst().orElseThrow();
+                Files.setLastModifiedTime(failed, FileTime.fromMillis(System.currentTimeMillis() - 7_200_000L));
+            }
+            assertThat(cache.classes(jar, List.of())).isNull();
+            assertThat(attempts[0]).isEqualTo(2);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testClassesUnreadable() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var jar = jar(new File(tmpDir, "lib.jar"), "../outside.sld", "(define-library (outside))");
+            var cache = new KawaLibraryCache(new File(tmpDir, "cache"), "3.1.1", List.of(), classpath -> {
+                throw new IOException("not compiled");
+            });
+
+            assertThat(cache.classes(jar, List.of())).isNull();
+            assertThat(new File(tmpDir, "outside.sld")).doesNotExist();
+            assertThat(cache.compiled()).isZero();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testClassesWithoutLibraries() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var jar = jar(new File(tmpDir, "lib.jar"), "edu/example/App.class", "");
+            var cache = new KawaLibraryCache(new File(tmpDir, "cache"), "3.1.1", List.of(), classpath -> {
+                throw new IOException("not compiled");
+            });
+            assertThat(cache.classes(jar, List.of())).isNull();
+            assertThat(new File(tmpDir, "cache")).doesNotExist();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KawaModuleHeaderTest {
+    private static final File SOURCE = new File("src/main/kawa/edu/example/App.scm");
+
+    private static KawaModuleHeader header(String text) {
+        return KawaModuleHeader.of(KawaForms.read(text), SOURCE);
+    }
+
+    @Test
+    void testDefineLibrary() {
+        var header = header("""
+                (define-library (edu example util)
+                  (export square)
+                  (import (scheme base) (only (edu example math) add))
+                  (begin
+                    (define (square x) (* x x))))
+                """);
+
+        assertThat(header.name()).isEqualTo("edu.example.util");
+        assertThat(header.imports()).containsExactly("scheme.base", "edu.example.math");
+    }
+
+    @Test
+    void testModuleName() {
+        assertThat(header("(module-name (edu example App))").name()).isEqualTo("edu.example.App");
+        assertThat(header("(module-name <edu.example.App>)").name()).isEqualTo("edu.example.App");
+        assertThat(header("(module-name edu.example.App)").name()).isEqualTo("edu.example.App");
+        assertThat(header("(display \"no module\")").name()).isNull();
+    }
+
+    @Test
+    void testImportSets() {
+        var header = header("""
+                (import (prefix (rename (except (edu example a) x) (y z)) a:)
+                        (library (edu example b))
+                        <edu.example.C>)
+                """);
+
+        assertThat(header.imports()).containsExactly("edu.example.a", "edu.example.b", "edu.example.C");
+    }
+
+    @Test
+    void testRequire() {
+        var header = header("""
+                (require <edu.example.Util>)
+                (require 'list-lib)
+                (require "lib/helpers.scm")
+                """);
+
+        assertThat(header.imports()).containsExactly("edu.example.Util", "list-lib",
+                KawaModuleHeader.FILE_PREFIX + new File(SOURCE.getAbsoluteFile().getParentFile(), "lib/helpers.scm")
+                        .toPath().normalize());
+    }
+
+    @Test
+    void testInclude() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var library = new File(tmpDir, "edu/example/util.sld");
+            Files.createDirectories(library.getParentFile().toPath());
+            Files.writeString(new File(tmpDir, "edu/example/util-decls.scm").toPath(),
+                    "(export square) (import (edu example math))");
+            Files.writeString(library.toPath(), """
+                    (define-library (edu example util)
+                      (include-library-declarations "util-decls.scm")
+                      (import (scheme base))
+                      (include "util-impl.scm" "util-extra.scm")
+                      (include-ci "../legacy.scm"))
+                    """);
+
+            var header = KawaModuleHeader.read(library);
+            var directory = library.getAbsoluteFile().getParentFile();
+            assertThat(header.name()).isEqualTo("edu.example.util");
+            assertThat(header.imports()).containsExactly(
+                    KawaModuleHeader.FILE_PREFIX + new File(directory, "util-decls.scm").toPath(),
+                    "edu.example.math", "scheme.base",
+                    KawaModuleHeader.FILE_PREFIX + new File(directory, "util-impl.scm").toPath(),
+                    KawaModuleHeader.FILE_PREFIX + new File(directory, "util-extra.scm").toPath(),
+                    KawaModuleHeader.FILE_PREFIX + new File(directory.getParentFile(), "legacy.scm").toPath());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testCondExpand() {
+        var header = header("""
+                (define-library (edu example compat)
+                  (cond-expand
+                    (kawa (import (kawa base)))
+                    ((and r7rs (not kawa)) (import (srfi 1)) (begin (import (edu example lists))))
+                    (else (import (scheme base)))))
+                """);
+
+        assertThat(header.name()).isEqualTo("edu.example.compat");
+        assertThat(header.imports()).containsExactly("kawa.base", "srfi.1", "edu.example.lists", "scheme.base");
+    }
+
+    @Test
+    void testLatin1() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var source = new File(tmpDir, "App.scm");
+            Files.write(source.toPath(), "(module-name <edu.example.App>)\n(define s \"caf\u00e9\")\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+
+            assertThat(KawaModuleHeader.read(source).name()).isEqualTo("edu.example.App");
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testIgnoresCommentsAndLiterals() {
+        var header = header("""
+                ; (import (edu example commented))
+                #| (import (edu example block #| nested |#)) |#
+                #;(import (edu example datum))
+                (define s "(import (edu example string))")
+                (define c #\\()
+                (define v #(1 2 3))
+                (import (edu example real))
+                """);
+
+        assertThat(header.imports()).containsExactly("edu.example.real");
+    }
+
+    @Test
+    void testQuotes() {
+        assertThat(KawaForms.read("'(a b) `(c ,d ,@e)")).isEqualTo(List.of(
+                List.of("quote", List.of("a", "b")),
+                List.of("quasiquote", List.of("c", List.of("unquote", "d"), List.of("unquote-splicing", "e")))));
+    }
+
+    @Test
+    void testUnbalanced() {
+        assertThatThrownBy(() -> KawaForms.read("(define (f x)\n  (+ x 1)"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("line 1");
+        assertThatThrownBy(() -> KawaForms.read("(display \"unterminated)"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaModuleRegistryTest {
+    private static final AtomicBoolean LAZY_INITIALIZED = new AtomicBoolean();
+
+    @Test
+    void testModuleClass() {
+        assertThat(KawaModuleRegistry.moduleClass("edu.example.App",
+                List.of("edu/example/App$frame.class", "edu/example/App.class"))).isEqualTo("edu.example.App");
+        // no module name, e.g. a source without module-name compiled under another package
+        assertThat(KawaModuleRegistry.moduleClass("util",
+                List.of("edu/example/util$frame.class", "edu/example/util.class"))).isEqualTo("edu.example.util");
+        assertThat(KawaModuleRegistry.moduleClass("util", List.of())).isNull();
+    }
+
+    @Test
+    void testWrite() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var destination = new File(tmpDir, "main");
+            var registry = new KawaModuleRegistry("edu.example.KawaModules");
+            registry.put("edu.example.lazy", Lazy.class.getName());
+            registry.put("bench.m0000", "bench.m0000");
+
+            assertThat(registry.index()).containsExactly("bench.m0000\tbench.m0000",
+                    "edu.example.lazy\t" + Lazy.class.getName());
+            assertThat(registry.write(destination, new File(tmpDir, "registry"))).isTrue();
+            assertThat(Files.readAllLines(new File(destination, KawaModuleRegistry.INDEX).toPath(),
+                    StandardCharsets.UTF_8)).isEqualTo(registry.index());
+            var classFile = new File(destination, "edu/example/KawaModules.class");
+            assertThat(classFile).isFile();
+
+            try (var loader = new URLClassLoader(new URL[]{destination.toURI().toURL()},
+                    getClass().getClassLoader())) {
+                var modules = loader.loadClass("edu.example.KawaModules");
+                assertThat(modules.getMethod("names").invoke(null)).isEqualTo(Set.of("bench.m0000",
+                        "edu.example.lazy"));
+
+                // the module is loaded, but not initialized
+                assertThat(modules.getMethod("moduleClass", String.class).invoke(null, "edu.example.lazy"))
+                        .isEqualTo(Lazy.class);
+                assertThat(LAZY_INITIALIZED).isFalse();
+                modules.getMethod("initializeModule", String.class).invoke(null, "edu.example.lazy");
+                assertThat(LAZY_INITIALIZED).isTrue();
+            }
+
+            // unchanged
+            var modified = classFile.lastModified();
+            assertThat(registry.write(destination, new File(tmpDir, "registry"))).isFalse();
+            assertThat(classFile.lastModified()).isEqualTo(modified);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    static final class Lazy {
+        static {
+            LAZY_INITIALIZED.set(true);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KawaParallelCompilerTest {
+    private static final File MAIN = new File("build/main").getAbsoluteFile();
+    private static final File MAIN_ROOT = new File("src/main/kawa").getAbsoluteFile();
+    private static final File APP = new File(MAIN_ROOT, "edu/example/App.scm");
+    private static final File MATH = new File(MAIN_ROOT, "edu/example/math.sld");
+    private static final File TEST = new File("build/test").getAbsoluteFile();
+    private static final File TEST_ROOT = new File("src/test/kawa").getAbsoluteFile();
+    private static final File APP_TEST = new File(TEST_ROOT, "edu/example/AppTest.scm");
+    private static final File MATH_TEST = new File(TEST_ROOT, "edu/example/MathTest.scm");
+
+    private static KawaDependencyGraph graph() {
+        Map<File, KawaModuleHeader> headers = new LinkedHashMap<>();
+        headers.put(APP, new KawaModuleHeader("edu.example.App", List.of("edu.example.math")));
+        headers.put(MATH, new KawaModuleHeader("edu.example.math", List.of()));
+        headers.put(APP_TEST, new KawaModuleHeader("edu.example.AppTest", List.of("edu.example.App")));
+        headers.put(MATH_TEST, new KawaModuleHeader("edu.example.MathTest", List.of("edu.example.math")));
+        return new KawaDependencyGraph(headers, List.of(MAIN_ROOT, TEST_ROOT));
+    }
+
+    private static Map<File, File> destinations() {
+        var destinations = new LinkedHashMap<File, File>();
+        destinations.put(APP, MAIN);
+        destinations.put(MATH, MAIN);
+        destinations.put(APP_TEST, TEST);
+        destinations.put(MATH_TEST, TEST);
+        return destinations;
+    }
+
+    @Test
+    void testCompileAcrossDestinations() throws IOException {
+        var compiled = Collections.synchronizedList(new ArrayList<String>());
+        try (var compiler = new KawaParallelCompiler(graph(), 3, () -> (sources, destination) ->
+                sources.forEach(source -> compiled.add(destination.getName() + ':' + source.getName())))) {
+            compiler.compile(destinations());
+        }
+
+        assertThat(compiled).containsExactlyInAnyOrder("main:App.scm", "main:math.sld", "test:AppTest.scm",
+                "test:MathTest.scm");
+        // test modules only wait for the main modules they import
+        assertThat(compiled.indexOf("main:math.sld")).isLessThan(compiled.indexOf("main:App.scm"))
+                .isLessThan(compiled.indexOf("test:MathTest.scm"));
+        assertThat(compiled.indexOf("main:App.scm")).isLessThan(compiled.indexOf("test:AppTest.scm"));
+    }
+
+    @Test
+    void testCompileFailure() {
+        var compiled = Collections.synchronizedList(new ArrayList<File>());
+        assertThatThrownBy(() -> {
+            try (var compiler = new KawaParallelCompiler(graph(), 2, () -> (sources, destination) -> {
+                if (sources.contains(MATH)) {
+                    throw new IOException("Kawa compilation failed.");
+                }
+                compiled.addAll(sources);
+            })) {
+                compiler.compile(destinations());
+            }
+        }).isInstanceOf(IOException.class).hasMessage("Kawa compilation failed.");
+
+        // nothing depending on the failed module is compiled
+        assertThat(compiled).doesNotContain(APP, APP_TEST, MATH_TEST);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KawaShardManifestTest {
+    private static final Map<String, String> SOURCES = Map.of("src/main/kawa/App.scm", "a1", "src/main/kawa/util.scm",
+            "b2");
+
+    private static KawaShardManifest shard(int index, String path, String hash) {
+        var manifest = new KawaShardManifest("3.1.1", "", "jars", "plan", index, 2);
+        manifest.put(path, hash, List.of("edu/example/App.class"));
+        return manifest;
+    }
+
+    @Test
+    void testPlan() throws IOException {
+        var plan = KawaShardManifest.plan(SOURCES, Map.of("src/main/kawa/App.scm", 0, "src/main/kawa/util.scm", 1));
+
+        assertThat(KawaShardManifest.plan(SOURCES, Map.of("src/main/kawa/App.scm", 0, "src/main/kawa/util.scm", 1)))
+                .isEqualTo(plan);
+        assertThat(KawaShardManifest.plan(SOURCES, Map.of("src/main/kawa/App.scm", 1, "src/main/kawa/util.scm", 0)))
+                .isNotEqualTo(plan);
+    }
+
+    @Test
+    void testSave() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var file = new File(tmpDir, "shard-1/" + KawaShardManifest.FILE);
+            var manifest = new KawaShardManifest("3.1.1", "--no-inline", "jars", "plan", 1, 2);
+            manifest.put("src/main/kawa/App.scm", "a1", List.of("edu/example/App.class", "edu/example/App$1.class"));
+            manifest.save(file);
+
+            var loaded = KawaShardManifest.load(file);
+            assertThat(loaded.index()).isEqualTo(1);
+            assertThat(loaded.count()).isEqualTo(2);
+            assertThat(loaded.entries()).isEqualTo(manifest.entries());
+            assertThat(KawaShardManifest.verify(List.of(shard(0, "src/main/kawa/util.scm", "b2"), loaded), SOURCES,
+                    "3.1.1", "--no-inline", "jars")).containsExactly("shard 0 was compiled with other options: ");
+
+            Files.writeString(file.toPath(), "# not a shard manifest\n");
+            assertThatThrownBy(() -> KawaShardManifest.load(file)).isInstanceOf(IOException.class);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testVerify() {
+        var app = shard(0, "src/main/kawa/App.scm", "a1");
+        var util = shard(1, "src/main/kawa/util.scm", "b2");
+
+        assertThat(KawaShardManifest.verify(List.of(app, util), SOURCES, "3.1.1", "", "jars")).isEmpty();
+        assertThat(KawaShardManifest.verify(List.of(), SOURCES, "3.1.1", "", "jars")).containsExactly("no shards");
+        assertThat(KawaShardManifest.verify(List.of(app), SOURCES, "3.1.1", "", "jars")).containsExactly(
+                "shard 1 of 2 is missing", "src/main/kawa/util.scm is not exported by any shard");
+        assertThat(KawaShardManifest.verify(List.of(app, shard(1, "src/main/kawa/util.scm", "c3")), SOURCES,
+                "3.1.1", "", "jars"))
+                .containsExactly("src/main/kawa/util.scm was compiled from other content by shard 1");
+        assertThat(KawaShardManifest.verify(List.of(app, util), SOURCES, "3.2.0", "", "jars")).containsExactly(
+                "shard 0 was compiled with Kawa 3.1.1", "shard 1 was compiled with Kawa 3.1.1");
+        assertThat(KawaShardManifest.verify(List.of(app, util), SOURCES, "3.1.1", "", "other")).containsExactly(
+                "shard 0 was compiled with another classpath", "shard 1 was compiled with another classpath");
+        assertThat(KawaShardManifest.verify(List.of(app, util, shard(1, "src/main/kawa/App.scm", "a1")), SOURCES,
+                "3.1.1", "", "jars")).containsExactly("shard 1 is present more than once");
+        assertThat(KawaShardManifest.verify(List.of(app, new KawaShardManifest("3.1.1", "", "jars", "other", 1, 2)),
+                SOURCES, "3.1.1", "", "jars")).containsExactly("shard 1 is part of another plan",
+                "shard 1 of 2 is missing", "src/main/kawa/util.scm is not exported by any shard");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KawaShardPlanTest {
+    private static final File ROOT = new File("src/main/kawa").getAbsoluteFile();
+    private static final File APP = new File(ROOT, "edu/example/App.scm");
+    private static final File MATH = new File(ROOT, "edu/example/math.scm");
+    private static final File OTHER = new File(ROOT, "edu/example/Other.scm");
+    private static final File UTIL = new File(ROOT, "edu/example/util.scm");
+    private static final List<File> SOURCES = List.of(APP, MATH, OTHER, UTIL);
+
+    private static KawaDependencyGraph graph() {
+        Map<File, KawaModuleHeader> headers = new LinkedHashMap<>();
+        headers.put(APP, new KawaModuleHeader("edu.example.App", List.of("edu.example.util")));
+        headers.put(MATH, new KawaModuleHeader("edu.example.math", List.of()));
+        headers.put(OTHER, new KawaModuleHeader("edu.example.Other", List.of()));
+        headers.put(UTIL, new KawaModuleHeader("edu.example.util", List.of("edu.example.math")));
+        return new KawaDependencyGraph(headers, List.of(ROOT));
+    }
+
+    @Test
+    void testConnectedSources() {
+        // App, util and math import each other, and are lighter than a shard
+        var plan = new KawaShardPlan(graph(), SOURCES, Map.of(APP, 10L, MATH, 10L, OTHER, 40L, UTIL, 10L), 2);
+
+        assertThat(plan.sources(0)).containsExactly(OTHER);
+        assertThat(plan.sources(1)).containsExactly(APP, MATH, UTIL);
+        assertThat(plan.closure(1)).containsExactly(APP, MATH, UTIL);
+        assertThat(plan.weight(0)).isEqualTo(40L);
+        assertThat(plan.weight(1)).isEqualTo(30L);
+    }
+
+    @Test
+    void testSplitSources() {
+        // App, util and math are heavier than a shard, and are split
+        var plan = new KawaShardPlan(graph(), SOURCES, Map.of(APP, 30L, MATH, 20L, OTHER, 20L, UTIL, 10L), 2);
+
+        assertThat(plan.sources(0)).containsExactly(APP, UTIL);
+        assertThat(plan.sources(1)).containsExactly(MATH, OTHER);
+        assertThat(plan.closure(0)).containsExactly(APP, MATH, UTIL);
+        assertThat(plan.closure(1)).containsExactly(MATH, OTHER);
+        assertThat(plan.shard(UTIL)).isZero();
+        assertThat(plan.shard(new File(ROOT, "missing.scm"))).isEqualTo(-1);
+    }
+
+    @Test
+    void testShards() {
+        var plan = new KawaShardPlan(graph(), SOURCES, Map.of(), 8);
+
+        assertThat(plan.count()).isEqualTo(8);
+        // the sources weigh the same, more than a shard
+        assertThat(plan.sources(0)).containsExactly(APP);
+        assertThat(plan.closure(0)).containsExactly(APP, MATH, UTIL);
+        assertThat(plan.sources(3)).containsExactly(OTHER);
+        assertThat(plan.sources(7)).isEmpty();
+        assertThat(plan.closure(7)).isEmpty();
+        assertThatThrownBy(() -> new KawaShardPlan(graph(), SOURCES, Map.of(), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaSourceManifestTest {
+    @Test
+    void testFingerprint() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var source = new File(tmpDir, "App.scm");
+            Files.writeString(source.toPath(), "(display \"hello\")");
+
+            var fingerprint = KawaSourceManifest.fingerprint(source, null);
+            assertThat(fingerprint.hash()).hasSize(64);
+            assertThat(fingerprint.size()).isEqualTo(source.length());
+
+            var previous = new KawaSourceManifest.Entry("cached", fingerprint.size(), fingerprint.modified(),
+                    new KawaModuleHeader("edu.example.App", List.of()), List.of());
+            assertThat(KawaSourceManifest.fingerprint(source, previous).hash()).isEqualTo("cached");
+            assertThat(KawaSourceManifest.fingerprint(source, previous).header()).isEqualTo(previous.header());
+            assertThat(fingerprint.header()).isNull();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var destination = new File(tmpDir, "main");
+            var source = new File(tmpDir, "App.scm");
+            var file = new File(tmpDir, "kawa/main.manifest");
+
+            var jar = new File(tmpDir, "lib/util.jar");
+            var manifest = new KawaSourceManifest("3.1.1", "", "abc", destination);
+            manifest.putJar(jar, new KawaSourceManifest.Entry("def", 3L, 4L, null, List.of()));
+            manifest.put(source, new KawaSourceManifest.Entry("abc", 1L, 2L,
+                    new KawaModuleHeader("edu.example.App", List.of("scheme.base", "edu.example.util")),
+                    List.of("edu/example/App.class")));
+            manifest.save(file);
+
+            var loaded = KawaSourceManifest.load(file);
+            assertThat(loaded).isNotNull();
+            assertThat(loaded.isCompatible(manifest)).isTrue();
+            assertThat(loaded.isCompatible(new KawaSourceManifest("3.1.0", "", "abc", destination))).isFalse();
+            assertThat(loaded.isCompatible(new KawaSourceManifest("3.1.1", "", "def", destination))).isFalse();
+            assertThat(loaded.entry(source)).isEqualTo(manifest.entry(source));
+            assertThat(loaded.entry(source).isIntact(destination)).isFalse();
+            assertThat(loaded.jar(jar)).isEqualTo(manifest.jar(jar));
+            assertThat(loaded.jar(source)).isNull();
+            assertThat(loaded.sources()).containsExactly(source.getAbsolutePath());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testLoadInvalid() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var file = new File(tmpDir, "main.manifest");
+            assertThat(KawaSourceManifest.load(file)).isNull();
+
+            Files.writeString(file.toPath(), "not a manifest");
+            assertThat(KawaSourceManifest.load(file)).isNull();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaSourceScannerTest {
+    private static File write(File directory, String path) throws IOException {
+        var file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), "(display \"hello\")");
+        return file;
+    }
+
+    @Test
+    void testScan() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var app = write(tmpDir, "edu/example/App.scm");
+            var util = write(tmpDir, "edu/example/util.sld");
+            write(tmpDir, "edu/example/README.md");
+            write(tmpDir, "scratch/Draft.scm");
+
+            var sources = new KawaSourceScanner(List.of("scratch/**"), null)
+                    .scan(List.of(new File(tmpDir, "edu/../edu/example/App.scm")), List.of(tmpDir));
+            assertThat(sources).containsExactly(app.getCanonicalFile(), util.getCanonicalFile());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testScanLinkedDirectory() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var app = write(tmpDir, "src/edu/example/App.scm");
+            Files.createSymbolicLink(new File(tmpDir, "src/alias").toPath(), app.getParentFile().toPath());
+
+            var sources = new KawaSourceScanner(List.of(), null)
+                    .scan(List.of(), List.of(new File(tmpDir, "src")));
+            assertThat(sources).hasSize(1);
+            assertThat(sources.get(0).getCanonicalFile()).isEqualTo(app.getCanonicalFile());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testScanMissingDirectory() throws IOException {
+        assertThat(new KawaSourceScanner(List.of(), null).scan(List.of(), List.of(new File("missing")))).isEmpty();
+        assertThat(CompileKawaOperation.getKawaFileList(new File("missing"))).isEmpty();
+    }
+
+    @Test
+    void testSnapshot() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sources = new File(tmpDir, "src");
+            var snapshot = new File(tmpDir, "kawa/main-sources.snapshot");
+            var app = write(sources, "App.scm");
+            var past = FileTime.from(Instant.now().minusSeconds(60));
+            Files.setLastModifiedTime(sources.toPath(), past);
+
+            var scanner = new KawaSourceScanner(List.of(), snapshot);
+            assertThat(scanner.scan(List.of(), List.of(sources))).containsExactly(app.getCanonicalFile());
+            scanner.save();
+            assertThat(snapshot).exists();
+
+            // an unchanged directory is not listed again
+            var util = write(sources, "util.scm");
+            Files.setLastModifiedTime(sources.toPath(), past);
+            assertThat(new KawaSourceScanner(List.of(), snapshot).scan(List.of(), List.of(sources)))
+                    .containsExactly(app.getCanonicalFile());
+
+            Files.setLastModifiedTime(sources.toPath(), FileTime.from(Instant.now().minusSeconds(30)));
+            assertThat(new KawaSourceScanner(List.of(), snapshot).scan(List.of(), List.of(sources)))
+                    .containsExactly(app.getCanonicalFile(), util.getCanonicalFile());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
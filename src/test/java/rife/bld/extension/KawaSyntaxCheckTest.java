@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KawaSyntaxCheckTest {
+    @Test
+    void testCheck() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var app = new File(tmpDir, "App.scm");
+            var broken = new File(tmpDir, "broken.scm");
+            var unterminated = new File(tmpDir, "unterminated.scm");
+            Files.writeString(app.toPath(), "(module-name edu.example.App)\n(import (edu example util))\n");
+            Files.writeString(broken.toPath(), "(define (f x)\n  (+ x 1)))\n");
+            Files.writeString(unterminated.toPath(), "(define s \"oops)\n");
+
+            var check = KawaSyntaxCheck.check(List.of(app, broken, unterminated));
+
+            assertThat(check.headers()).containsOnlyKeys(app, broken, unterminated);
+            assertThat(check.headers().get(app))
+                    .isEqualTo(new KawaModuleHeader("edu.example.App", List.of("edu.example.util")));
+            assertThat(check.headers().get(broken).name()).isNull();
+            assertThat(check.errors()).containsExactly(
+                    broken.getPath() + ": Unexpected ')' on line 2",
+                    unterminated.getPath() + ": Unterminated string on line 2");
+
+            assertThat(KawaSyntaxCheck.check(List.of(app)).errors()).isEmpty();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testCheckMissingSource() {
+        assertThatThrownBy(() -> KawaSyntaxCheck.check(List.of(new File("does-not-exist.scm"))))
+                .isInstanceOf(IOException.class);
+    }
+}
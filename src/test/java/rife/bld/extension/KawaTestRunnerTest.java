@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaTestRunnerTest {
+    private static final String SUMMARY = String.join("\n",
+            "%%%% Starting test vectors  (Writing full log to \"vectors.log\")",
+            "FAIL vector-ref",
+            "# of expected passes      12",
+            "# of expected failures    1",
+            "# of unexpected failures  2",
+            "# of unexpected successes 1",
+            "# of skipped tests        3",
+            "");
+
+    @Test
+    void testHasSummary() {
+        assertThat(KawaTestRunner.hasSummary(SUMMARY)).isTrue();
+        assertThat(KawaTestRunner.hasSummary("PASS first\n")).isFalse();
+    }
+
+    @Test
+    void testResultOf() {
+        var result = KawaTestRunner.Result.of("edu.example.vectors", Duration.ofMillis(42), SUMMARY, null);
+        assertThat(result.passed()).isEqualTo(13);
+        assertThat(result.failed()).isEqualTo(3);
+        assertThat(result.skipped()).isEqualTo(3);
+        assertThat(result.isSuccessful()).isFalse();
+
+        var passed = KawaTestRunner.Result.of("edu.example.lists", Duration.ZERO, "# of expected passes 5\n", null);
+        assertThat(passed.passed()).isEqualTo(5);
+        assertThat(passed.isSuccessful()).isTrue();
+
+        var error = KawaTestRunner.Result.of("edu.example.maps", Duration.ZERO, "", "unbound location: hash");
+        assertThat(error.isSuccessful()).isFalse();
+    }
+
+    @Test
+    void testResultLine() {
+        var result = KawaTestRunner.Result.of("edu.example.vectors", Duration.ofMillis(42), SUMMARY,
+                "error\twith\ttabs");
+        var line = result.toLine();
+        assertThat(line).doesNotContain("\n").startsWith(KawaTestRunner.RESULT + "\t");
+        assertThat(KawaTestRunner.Result.parse(line)).isEqualTo(result);
+
+        var completed = KawaTestRunner.Result.of("edu.example.lists", Duration.ZERO, "", null);
+        assertThat(KawaTestRunner.Result.parse(completed.toLine())).isEqualTo(completed);
+        assertThat(KawaTestRunner.Result.parse("# of expected passes 5")).isNull();
+    }
+}
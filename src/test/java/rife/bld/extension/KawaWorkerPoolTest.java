@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KawaWorkerPoolTest {
+    @Test
+    void testAcquire() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try (var pool = new KawaWorkerPool(List.of("-Xmx128m"))) {
+            try (var compiler = pool.acquire(List.of())) {
+                compiler.compile(List.of(), tmpDir);
+            }
+            // the idle worker is reused
+            try (var compiler = pool.acquire(List.of(tmpDir))) {
+                compiler.compile(List.of(), tmpDir);
+            }
+            assertThat(pool.size()).isEqualTo(1);
+
+            try (var first = pool.acquire(List.of()); var second = pool.acquire(List.of())) {
+                first.compile(List.of(), tmpDir);
+                second.compile(List.of(), tmpDir);
+            }
+            assertThat(pool.size()).isEqualTo(2);
+
+            // a new build reloads the idle workers instead of starting new ones
+            pool.reload();
+            try (var compiler = pool.acquire(List.of(tmpDir))) {
+                compiler.compile(List.of(), tmpDir);
+            }
+            assertThat(pool.size()).isEqualTo(2);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestKawaOperationTest {
+    @Test
+    void testExecuteWithoutModules() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var op = new TestKawaOperation()
+                    .testDirectory(new File(tmpDir, "test"))
+                    .reportDirectory(new File(tmpDir, "reports"))
+                    .silent(true);
+            op.execute();
+
+            assertThat(op.results()).isEmpty();
+            assertThat(new File(tmpDir, "reports")).doesNotExist();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testForks() {
+        assertThat(new TestKawaOperation().forks()).isEqualTo(Runtime.getRuntime().availableProcessors());
+        assertThat(new TestKawaOperation().forks(3).forks()).isEqualTo(3);
+        assertThatThrownBy(() -> new TestKawaOperation().forks(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testJunitXml() {
+        var results = List.of(
+                KawaTestRunner.Result.of("edu.example.lists", Duration.ofMillis(1500),
+                        "# of expected passes 5\n", null),
+                KawaTestRunner.Result.of("edu.example.vectors", Duration.ofMillis(250),
+                        "FAIL <vector-ref> ]]>\n# of unexpected failures 2\n", null),
+                KawaTestRunner.Result.of("edu.example.maps", Duration.ZERO, "", "unbound location: \"hash\""));
+        var xml = TestKawaOperation.junitXml(results);
+
+        assertThat(xml).startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .contains("<testsuites name=\"kawa\" tests=\"3\" failures=\"1\" errors=\"1\" time=\"1.750\">")
+                .contains("<testcase classname=\"edu.example.lists\" name=\"edu.example.lists\" time=\"1.500\">")
+                .contains("<failure message=\"2 failed test(s)\"/>")
+                .contains("<error message=\"unbound location: &quot;hash&quot;\"/>")
+                .contains("<![CDATA[FAIL <vector-ref> ]]]]><![CDATA[>")
+                .endsWith("</testsuites>\n");
+    }
+
+    @Test
+    void testExitError() {
+        assertThat(TestKawaOperation.exitError(0, "# of expected passes 5\n")).isNull();
+        assertThat(TestKawaOperation.exitError(0, "PASS first\n"))
+                .isEqualTo("The module exited before the summary of its tests.");
+        assertThat(TestKawaOperation.exitError(1, "# of unexpected failures 1\n"))
+                .isEqualTo("The module exited with code 1.");
+    }
+
+    @Test
+    void testModules() throws IOException {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var testDir = new File(tmpDir, "test");
+            var manifest = new KawaSourceManifest("3.1.1", "", "", testDir);
+            manifest.put(new File(tmpDir, "src/edu/example/lists.scm"), new KawaSourceManifest.Entry("a", 1L, 2L,
+                    new KawaModuleHeader("edu.example.lists", List.of()),
+                    List.of("edu/example/lists.class", "edu/example/lists$frame.class")));
+            manifest.put(new File(tmpDir, "src/vectors.sld"), new KawaSourceManifest.Entry("b", 1L, 2L,
+                    new KawaModuleHeader(null, List.of()), List.of("vectors.class")));
+            var manifestFile = new File(tmpDir, "kawa/test.manifest");
+            manifest.save(manifestFile);
+            // a class compiled by javac to the same directory
+            var javaClass = new File(testDir, "edu/example/ListsTest.class");
+            Files.createDirectories(javaClass.getParentFile().toPath());
+            Files.writeString(javaClass.toPath(), "");
+
+            assertThat(TestKawaOperation.modules(manifestFile, testDir)).containsExactly("edu.example.lists",
+                    "vectors");
+            assertThat(TestKawaOperation.modules(manifestFile, new File(tmpDir, "other"))).isEmpty();
+            assertThat(TestKawaOperation.modules(new File(tmpDir, "missing.manifest"), testDir)).isEmpty();
+            assertThat(new TestKawaOperation().testDirectory(testDir).workDirectory())
+                    .isEqualTo(new File(tmpDir, "kawa").getAbsoluteFile());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testShards() {
+        var timings = Map.of("a", 100L, "b", 60L, "c", 50L, "d", 40L, "e", 10L);
+        // longest first, each to the lightest shard
+        assertThat(TestKawaOperation.shards(List.of("a", "b", "c", "d", "e"), timings, 3))
+                .containsExactly(List.of("a"), List.of("b", "e"), List.of("c", "d"));
+
+        // unknown modules take the average time
+        assertThat(TestKawaOperation.shards(List.of("a", "e", "new"), Map.of("a", 100L, "e", 10L), 2))
+                .containsExactly(List.of("a"), List.of("new", "e"));
+
+        // no more shards than modules
+        assertThat(TestKawaOperation.shards(List.of("a", "b"), Map.of(), 8)).hasSize(2);
+        assertThat(TestKawaOperation.shards(List.of(), Map.of(), 8)).isEmpty();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2023-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rife.bld.extension;
+
+import org.junit.jupiter.api.Test;
+import rife.bld.blueprints.BaseProjectBlueprint;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WatchKawaOperationTest {
+    @Test
+    void testExecute() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sourceDir = new File(tmpDir, "src/main/kawa/edu/example");
+            assertThat(sourceDir.mkdirs()).isTrue();
+            var source = new File(sourceDir, "App.scm");
+            Files.copy(new File("examples/src/main/kawa/edu/example/App.scm").toPath(), source.toPath());
+
+            var op = new WatchKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "edu.example", "app"))
+                    .debounce(Duration.ofMillis(500))
+                    .silent(true);
+            op.compileOperation().silent(true);
+
+            var failure = new AtomicReference<Exception>();
+            var thread = new Thread(() -> {
+                try {
+                    op.execute();
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            });
+            thread.start();
+
+            var app = new File(tmpDir, "build/main/edu/example/App.class");
+            var deadline = System.currentTimeMillis() + 30_000L;
+            while (!app.exists() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            assertThat(app).exists();
+
+            Files.writeString(source.toPath(), """
+                    (module-name (edu example App))
+                    (module-compile-options main: #t)
+
+                    (display "Hello again!")
+                    (newline)
+                    """);
+            Files.writeString(new File(sourceDir, "Other.scm").toPath(), "(module-name (edu example Other))\n");
+
+            while (op.batches() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            op.stop();
+            thread.join(10_000L);
+
+            assertThat(failure.get()).isNull();
+            assertThat(thread.isAlive()).isFalse();
+            assertThat(op.batches()).isGreaterThanOrEqualTo(1);
+            assertThat(new File(tmpDir, "build/main/edu/example/Other.class")).exists();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testCompileOperation() {
+        var op = new WatchKawaOperation().compileOperation(new CompileKawaOperation().daemon(true));
+
+        assertThat(op.compileOperation().isIncremental()).isTrue();
+        assertThat(op.compileOperation().isDaemon()).isTrue();
+        assertThat(op.compileOperation().isFork()).isFalse();
+    }
+
+    @Test
+    void testExecuteSourceFiles() throws Exception {
+        var tmpDir = Files.createTempDirectory("bld-kawa").toFile();
+
+        try {
+            var sourceDir = new File(tmpDir, "src");
+            assertThat(sourceDir.mkdirs()).isTrue();
+            var main = new File(sourceDir, "main.scm");
+            var test = new File(sourceDir, "test.scm");
+            Files.writeString(main.toPath(), "(define (f x) x)\n");
+            Files.writeString(test.toPath(), "(define (g x) x)\n");
+
+            var op = new WatchKawaOperation()
+                    .fromProject(new BaseProjectBlueprint(tmpDir, "edu.example", "app"))
+                    .debounce(Duration.ofMillis(200))
+                    .silent(true);
+            op.compileOperation().mainSourceFiles(main).testSourceFiles(test).fork(true).silent(true);
+
+            var thread = new Thread(() -> {
+                try {
+                    op.execute();
+                } catch (IOException ignored) {
+                    // reported by the assertions
+                }
+            });
+            thread.start();
+
+            // touch the main source until the watch picks it up
+            var deadline = System.currentTimeMillis() + 30_000L;
+            while (op.batches() == 0 && System.currentTimeMillis() < deadline) {
+                Files.writeString(main.toPath(), "(define (f x) (+ x 1))\n");
+                Thread.sleep(500L);
+            }
+            var batches = op.batches();
+
+            // a file next to the sources is not a source, a deleted and created again source still is
+            Files.writeString(new File(sourceDir, "other.scm").toPath(), "(define (h x) x)\n");
+            Files.delete(test.toPath());
+            Files.writeString(test.toPath(), "(define (g x) (+ x 1))\n");
+            while (op.batches() == batches && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            op.stop();
+            thread.join(10_000L);
+
+            assertThat(op.batches()).isGreaterThan(batches);
+            // the configured sources are left as they are
+            assertThat(op.compileOperation().mainSourceFiles()).containsExactly(main);
+            assertThat(op.compileOperation().testSourceFiles()).containsExactly(test);
+            assertThat(op.compileOperation().changedSources()).isNull();
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Test
+    void testExecuteWithoutCompileOperation() {
+        assertThatThrownBy(() -> new WatchKawaOperation().execute()).isInstanceOf(IllegalArgumentException.class);
+    }
+}